@@ -0,0 +1,66 @@
+package com.github.pqian.http.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pqian.http.ClientConnMgrFactory;
+import com.github.pqian.http.HttpClientFactory;
+import com.github.pqian.http.HttpSettings;
+import com.github.pqian.http.MBeanRegistrar;
+
+/**
+ * Cost of creating a client with HttpClientFactory, i.e. with its settings MBean registered at once or held pending, compared to creating a bare
+ * one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientCreationBenchmark
+{
+    @Param({ "false", "true" })
+    public boolean lazyRegistration;
+
+    private ClientConnectionManager connMgr;
+
+    @Setup
+    public void setUp()
+    {
+        MBeanRegistrar.setLazyRegistration(lazyRegistration);
+        connMgr = ClientConnMgrFactory.newInstance();
+    }
+
+    @Benchmark
+    public HttpClient newInstanceWithMBean()
+    {
+        return HttpClientFactory.newInstance(connMgr);
+    }
+
+    @Benchmark
+    public HttpClient newInstanceWithoutMBean()
+    {
+        final HttpClient client = new DefaultHttpClient(connMgr);
+        final HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, HttpSettings.INSTANCE.getDefaultConnectionTimeout());
+        HttpConnectionParams.setSoTimeout(params, HttpSettings.INSTANCE.getDefaultSocketTimeout());
+        return client;
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.pqian.http.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pqian.http.ClientConnMgrFactory;
+import com.github.pqian.http.HttpClientFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Throughput and latency of requests to an in-process HTTP server through a pool created with ClientConnMgrFactory, across pool sizes and thread
+ * counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class PooledRequestBenchmark
+{
+    private static final byte[] BODY = new byte[256];
+
+    @Param({ "2", "8", "32" })
+    public int poolSize;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private HttpClient client;
+    private String uri;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                exchange.sendResponseHeaders(200, BODY.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(BODY);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server.setExecutor(serverExecutor);
+        server.start();
+        uri = "http://localhost:" + server.getAddress().getPort() + "/";
+
+        final PoolingClientConnectionManager connMgr = (PoolingClientConnectionManager) ClientConnMgrFactory.newInstance();
+        connMgr.setMaxTotal(poolSize);
+        connMgr.setDefaultMaxPerRoute(poolSize);
+        client = HttpClientFactory.newInstance(connMgr);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.getConnectionManager().shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int get1Thread() throws IOException
+    {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int get8Threads() throws IOException
+    {
+        return get();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public int get32Threads() throws IOException
+    {
+        return get();
+    }
+
+    private int get() throws IOException
+    {
+        final HttpResponse response = client.execute(new HttpGet(uri));
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.pqian.http.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pqian.http.ClientConnMgrFactory;
+import com.github.pqian.http.MBeanRegistrar;
+
+/**
+ * Cost of looking up a connection manager by MBean name with many managers registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrarLookupBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    public int managers;
+
+    // keeps managers reachable, otherwise they are unregistered once collected
+    private final List<ClientConnectionManager> connMgrs = new ArrayList<ClientConnectionManager>();
+    private String[] mbeanNames;
+
+    @Setup
+    public void setUp()
+    {
+        mbeanNames = new String[managers];
+        for (int i = 0; i < managers; i++)
+        {
+            mbeanNames[i] = "lookup" + managers + "_" + i;
+            connMgrs.add(ClientConnMgrFactory.newInstance(mbeanNames[i]));
+        }
+    }
+
+    @Benchmark
+    public ClientConnectionManager findByMbeanName()
+    {
+        return MBeanRegistrar.findClientConnMgrByMbeanName(mbeanNames[ThreadLocalRandom.current().nextInt(managers)]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ClientConnectionManager findByMbeanNameConcurrently()
+    {
+        return findByMbeanName();
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.pqian.http.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.pqian.http.ClientConnMgrFactory;
+import com.github.pqian.http.StripedClientConnMgr;
+
+/**
+ * Lock contention of leasing and releasing connections of a single pool versus pools striped by thread or by route. Connections are never opened,
+ * so only the pool itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripedPoolBenchmark
+{
+    private static final int ROUTES = 16;
+
+    @Param({ "1", "4", "16" })
+    public int stripes;
+
+    @Param({ "THREAD", "ROUTE" })
+    public StripedClientConnMgr.StripeBy stripeBy;
+
+    private ClientConnectionManager connMgr;
+    private HttpRoute[] routes;
+
+    @Setup
+    public void setUp()
+    {
+        connMgr = stripes == 1 ? ClientConnMgrFactory.newInstance("striped1" + stripeBy) : ClientConnMgrFactory.newStripedInstance(stripes,
+                stripeBy, "striped" + stripes + stripeBy);
+        routes = new HttpRoute[ROUTES];
+        for (int i = 0; i < ROUTES; i++)
+        {
+            routes[i] = new HttpRoute(new HttpHost("host" + i, 80));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        connMgr.shutdown();
+    }
+
+    @Benchmark
+    public ManagedClientConnection leaseAndRelease() throws Exception
+    {
+        final ManagedClientConnection conn = connMgr.requestConnection(routes[ThreadLocalRandom.current().nextInt(ROUTES)], null).getConnection(1,
+                TimeUnit.SECONDS);
+        connMgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+        return conn;
+    }
+
+    @Benchmark
+    @Threads(32)
+    public ManagedClientConnection leaseAndReleaseConcurrently() throws Exception
+    {
+        return leaseAndRelease();
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.pqian.http;
+
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AsyncClientConnMgrFactory
+{
+    public static final Logger LOG = LoggerFactory.getLogger(AsyncClientConnMgrFactory.class);
+
+    private AsyncClientConnMgrFactory()
+    {}
+
+    /**
+     * Creates a new {@link ClientAsyncConnectionManager}.
+     * 
+     * @return
+     */
+    public static ClientAsyncConnectionManager newInstance()
+    {
+        return newInstance(false);
+    }
+
+    /**
+     * Returns an existing {@link ClientAsyncConnectionManager} if possible, otherwise create a new.
+     * 
+     * @param reuseExistingConnMgrIfPossible
+     * @return
+     */
+    public static ClientAsyncConnectionManager newInstance(final boolean reuseExistingConnMgrIfPossible)
+    {
+        return newInstance(reuseExistingConnMgrIfPossible, null);
+    }
+
+    /**
+     * Creates a new {@link ClientAsyncConnectionManager} that is monitored by a {@link AsyncClientConnMgrSettings} MBean with the given name.
+     * 
+     * @param mbeanName
+     * @return
+     */
+    public static ClientAsyncConnectionManager newInstance(final String mbeanName)
+    {
+        return newInstance(false, mbeanName);
+    }
+
+    /**
+     * Returns a {@link ClientAsyncConnectionManager} monitored by a {@link AsyncClientConnMgrSettings} MBean with the given name.
+     * 
+     * @param reuseExistingConnMgrIfPossible
+     *            return a existing {@link ClientAsyncConnectionManager} if true
+     * @param mbeanName
+     * @return
+     */
+    public static ClientAsyncConnectionManager newInstance(final boolean reuseExistingConnMgrIfPossible, final String mbeanName)
+    {
+        if (reuseExistingConnMgrIfPossible)
+        {
+            final ClientAsyncConnectionManager mgr = MBeanRegistrar.findAsyncClientConnMgrByMbeanName(mbeanName);
+            // a manager shut down along with its client cannot be run again
+            if (mgr != null && (mgr.getStatus() == IOReactorStatus.INACTIVE || mgr.getStatus() == IOReactorStatus.ACTIVE))
+            {
+                LOG.info("Reuse clientAsyncConnectionManager {} being monitered by MBean", mgr);
+                return mgr;
+            }
+        }
+
+        final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+        final IOReactorConfig config = new IOReactorConfig();
+        config.setIoThreadCount(settings.getDefaultIoThreadCount());
+        config.setConnectTimeout(settings.getDefaultConnectionTimeout());
+        config.setSoTimeout(settings.getDefaultSocketTimeout());
+        final MonitoredClientAsyncConnMgr newMgr;
+        try
+        {
+            newMgr = new MonitoredClientAsyncConnMgr(config);
+        }
+        catch (final IOReactorException e)
+        {
+            throw new RuntimeException("Creating I/O reactor failed, " + config, e);
+        }
+        newMgr.setDefaultMaxPerRoute(settings.getDefaultMaxConnectionsPerRoute());
+        newMgr.setMaxTotal(settings.getDefaultMaxTotalConnections());
+        final String objectName = MBeanRegistrar.registerAsyncClientConnMgrSettings(newMgr, mbeanName);
+        LOG.info("ClientAsyncConnectionManager {} is being monitered by Mbean {}", newMgr, objectName);
+        return newMgr;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AsyncClientConnMgrSettings implements AsyncClientConnMgrSettingsMBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncClientConnMgrSettings.class);
+
+    private final String objectName;
+    private final WeakReference<PoolingClientAsyncConnectionManager> connMgrRef;
+
+    public AsyncClientConnMgrSettings(final PoolingClientAsyncConnectionManager connMgr, final String objectName)
+    {
+        this.objectName = objectName;
+        connMgrRef = new WeakReference<PoolingClientAsyncConnectionManager>(connMgr);
+
+        MBeanReaper.watch(connMgr, objectName);
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute()
+    {
+        return connMgrRef.get().getDefaultMaxPerRoute();
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute(final int defaultMaxPerRoute)
+    {
+        connMgrRef.get().setDefaultMaxPerRoute(defaultMaxPerRoute);
+        LOG.info("{}: set defaultMaxPerRoute with {}", objectName, defaultMaxPerRoute);
+    }
+
+    @Override
+    public int getMaxTotal()
+    {
+        return connMgrRef.get().getMaxTotal();
+    }
+
+    @Override
+    public void setMaxTotal(final int maxTotal)
+    {
+        connMgrRef.get().setMaxTotal(maxTotal);
+        LOG.info("{}: set maxTotal with {}", objectName, maxTotal);
+    }
+
+    @Override
+    public ConnPoolStats getTotalStats()
+    {
+        return ConnPoolStats.of(connMgrRef.get().getTotalStats());
+    }
+
+    @Override
+    public Map<String, ConnPoolStats> getRouteStats()
+    {
+        final PoolingClientAsyncConnectionManager connMgr = connMgrRef.get();
+        final Map<String, ConnPoolStats> routeStats = new TreeMap<String, ConnPoolStats>();
+        if (connMgr instanceof MonitoredClientAsyncConnMgr)
+        {
+            for (final HttpRoute route : ((MonitoredClientAsyncConnMgr) connMgr).getRoutes())
+            {
+                routeStats.put(route.toString(), ConnPoolStats.of(connMgr.getStats(route)));
+            }
+        }
+        return routeStats;
+    }
+
+    @Override
+    public int getIoThreadCount()
+    {
+        final PoolingClientAsyncConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientAsyncConnMgr ? ((MonitoredClientAsyncConnMgr) connMgr).getIoThreadCount() : 0;
+    }
+
+}
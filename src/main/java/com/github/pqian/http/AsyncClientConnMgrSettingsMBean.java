@@ -0,0 +1,33 @@
+package com.github.pqian.http;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface AsyncClientConnMgrSettingsMBean
+{
+    int getDefaultMaxPerRoute();
+
+    void setDefaultMaxPerRoute(final int defaultMaxPerRoute);
+
+    int getMaxTotal();
+
+    void setMaxTotal(final int maxTotal);
+
+    ConnPoolStats getTotalStats();
+
+    /**
+     * Returns stats of every known route, keyed by route.
+     * 
+     * @return
+     */
+    Map<String, ConnPoolStats> getRouteStats();
+
+    /**
+     * Returns the count of I/O dispatch threads, fixed once the manager is created.
+     * 
+     * @return
+     */
+    int getIoThreadCount();
+}
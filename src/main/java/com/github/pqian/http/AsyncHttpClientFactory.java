@@ -0,0 +1,172 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates started {@link HttpAsyncClient}s, the non-blocking counterpart of {@link HttpClientFactory}. A started client and its connection manager
+ * are referenced by their I/O threads, so their MBeans are unregistered only after the client is shut down. The I/O reactor of a connection manager
+ * is run by a single client, so the client started on a shared connection manager is returned for it again while active: the instance is shared,
+ * shutting it down stops it for every caller, and a different MBean name than it was started with is rejected.
+ */
+public class AsyncHttpClientFactory
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpClientFactory.class);
+
+    // the client running the I/O reactor, by connection manager
+    private static final Map<ClientAsyncConnectionManager, Started> STARTED = new WeakHashMap<ClientAsyncConnectionManager, Started>();
+
+    private AsyncHttpClientFactory()
+    {}
+
+    /**
+     * Creates a new {@link HttpAsyncClient}
+     * 
+     * @return
+     */
+    public static HttpAsyncClient newInstance()
+    {
+        return newInstance(true);
+    }
+
+    /**
+     * Creates a new {@link HttpAsyncClient} using an existing {@link ClientAsyncConnectionManager} if possible, otherwise using a new created
+     * implicitly. The client already running an existing manager is returned and shared, see {@link AsyncHttpClientFactory}.
+     * 
+     * @param reuseExistingConnMgrIfPossible
+     * @return
+     */
+    public static HttpAsyncClient newInstance(final boolean reuseExistingConnMgrIfPossible)
+    {
+        return newInstance(reuseExistingConnMgrIfPossible, null);
+    }
+
+    /**
+     * Creates a new {@link HttpAsyncClient} that is monitored by a {@link AsyncHttpClientSettings} MBean with the given name.
+     * 
+     * @param mbeanName
+     * @return
+     */
+    public static HttpAsyncClient newInstance(final String mbeanName)
+    {
+        return newInstance(true, mbeanName);
+    }
+
+    /**
+     * Creates a new {@link HttpAsyncClient} monitored by a {@link AsyncHttpClientSettings} MBean with the given name. The client already running an
+     * existing manager is returned and shared, see {@link AsyncHttpClientFactory}.
+     * 
+     * @param reuseExistingConnMgrIfPossible
+     *            use new {@link ClientAsyncConnectionManager} to create {@link HttpAsyncClient} if true
+     * @param mbeanName
+     * @return
+     * @throws IllegalStateException
+     *             if the client already running the manager was started with another MBean name
+     */
+    public static HttpAsyncClient newInstance(final boolean reuseExistingConnMgrIfPossible, final String mbeanName)
+    {
+        final ClientAsyncConnectionManager connMgr = AsyncClientConnMgrFactory.newInstance(reuseExistingConnMgrIfPossible);
+        return createNewInstance(connMgr, mbeanName);
+    }
+
+    /**
+     * Creates a new {@link HttpAsyncClient} using the specified {@link ClientAsyncConnectionManager}
+     * 
+     * @param connMgr
+     * @return
+     */
+    public static HttpAsyncClient newInstance(final ClientAsyncConnectionManager connMgr)
+    {
+        return newInstance(connMgr, null);
+    }
+
+    /**
+     * Creates a new {@link HttpAsyncClient} using the specified {@link ClientAsyncConnectionManager}, and register a {@link AsyncHttpClientSettings}
+     * MBean with the given name for this client. The client already running the manager is returned and shared, see {@link AsyncHttpClientFactory}.
+     * 
+     * @param connMgr
+     * @param mbeanName
+     * @return
+     * @throws IllegalStateException
+     *             if the client already running the manager was started with another MBean name
+     */
+    public static HttpAsyncClient newInstance(final ClientAsyncConnectionManager connMgr, final String mbeanName)
+    {
+        if (!MBeanRegistrar.isMapped(connMgr))
+        {
+            if (connMgr instanceof PoolingClientAsyncConnectionManager)
+            {
+                MBeanRegistrar.registerAsyncClientConnMgrSettings((PoolingClientAsyncConnectionManager) connMgr);
+            }
+            else
+            {
+                LOG.warn("ClientAsyncConnectionManager {} cannot be monitered via JMX, only PoolingClientAsyncConnectionManager is possible", connMgr);
+            }
+        }
+        return createNewInstance(connMgr, mbeanName);
+    }
+
+    private static HttpAsyncClient createNewInstance(final ClientAsyncConnectionManager connMgr, final String mbeanName)
+    {
+        synchronized (STARTED)
+        {
+            final Started startedRef = STARTED.get(connMgr);
+            final HttpAsyncClient started = startedRef == null ? null : startedRef.client.get();
+            // inactive until its I/O thread is up
+            if (started != null && (started.getStatus() == IOReactorStatus.INACTIVE || started.getStatus() == IOReactorStatus.ACTIVE))
+            {
+                if (mbeanName != null && !mbeanName.equals(startedRef.mbeanName))
+                {
+                    throw new IllegalStateException("ClientAsyncConnectionManager is run by HttpAsyncClient " + started + " monitored as "
+                            + startedRef.mbeanName + ", not " + mbeanName);
+                }
+                LOG.info("Reuse HttpAsyncClient {} running ClientAsyncConnectionManager {}", started, connMgr);
+                return started;
+            }
+            if (connMgr.getStatus() != IOReactorStatus.INACTIVE)
+            {
+                throw new IllegalStateException("ClientAsyncConnectionManager is run by another client, or shut down, " + connMgr.getStatus());
+            }
+            final HttpAsyncClient client = startNewInstance(connMgr, mbeanName);
+            STARTED.put(connMgr, new Started(client, mbeanName));
+            return client;
+        }
+    }
+
+    private static HttpAsyncClient startNewInstance(final ClientAsyncConnectionManager connMgr, final String mbeanName)
+    {
+        final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+        final DefaultHttpAsyncClient client = new DefaultHttpAsyncClient(connMgr);
+        final HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, settings.getDefaultConnectionTimeout());
+        HttpConnectionParams.setSoTimeout(params, settings.getDefaultSocketTimeout());
+        client.setKeepAliveStrategy(new ConfigurableKeepAliveStrategy(settings.getDefaultKeepAliveTimeout()));
+        client.start();
+        final String objectName = MBeanRegistrar.registerAsyncHttpClientSettings(client, mbeanName);
+        LOG.info("HttpAsyncClient {} is being monitered by Mbean {}", connMgr, objectName);
+        return client;
+    }
+
+    private static final class Started
+    {
+        final WeakReference<HttpAsyncClient> client;
+        final String mbeanName;
+
+        Started(final HttpAsyncClient client, final String mbeanName)
+        {
+            this.client = new WeakReference<HttpAsyncClient>(client);
+            this.mbeanName = mbeanName;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.AbstractHttpAsyncClient;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.params.HttpConnectionParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AsyncHttpClientSettings implements AsyncHttpClientSettingsMBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncHttpClientSettings.class);
+
+    private final String objectName;
+    private final WeakReference<HttpAsyncClient> clientRef;
+
+    public AsyncHttpClientSettings(final HttpAsyncClient client, final String objectName)
+    {
+        this.objectName = objectName;
+        clientRef = new WeakReference<HttpAsyncClient>(client);
+
+        MBeanReaper.watch(client, objectName);
+    }
+
+    @Override
+    public int getConnectionTimeout()
+    {
+        return HttpConnectionParams.getConnectionTimeout(clientRef.get().getParams());
+    }
+
+    @Override
+    public void setConnectionTimeout(final int connectionTimeout)
+    {
+        HttpConnectionParams.setConnectionTimeout(clientRef.get().getParams(), connectionTimeout);
+        LOG.info("{}: set connectionTimeout with {}", objectName, connectionTimeout);
+    }
+
+    @Override
+    public int getSocketTimeout()
+    {
+        return HttpConnectionParams.getSoTimeout(clientRef.get().getParams());
+    }
+
+    @Override
+    public void setSocketTimeout(final int socketTimeout)
+    {
+        HttpConnectionParams.setSoTimeout(clientRef.get().getParams(), socketTimeout);
+        LOG.info("{}: set socketTimeout with {}", objectName, socketTimeout);
+    }
+
+    @Override
+    public long getKeepAliveTimeout()
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        return strategy == null ? 0 : strategy.getKeepAliveTimeout();
+    }
+
+    @Override
+    public void setKeepAliveTimeout(final long keepAliveTimeout)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null)
+        {
+            LOG.warn("{}: keep-alive is only configurable with ConfigurableKeepAliveStrategy", objectName);
+            return;
+        }
+        strategy.setKeepAliveTimeout(keepAliveTimeout);
+        LOG.info("{}: set keepAliveTimeout with {}", objectName, keepAliveTimeout);
+    }
+
+    @Override
+    public Map<String, Long> getHostKeepAliveTimeouts()
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null) { return Collections.emptyMap(); }
+        return strategy.getHostKeepAliveTimeouts();
+    }
+
+    @Override
+    public void setHostKeepAliveTimeout(final String host, final long keepAliveTimeout)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null)
+        {
+            LOG.warn("{}: keep-alive is only configurable with ConfigurableKeepAliveStrategy", objectName);
+            return;
+        }
+        strategy.setHostKeepAliveTimeout(host, keepAliveTimeout);
+        LOG.info("{}: set keepAliveTimeout of {} with {}", objectName, host, keepAliveTimeout);
+    }
+
+    @Override
+    public void clearHostKeepAliveTimeout(final String host)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy != null)
+        {
+            strategy.clearHostKeepAliveTimeout(host);
+            LOG.info("{}: cleared keepAliveTimeout of {}", objectName, host);
+        }
+    }
+
+    @Override
+    public String getStatus()
+    {
+        return String.valueOf(clientRef.get().getStatus());
+    }
+
+    private ConfigurableKeepAliveStrategy keepAliveStrategy()
+    {
+        final HttpAsyncClient client = clientRef.get();
+        if (!(client instanceof AbstractHttpAsyncClient)) { return null; }
+        final ConnectionKeepAliveStrategy strategy = ((AbstractHttpAsyncClient) client).getConnectionKeepAliveStrategy();
+        return strategy instanceof ConfigurableKeepAliveStrategy ? (ConfigurableKeepAliveStrategy) strategy : null;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.github.pqian.http;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface AsyncHttpClientSettingsMBean
+{
+    int getConnectionTimeout();
+
+    void setConnectionTimeout(final int connectionTimeout);
+
+    int getSocketTimeout();
+
+    void setSocketTimeout(final int socketTimeout);
+
+    /**
+     * Returns the time in milliseconds a connection is kept alive at most, unless the server asks for less. Not positive for indefinitely.
+     * 
+     * @return
+     */
+    long getKeepAliveTimeout();
+
+    void setKeepAliveTimeout(final long keepAliveTimeout);
+
+    Map<String, Long> getHostKeepAliveTimeouts();
+
+    void setHostKeepAliveTimeout(final String host, final long keepAliveTimeout);
+
+    void clearHostKeepAliveTimeout(final String host);
+
+    String getStatus();
+}
@@ -0,0 +1,236 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.Resource;
+
+/**
+ * An LRU {@link HttpCacheStorage} bounded by entries and by bytes, accounted separately for bodies kept on heap and in files. The least recently used
+ * entries of a tier over its limit are evicted. A resource is disposed only once no entry of it is reachable any more, since a response served from
+ * the cache may still be reading it, see {@link #cleanResources()}.
+ */
+public class BoundedHttpCacheStorage implements HttpCacheStorage
+{
+    private final LinkedHashMap<String, HttpCacheEntry> entries = new LinkedHashMap<String, HttpCacheEntry>(16, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+    // entries stored, enqueued once collected, counted by resource as entries may share one
+    private final ReferenceQueue<HttpCacheEntry> collected = new ReferenceQueue<HttpCacheEntry>();
+    private final Set<EntryReference> references = new HashSet<EntryReference>();
+    private final Map<Resource, Integer> referenceCounts = new IdentityHashMap<Resource, Integer>();
+    private long heapBytes;
+    private long fileBytes;
+    private long maxHeapBytes;
+    private long maxFileBytes;
+    private int maxEntries;
+
+    public BoundedHttpCacheStorage(final long maxHeapBytes, final long maxFileBytes, final int maxEntries)
+    {
+        this.maxHeapBytes = maxHeapBytes;
+        this.maxFileBytes = maxFileBytes;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public synchronized void putEntry(final String key, final HttpCacheEntry entry) throws IOException
+    {
+        cleanResources();
+        final HttpCacheEntry old = entries.put(key, entry);
+        if (old != null)
+        {
+            account(old, -1);
+        }
+        account(entry, 1);
+        track(entry);
+        evict();
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(final String key) throws IOException
+    {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void removeEntry(final String key) throws IOException
+    {
+        cleanResources();
+        final HttpCacheEntry old = entries.remove(key);
+        if (old != null)
+        {
+            account(old, -1);
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(final String key, final HttpCacheUpdateCallback callback) throws IOException
+    {
+        putEntry(key, callback.update(entries.get(key)));
+    }
+
+    /**
+     * Removes all entries, their resources disposed once collected.
+     */
+    public synchronized void flush()
+    {
+        entries.clear();
+        heapBytes = 0;
+        fileBytes = 0;
+        cleanResources();
+    }
+
+    /**
+     * Disposes the resources of which no entry is reachable any more, called on every put and remove.
+     */
+    public synchronized void cleanResources()
+    {
+        EntryReference ref;
+        while ((ref = (EntryReference) collected.poll()) != null)
+        {
+            references.remove(ref);
+            final int count = referenceCounts.remove(ref.resource) - 1;
+            if (count > 0)
+            {
+                referenceCounts.put(ref.resource, count);
+            }
+            else
+            {
+                ref.resource.dispose();
+            }
+        }
+    }
+
+    private void track(final HttpCacheEntry entry)
+    {
+        final Resource resource = entry.getResource();
+        if (resource == null) { return; }
+        references.add(new EntryReference(entry, resource, collected));
+        final Integer count = referenceCounts.get(resource);
+        referenceCounts.put(resource, count == null ? 1 : count + 1);
+    }
+
+    private void evict()
+    {
+        final Iterator<Map.Entry<String, HttpCacheEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (heapBytes > maxHeapBytes || fileBytes > maxFileBytes || entries.size() > maxEntries))
+        {
+            final HttpCacheEntry entry = it.next().getValue();
+            final boolean inFile = TieredResourceFactory.isFile(entry.getResource());
+            // keep entries of a tier within its limit
+            if (entries.size() > maxEntries || (inFile ? fileBytes > maxFileBytes : heapBytes > maxHeapBytes))
+            {
+                it.remove();
+                account(entry, -1);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void account(final HttpCacheEntry entry, final int sign)
+    {
+        final Resource resource = entry.getResource();
+        long size = resource == null ? 0 : resource.length();
+        final boolean inFile = TieredResourceFactory.isFile(resource);
+        if (!inFile)
+        {
+            for (final Header header : entry.getAllHeaders())
+            {
+                size += header.getName().length() + header.getValue().length();
+            }
+        }
+        if (inFile)
+        {
+            fileBytes += sign * size;
+        }
+        else
+        {
+            heapBytes += sign * size;
+        }
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the bytes of bodies and headers kept on heap.
+     * 
+     * @return
+     */
+    public synchronized long getHeapBytes()
+    {
+        return heapBytes;
+    }
+
+    /**
+     * Returns the bytes of bodies kept in files.
+     * 
+     * @return
+     */
+    public synchronized long getFileBytes()
+    {
+        return fileBytes;
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public synchronized long getMaxHeapBytes()
+    {
+        return maxHeapBytes;
+    }
+
+    public synchronized void setMaxHeapBytes(final long maxHeapBytes)
+    {
+        this.maxHeapBytes = maxHeapBytes;
+        evict();
+    }
+
+    public synchronized long getMaxFileBytes()
+    {
+        return maxFileBytes;
+    }
+
+    public synchronized void setMaxFileBytes(final long maxFileBytes)
+    {
+        this.maxFileBytes = maxFileBytes;
+        evict();
+    }
+
+    public synchronized int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    public synchronized void setMaxEntries(final int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    private static final class EntryReference extends PhantomReference<HttpCacheEntry>
+    {
+        final Resource resource;
+
+        EntryReference(final HttpCacheEntry entry, final Resource resource, final ReferenceQueue<HttpCacheEntry> queue)
+        {
+            super(entry, queue);
+            this.resource = resource;
+        }
+    }
+}
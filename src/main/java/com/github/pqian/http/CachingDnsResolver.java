@@ -0,0 +1,335 @@
+package com.github.pqian.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.OperatedClientConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DnsResolver} caching the addresses of hosts for a time to live, refreshed in the background once most of it has passed, so that opening
+ * a connection rarely waits for a lookup. The addresses are ordered for every connection, round-robin or by the least open connections, so that the
+ * connections of a route spread over all addresses of its host; the next addresses stay in place for connecting to fall back to.
+ */
+public class CachingDnsResolver implements DnsResolver
+{
+    public enum Spreading
+    {
+        NONE, ROUND_ROBIN, LEAST_CONNECTIONS
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    // the share of the time to live after which an entry is refreshed on its next hit
+    private static final double REFRESH_AHEAD = 0.75;
+
+    // lookups block, kept apart from the maintenance thread
+    private static final ThreadPoolExecutor REFRESHER = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable r)
+                {
+                    final Thread thread = new Thread(r, "HttpDnsRefresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static
+    {
+        REFRESHER.allowCoreThreadTimeOut(true);
+    }
+
+    private final DnsResolver resolver;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    // connections opened by address, closed ones are dropped whenever counted
+    private final ConcurrentMap<InetAddress, Set<OperatedClientConnection>> connections = new ConcurrentHashMap<InetAddress, Set<OperatedClientConnection>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram lookupTime = new LatencyHistogram();
+    private volatile long ttl;
+    private volatile Spreading spreading;
+
+    /**
+     * Creates a resolver caching the addresses looked up by the given one.
+     * 
+     * @param resolver
+     * @param ttl
+     *            in milliseconds, not positive for looking up every time
+     * @param spreading
+     */
+    public CachingDnsResolver(final DnsResolver resolver, final long ttl, final Spreading spreading)
+    {
+        if (resolver == null) { throw new IllegalArgumentException("DNS resolver must not be null"); }
+        this.resolver = resolver;
+        this.ttl = ttl;
+        setSpreading(spreading);
+    }
+
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException
+    {
+        final long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        Entry entry = entries.get(host);
+        final long age = entry == null ? 0 : System.nanoTime() - entry.resolvedAt;
+        if (entry == null || age >= ttlNanos)
+        {
+            misses.incrementAndGet();
+            // the rotation goes on across lookups
+            entry = new Entry(lookup(host), entry == null ? new AtomicInteger() : entry.cursor);
+            entries.put(host, entry);
+        }
+        else
+        {
+            hits.incrementAndGet();
+            if (age >= ttlNanos * REFRESH_AHEAD && entry.refreshing.compareAndSet(false, true))
+            {
+                refresh(host, entry);
+            }
+        }
+        return spread(entry);
+    }
+
+    private InetAddress[] lookup(final String host) throws UnknownHostException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            final InetAddress[] addresses = resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) { throw new UnknownHostException(host); }
+            return addresses;
+        }
+        catch (final UnknownHostException e)
+        {
+            failures.incrementAndGet();
+            throw e;
+        }
+        finally
+        {
+            lookupTime.record(System.nanoTime() - start);
+        }
+    }
+
+    private void refresh(final String host, final Entry entry)
+    {
+        REFRESHER.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    entries.replace(host, entry, new Entry(lookup(host), entry.cursor));
+                    refreshes.incrementAndGet();
+                }
+                catch (final UnknownHostException e)
+                {
+                    // kept until expired, refreshed again by the next hit
+                    LOG.warn("Refreshing addresses of {} failed, {}", host, e.toString());
+                    entry.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private InetAddress[] spread(final Entry entry)
+    {
+        final InetAddress[] addresses = entry.addresses;
+        final Spreading spreadBy = spreading;
+        if (addresses.length < 2 || spreadBy == Spreading.NONE) { return addresses.clone(); }
+        final int start = (entry.cursor.getAndIncrement() & Integer.MAX_VALUE) % addresses.length;
+        int first = start;
+        if (spreadBy == Spreading.LEAST_CONNECTIONS)
+        {
+            // ties go round-robin
+            int least = Integer.MAX_VALUE;
+            for (int i = 0; i < addresses.length; i++)
+            {
+                final int index = (start + i) % addresses.length;
+                final int open = countOpen(addresses[index]);
+                if (open < least)
+                {
+                    least = open;
+                    first = index;
+                }
+            }
+        }
+        final InetAddress[] ordered = new InetAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++)
+        {
+            ordered[i] = addresses[(first + i) % addresses.length];
+        }
+        return ordered;
+    }
+
+    /**
+     * Notes a connection opened, to the address it is connected to.
+     * 
+     * @param conn
+     */
+    void connected(final OperatedClientConnection conn)
+    {
+        final InetAddress address = conn.getRemoteAddress();
+        if (address == null) { return; }
+        Set<OperatedClientConnection> conns = connections.get(address);
+        if (conns == null)
+        {
+            final Set<OperatedClientConnection> newConns = Collections.newSetFromMap(new ConcurrentHashMap<OperatedClientConnection, Boolean>());
+            conns = connections.putIfAbsent(address, newConns);
+            if (conns == null)
+            {
+                conns = newConns;
+            }
+        }
+        conns.add(conn);
+        // bounded by the connections open
+        countOpen(address);
+    }
+
+    private int countOpen(final InetAddress address)
+    {
+        final Set<OperatedClientConnection> conns = connections.get(address);
+        if (conns == null) { return 0; }
+        int open = 0;
+        for (final OperatedClientConnection conn : conns)
+        {
+            if (conn.isOpen())
+            {
+                open++;
+            }
+            else
+            {
+                conns.remove(conn);
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Returns the connections open by address.
+     * 
+     * @return
+     */
+    public Map<String, Integer> getAddressConnections()
+    {
+        final Map<String, Integer> open = new TreeMap<String, Integer>();
+        for (final InetAddress address : connections.keySet())
+        {
+            open.put(address.getHostAddress(), countOpen(address));
+        }
+        return open;
+    }
+
+    /**
+     * Drops all cached addresses, looked up again on next use.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns the time in milliseconds addresses are cached, not positive for looking up every time.
+     * 
+     * @return
+     */
+    public long getTtl()
+    {
+        return ttl;
+    }
+
+    public void setTtl(final long ttl)
+    {
+        this.ttl = ttl;
+    }
+
+    public Spreading getSpreading()
+    {
+        return spreading;
+    }
+
+    public void setSpreading(final Spreading spreading)
+    {
+        if (spreading == null) { throw new IllegalArgumentException("Spreading must not be null"); }
+        this.spreading = spreading;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the share of resolutions answered from the cache.
+     * 
+     * @return
+     */
+    public double getHitRate()
+    {
+        final long hitCount = hits.get();
+        final long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Returns how many entries were refreshed ahead of expiry.
+     * 
+     * @return
+     */
+    public long getRefreshes()
+    {
+        return refreshes.get();
+    }
+
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * Returns the time lookups by the underlying resolver have taken, failed ones and refreshes included.
+     * 
+     * @return
+     */
+    public LatencyHistogram getLookupTime()
+    {
+        return lookupTime;
+    }
+
+    private static final class Entry
+    {
+        final InetAddress[] addresses;
+        final long resolvedAt = System.nanoTime();
+        final AtomicInteger cursor;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(final InetAddress[] addresses, final AtomicInteger cursor)
+        {
+            this.addresses = addresses;
+            this.cursor = cursor;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker and bulkhead of a single route. The breaker opens after consecutive failures, lets a single trial request through once open long
+ * enough, and closes again when the trial succeeds. The bulkhead bounds how many requests of the route are in flight at the same time.
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakers config;
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong trips = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long openedAt;
+    // set via JMX, overrides the state as long as it is not null
+    private volatile State forcedState;
+
+    CircuitBreaker(final CircuitBreakers config)
+    {
+        this.config = config;
+    }
+
+    /**
+     * Admits a request, to be followed by {@link #release(boolean, boolean)} or {@link #cancel(boolean)} once done.
+     * 
+     * @param route
+     * @return whether the request is the trial of the half open breaker, the only one deciding whether it closes
+     * @throws RequestRejectedException
+     *             if the breaker is open or the bulkhead is full
+     */
+    boolean acquire(final String route) throws RequestRejectedException
+    {
+        final State forced = forcedState;
+        final boolean trial = forced == null && takeTrial();
+        if (!trial && (forced == null ? state.get() : forced) != State.CLOSED)
+        {
+            rejected.incrementAndGet();
+            throw new RequestRejectedException("Circuit breaker of " + route + " is open");
+        }
+        final int bulkheadSize = config.getBulkheadSize();
+        int current;
+        do
+        {
+            current = inFlight.get();
+            if (bulkheadSize > 0 && current >= bulkheadSize)
+            {
+                rejected.incrementAndGet();
+                if (trial)
+                {
+                    // give the trial back, otherwise the breaker stays half open for good
+                    state.compareAndSet(State.HALF_OPEN, State.OPEN);
+                }
+                throw new RequestRejectedException("Bulkhead of " + route + " is full with " + current + " requests");
+            }
+        }
+        while (!inFlight.compareAndSet(current, current + 1));
+        return trial;
+    }
+
+    private boolean takeTrial()
+    {
+        // exactly one caller gets the trial
+        return state.get() == State.OPEN && System.currentTimeMillis() - openedAt >= config.getOpenDuration()
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * Records the outcome of an admitted request. Requests admitted before the breaker opened do not close it again.
+     * 
+     * @param trial
+     *            as returned on admission
+     * @param success
+     */
+    void release(final boolean trial, final boolean success)
+    {
+        inFlight.decrementAndGet();
+        if (success)
+        {
+            consecutiveFailures.set(0);
+            if (trial)
+            {
+                state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+            }
+        }
+        else if (trial)
+        {
+            if (state.compareAndSet(State.HALF_OPEN, State.OPEN))
+            {
+                openedAt = System.currentTimeMillis();
+                trips.incrementAndGet();
+            }
+        }
+        else if (consecutiveFailures.incrementAndGet() >= config.getFailureThreshold() && state.compareAndSet(State.CLOSED, State.OPEN))
+        {
+            openedAt = System.currentTimeMillis();
+            trips.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gives back an admitted request given up by the caller, e.g. a hedge aborted, neither a success nor a failure of the route.
+     * 
+     * @param trial
+     *            as returned on admission
+     */
+    void cancel(final boolean trial)
+    {
+        inFlight.decrementAndGet();
+        if (trial)
+        {
+            // give the trial back
+            state.compareAndSet(State.HALF_OPEN, State.OPEN);
+        }
+    }
+
+    public State getState()
+    {
+        final State forced = forcedState;
+        return forced == null ? state.get() : forced;
+    }
+
+    /**
+     * Keeps the breaker in the given state regardless of failures, or lets failures drive it again if null.
+     * 
+     * @param forcedState
+     */
+    void force(final State forcedState)
+    {
+        this.forcedState = forcedState;
+        if (forcedState == null)
+        {
+            consecutiveFailures.set(0);
+            state.set(State.CLOSED);
+        }
+    }
+
+    public boolean isForced()
+    {
+        return forcedState != null;
+    }
+
+    public CircuitBreakerStats getStats()
+    {
+        return new CircuitBreakerStats(getState().name(), isForced(), inFlight.get(), consecutiveFailures.get(), trips.get(), rejected.get());
+    }
+}
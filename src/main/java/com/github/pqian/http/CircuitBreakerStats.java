@@ -0,0 +1,65 @@
+package com.github.pqian.http;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of a {@link CircuitBreaker}, mapped to CompositeData by {@link HttpClientSettingsMBean}.
+ */
+public class CircuitBreakerStats
+{
+    private final String state;
+    private final boolean forced;
+    private final int inFlight;
+    private final int consecutiveFailures;
+    private final long trips;
+    private final long rejected;
+
+    @ConstructorProperties({ "state", "forced", "inFlight", "consecutiveFailures", "trips", "rejected" })
+    public CircuitBreakerStats(final String state, final boolean forced, final int inFlight, final int consecutiveFailures, final long trips,
+            final long rejected)
+    {
+        this.state = state;
+        this.forced = forced;
+        this.inFlight = inFlight;
+        this.consecutiveFailures = consecutiveFailures;
+        this.trips = trips;
+        this.rejected = rejected;
+    }
+
+    public String getState()
+    {
+        return state;
+    }
+
+    public boolean isForced()
+    {
+        return forced;
+    }
+
+    public int getInFlight()
+    {
+        return inFlight;
+    }
+
+    public int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    public long getTrips()
+    {
+        return trips;
+    }
+
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[state: " + state + (forced ? " (forced)" : "") + "; inFlight: " + inFlight + "; consecutiveFailures: " + consecutiveFailures
+                + "; trips: " + trips + "; rejected: " + rejected + "]";
+    }
+}
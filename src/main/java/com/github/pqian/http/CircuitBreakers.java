@@ -0,0 +1,107 @@
+package com.github.pqian.http;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.HttpHost;
+
+/**
+ * Per-route {@link CircuitBreaker}s of a {@link MonitoredHttpClient}, keyed by the URI of the target host and sharing the same thresholds.
+ */
+public class CircuitBreakers
+{
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+    private volatile int failureThreshold;
+    private volatile long openDuration;
+    private volatile int bulkheadSize;
+
+    public CircuitBreakers(final int failureThreshold, final long openDuration, final int bulkheadSize)
+    {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.bulkheadSize = bulkheadSize;
+    }
+
+    static String routeOf(final HttpHost target)
+    {
+        return RequestMetrics.routeOf(target);
+    }
+
+    /**
+     * Returns the breaker of the given route, created if not yet.
+     * 
+     * @param route
+     *            e.g. http://localhost:8080
+     * @return
+     */
+    public CircuitBreaker get(final String route)
+    {
+        final CircuitBreaker breaker = breakers.get(route);
+        if (breaker != null) { return breaker; }
+        final CircuitBreaker newBreaker = new CircuitBreaker(this);
+        final CircuitBreaker existing = breakers.putIfAbsent(route, newBreaker);
+        return existing == null ? newBreaker : existing;
+    }
+
+    CircuitBreaker get(final HttpHost target)
+    {
+        return get(routeOf(target));
+    }
+
+    public Map<String, CircuitBreakerStats> getStats()
+    {
+        final Map<String, CircuitBreakerStats> stats = new TreeMap<String, CircuitBreakerStats>();
+        for (final Map.Entry<String, CircuitBreaker> entry : breakers.entrySet())
+        {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns how many consecutive failures of a route open its breaker.
+     * 
+     * @return
+     */
+    public int getFailureThreshold()
+    {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(final int failureThreshold)
+    {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Returns the time in milliseconds an open breaker rejects requests before letting a trial through.
+     * 
+     * @return
+     */
+    public long getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    public void setOpenDuration(final long openDuration)
+    {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Returns the maximum of requests in flight per route, not positive for unbounded.
+     * 
+     * @return
+     */
+    public int getBulkheadSize()
+    {
+        return bulkheadSize;
+    }
+
+    public void setBulkheadSize(final int bulkheadSize)
+    {
+        this.bulkheadSize = bulkheadSize;
+    }
+}
@@ -1,7 +1,11 @@
 package com.github.pqian.http;
 
+import java.util.Map;
+
 import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,9 +68,82 @@ public class ClientConnMgrFactory
             }
         }
 
-        final PoolingClientConnectionManager newMgr = new PoolingClientConnectionManager();
-        newMgr.setDefaultMaxPerRoute(HttpSettings.INSTANCE.getDefaultMaxConnectionsPerRoute());
-        newMgr.setMaxTotal(HttpSettings.INSTANCE.getDefaultMaxTotalConnections());
+        return createNewInstance(null, HttpSettings.snapshot(), mbeanName);
+    }
+
+    /**
+     * Creates a new {@link ClientConnectionManager} resolving hosts with the given {@link DnsResolver}, e.g. a {@link CachingDnsResolver}, monitored
+     * by a {@link ClientConnMgrSettings} MBean with the given name.
+     * 
+     * @param dnsResolver
+     * @param mbeanName
+     * @return
+     */
+    public static ClientConnectionManager newInstance(final DnsResolver dnsResolver, final String mbeanName)
+    {
+        if (dnsResolver == null) { throw new IllegalArgumentException("DNS resolver must not be null"); }
+        return createNewInstance(dnsResolver, HttpSettings.snapshot(), mbeanName);
+    }
+
+    /**
+     * Creates a new {@link ClientConnectionManager} spreading its connections over the given number of pools, monitored by a
+     * {@link ClientConnMgrSettings} MBean with the given name.
+     * 
+     * @param stripes
+     * @param stripeBy
+     * @param mbeanName
+     * @return
+     */
+    public static ClientConnectionManager newStripedInstance(final int stripes, final StripedClientConnMgr.StripeBy stripeBy, final String mbeanName)
+    {
+        final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+        return setUp(new StripedClientConnMgr(stripes, stripeBy, newDnsResolver(settings)), settings, mbeanName);
+    }
+
+    /**
+     * Opens the given number of connections per route of a {@link ClientConnectionManager} in parallel ahead of traffic, within the time budget in
+     * milliseconds. The connections are kept in the pool until leased, or evicted once idle longer than its max idle time.
+     * 
+     * @param connMgr
+     * @param targets
+     * @param timeBudget
+     * @return
+     */
+    public static WarmUpResult warmUp(final ClientConnectionManager connMgr, final Map<HttpRoute, Integer> targets, final long timeBudget)
+    {
+        return PoolWarmer.warmUp(connMgr, targets, timeBudget);
+    }
+
+    private static ClientConnectionManager createNewInstance(final DnsResolver dnsResolver, final HttpSettingsSnapshot settings, final String mbeanName)
+    {
+        final DnsResolver resolver = dnsResolver != null ? dnsResolver : newDnsResolver(settings);
+        if (settings.getDefaultStripeCount() > 1)
+        {
+            return setUp(new StripedClientConnMgr(settings.getDefaultStripeCount(), StripedClientConnMgr.StripeBy.valueOf(settings.getDefaultStripeBy()),
+                    resolver), settings, mbeanName);
+        }
+        return setUp(new MonitoredClientConnMgr(resolver), settings, mbeanName);
+    }
+
+    private static DnsResolver newDnsResolver(final HttpSettingsSnapshot settings)
+    {
+        final CachingDnsResolver.Spreading spreading = CachingDnsResolver.Spreading.valueOf(settings.getDefaultDnsSpreading());
+        if (settings.getDefaultDnsCacheTtl() <= 0 && spreading == CachingDnsResolver.Spreading.NONE) { return new SystemDefaultDnsResolver(); }
+        return new CachingDnsResolver(new SystemDefaultDnsResolver(), settings.getDefaultDnsCacheTtl(), spreading);
+    }
+
+    private static ClientConnectionManager setUp(final MonitoredClientConnMgr newMgr, final HttpSettingsSnapshot settings, final String mbeanName)
+    {
+        newMgr.setDefaultMaxPerRoute(settings.getDefaultMaxConnectionsPerRoute());
+        newMgr.setMaxTotal(settings.getDefaultMaxTotalConnections());
+        newMgr.setMaxIdleTime(settings.getDefaultMaxIdleTime());
+        IdleConnectionEvictor.schedule(newMgr, settings.getDefaultEvictionInterval());
+        newMgr.setLeaseWaitThreshold(settings.getDefaultLeaseWaitThreshold());
+        PoolStarvationMonitor.schedule(newMgr, settings.getDefaultStarvationCheckInterval());
+        if (settings.isDefaultAutosizingEnabled())
+        {
+            ConnPoolAutosizer.schedule(newMgr, settings.getDefaultAutosizingInterval());
+        }
         final String objectName = MBeanRegistrar.registerClientConnMgrSettings(newMgr, mbeanName);
         LOG.info("ClientConnectionManager {} is being monitered by Mbean {}", newMgr, objectName);
         return newMgr;
@@ -1,41 +1,66 @@
 package com.github.pqian.http;
 
 import java.lang.ref.WeakReference;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.AttributeChangeNotification;
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ClientConnMgrSettings implements ClientConnMgrSettingsMBean
+public class ClientConnMgrSettings extends NotificationBroadcasterSupport implements ClientConnMgrSettingsMBean
 {
     private static final Logger LOG = LoggerFactory.getLogger(ClientConnMgrSettings.class);
 
-    private static final Timer DAEMON = new Timer("ClientConnMgrSettingsUnregistrar");
+    /**
+     * Notification type emitted once lease wait times cross the threshold or leases time out.
+     */
+    public static final String POOL_STARVING = "pqian.http.pool.starving";
+    /**
+     * Notification type emitted once lease wait times are back below the threshold.
+     */
+    public static final String POOL_RECOVERED = "pqian.http.pool.recovered";
+
+    private static final MBeanNotificationInfo[] NOTIFICATION_INFO = {
+            new MBeanNotificationInfo(new String[] { AttributeChangeNotification.ATTRIBUTE_CHANGE }, AttributeChangeNotification.class.getName(),
+                    "Pool limits adjusted by autosizing"),
+            new MBeanNotificationInfo(new String[] { POOL_STARVING, POOL_RECOVERED }, Notification.class.getName(),
+                    "Lease wait time crossed the threshold") };
 
     private final String objectName;
     private final WeakReference<PoolingClientConnectionManager> connMgrRef;
+    // per-route maximums set via JMX, kept to be applied again whenever limits of the pool are rebuilt
+    private final ConcurrentMap<HttpRoute, Integer> maxPerRouteOverrides = new ConcurrentHashMap<HttpRoute, Integer>();
+    // routes ever overridden, the pool cannot forget them but follow the default maximum again once cleared
+    private final Set<HttpRoute> overriddenRoutes = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+    private final AtomicLong notificationSequence = new AtomicLong();
 
     public ClientConnMgrSettings(final PoolingClientConnectionManager connMgr, final String objectName)
     {
         this.objectName = objectName;
         connMgrRef = new WeakReference<PoolingClientConnectionManager>(connMgr);
 
-        final TimerTask task = new TimerTask()
+        MBeanReaper.watch(connMgr, objectName);
+        if (connMgr instanceof MonitoredClientConnMgr)
         {
-            @Override
-            public void run()
-            {
-                if (connMgrRef.get() == null)
-                {
-                    this.cancel();
-                    MBeanRegistrar.unregisterMBean(objectName);
-                    LOG.info("ClientConnMgrSettings unregistered {}", objectName);
-                }
-            }
-        };
-        DAEMON.schedule(task, 30 * 1000, 30 * 1000);
+            ((MonitoredClientConnMgr) connMgr).setSettings(this);
+        }
     }
 
     @Override
@@ -47,7 +72,9 @@ public class ClientConnMgrSettings implements ClientConnMgrSettingsMBean
     @Override
     public void setDefaultMaxPerRoute(final int defaultMaxPerRoute)
     {
-        connMgrRef.get().setDefaultMaxPerRoute(defaultMaxPerRoute);
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        connMgr.setDefaultMaxPerRoute(defaultMaxPerRoute);
+        applyMaxPerRouteOverrides(connMgr);
         LOG.info("{}: set defaultMaxPerRoute with {}", objectName, defaultMaxPerRoute);
     }
 
@@ -64,4 +91,465 @@ public class ClientConnMgrSettings implements ClientConnMgrSettingsMBean
         LOG.info("{}: set maxTotal with {}", objectName, maxTotal);
     }
 
+    @Override
+    public ConnPoolStats getTotalStats()
+    {
+        return ConnPoolStats.of(connMgrRef.get().getTotalStats());
+    }
+
+    @Override
+    public Map<String, ConnPoolStats> getRouteStats()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        final Map<String, ConnPoolStats> routeStats = new TreeMap<String, ConnPoolStats>();
+        if (connMgr instanceof MonitoredClientConnMgr)
+        {
+            for (final HttpRoute route : ((MonitoredClientConnMgr) connMgr).getRoutes())
+            {
+                routeStats.put(route.toString(), ConnPoolStats.of(connMgr.getStats(route)));
+            }
+        }
+        return routeStats;
+    }
+
+    @Override
+    public List<ConnPoolStats> getStripeStats()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (connMgr instanceof StripedClientConnMgr)
+        {
+            return ((StripedClientConnMgr) connMgr).getStripeStats();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getRoutes()
+    {
+        final List<String> routes = new ArrayList<String>();
+        for (final HttpRoute route : knownRoutes(connMgrRef.get()))
+        {
+            routes.add(route.toString());
+        }
+        Collections.sort(routes);
+        return routes;
+    }
+
+    @Override
+    public int getMaxPerRoute(final String route)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr.getMaxPerRoute(HttpRoutes.parse(route, knownRoutes(connMgr)));
+    }
+
+    @Override
+    public void setMaxPerRoute(final String route, final int maxPerRoute)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        final HttpRoute httpRoute = HttpRoutes.parse(route, knownRoutes(connMgr));
+        overriddenRoutes.add(httpRoute);
+        maxPerRouteOverrides.put(httpRoute, maxPerRoute);
+        connMgr.setMaxPerRoute(httpRoute, maxPerRoute);
+        LOG.info("{}: set maxPerRoute of {} with {}", objectName, httpRoute, maxPerRoute);
+    }
+
+    @Override
+    public void clearMaxPerRoute(final String route)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        final HttpRoute httpRoute = HttpRoutes.parse(route, knownRoutes(connMgr));
+        maxPerRouteOverrides.remove(httpRoute);
+        connMgr.setMaxPerRoute(httpRoute, connMgr.getDefaultMaxPerRoute());
+        LOG.info("{}: cleared maxPerRoute of {}", objectName, httpRoute);
+    }
+
+    @Override
+    public Map<String, Integer> getMaxPerRouteOverrides()
+    {
+        final Map<String, Integer> overrides = new TreeMap<String, Integer>();
+        for (final Map.Entry<HttpRoute, Integer> entry : maxPerRouteOverrides.entrySet())
+        {
+            overrides.put(entry.getKey().toString(), entry.getValue());
+        }
+        return overrides;
+    }
+
+    @Override
+    public WarmUpResult warmUp(final String[] routes, final int[] connections, final long timeBudget)
+    {
+        if (routes.length != connections.length) { throw new IllegalArgumentException("Routes and connections differ in length"); }
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        final Set<HttpRoute> knownRoutes = knownRoutes(connMgr);
+        final Map<HttpRoute, Integer> targets = new LinkedHashMap<HttpRoute, Integer>();
+        for (int i = 0; i < routes.length; i++)
+        {
+            final HttpRoute route = HttpRoutes.parse(routes[i], knownRoutes);
+            final Integer target = targets.get(route);
+            targets.put(route, target == null ? connections[i] : target + connections[i]);
+        }
+        final WarmUpResult result = PoolWarmer.warmUp(connMgr, targets, timeBudget);
+        LOG.info("{}: warmed up {} with {}", new Object[] { objectName, targets, result });
+        return result;
+    }
+
+    @Override
+    public long getMaxIdleTime()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getMaxIdleTime() : 0;
+    }
+
+    @Override
+    public void setMaxIdleTime(final long maxIdleTime)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr))
+        {
+            LOG.warn("{}: eviction is only possible for MonitoredClientConnMgr", objectName);
+            return;
+        }
+        ((MonitoredClientConnMgr) connMgr).setMaxIdleTime(maxIdleTime);
+        LOG.info("{}: set maxIdleTime with {}", objectName, maxIdleTime);
+    }
+
+    @Override
+    public long getEvictedConnections()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getEvictedConnections() : 0;
+    }
+
+    @Override
+    public long getEvictionRuns()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getEvictionRuns() : 0;
+    }
+
+    @Override
+    public long getReusedConnections()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getReusedConnections() : 0;
+    }
+
+    @Override
+    public long getOpenedConnections()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getOpenedConnections() : 0;
+    }
+
+    @Override
+    public int getPermitsInUse()
+    {
+        final RoutePermits permits = routePermits();
+        return permits == null ? 0 : permits.getPermitsInUse();
+    }
+
+    @Override
+    public int getQueuedWaiters()
+    {
+        final RoutePermits permits = routePermits();
+        return permits == null ? 0 : permits.getQueuedWaiters();
+    }
+
+    @Override
+    public long getRejectedRequests()
+    {
+        final RoutePermits permits = routePermits();
+        return permits == null ? 0 : permits.getRejected();
+    }
+
+    @Override
+    public double getLeaseWaitP50()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getLeaseWaitTime().getPercentile(50) : 0;
+    }
+
+    @Override
+    public double getLeaseWaitP99()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getLeaseWaitTime().getPercentile(99) : 0;
+    }
+
+    @Override
+    public double getLeaseWaitMax()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getLeaseWaitTime().getMax() : 0;
+    }
+
+    @Override
+    public long getPoolTimeouts()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getPoolTimeouts() : 0;
+    }
+
+    @Override
+    public long getLeaseWaitThreshold()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getLeaseWaitThreshold() : 0;
+    }
+
+    @Override
+    public void setLeaseWaitThreshold(final long leaseWaitThreshold)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr))
+        {
+            LOG.warn("{}: starvation notifications are only possible for MonitoredClientConnMgr", objectName);
+            return;
+        }
+        ((MonitoredClientConnMgr) connMgr).setLeaseWaitThreshold(leaseWaitThreshold);
+        LOG.info("{}: set leaseWaitThreshold with {}", objectName, leaseWaitThreshold);
+    }
+
+    @Override
+    public double getLeaseWaitPercentile()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getLeaseWaitPercentile() : 0;
+    }
+
+    @Override
+    public void setLeaseWaitPercentile(final double leaseWaitPercentile)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr))
+        {
+            LOG.warn("{}: starvation notifications are only possible for MonitoredClientConnMgr", objectName);
+            return;
+        }
+        if (leaseWaitPercentile <= 0 || leaseWaitPercentile > 100)
+        {
+            throw new IllegalArgumentException("Percentile out of (0, 100], " + leaseWaitPercentile);
+        }
+        ((MonitoredClientConnMgr) connMgr).setLeaseWaitPercentile(leaseWaitPercentile);
+        LOG.info("{}: set leaseWaitPercentile with {}", objectName, leaseWaitPercentile);
+    }
+
+    @Override
+    public boolean isAutosizingEnabled()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr)) { return false; }
+        final ConnPoolAutosizer autosizer = ((MonitoredClientConnMgr) connMgr).getAutosizer();
+        return autosizer != null && autosizer.isEnabled();
+    }
+
+    @Override
+    public synchronized void setAutosizingEnabled(final boolean autosizingEnabled)
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr))
+        {
+            LOG.warn("{}: autosizing is only possible for MonitoredClientConnMgr", objectName);
+            return;
+        }
+        final MonitoredClientConnMgr monitoredConnMgr = (MonitoredClientConnMgr) connMgr;
+        final ConnPoolAutosizer autosizer = monitoredConnMgr.getAutosizer();
+        if (autosizer != null)
+        {
+            autosizer.setEnabled(autosizingEnabled);
+        }
+        else if (autosizingEnabled)
+        {
+            ConnPoolAutosizer.schedule(monitoredConnMgr, HttpSettings.snapshot().getDefaultAutosizingInterval());
+        }
+        LOG.info("{}: set autosizingEnabled with {}", objectName, autosizingEnabled);
+    }
+
+    @Override
+    public long getDnsCacheTtl()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getTtl();
+    }
+
+    @Override
+    public void setDnsCacheTtl(final long dnsCacheTtl)
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        if (resolver == null)
+        {
+            LOG.warn("{}: caching addresses is only possible with CachingDnsResolver", objectName);
+            return;
+        }
+        resolver.setTtl(dnsCacheTtl);
+        LOG.info("{}: set dnsCacheTtl with {}", objectName, dnsCacheTtl);
+    }
+
+    @Override
+    public String getDnsSpreading()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return (resolver == null ? CachingDnsResolver.Spreading.NONE : resolver.getSpreading()).name();
+    }
+
+    @Override
+    public void setDnsSpreading(final String dnsSpreading)
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        if (resolver == null)
+        {
+            LOG.warn("{}: spreading connections is only possible with CachingDnsResolver", objectName);
+            return;
+        }
+        resolver.setSpreading(CachingDnsResolver.Spreading.valueOf(dnsSpreading.toUpperCase()));
+        LOG.info("{}: set dnsSpreading with {}", objectName, dnsSpreading);
+    }
+
+    @Override
+    public double getDnsCacheHitRate()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getHitRate();
+    }
+
+    @Override
+    public long getDnsCacheMisses()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getMisses();
+    }
+
+    @Override
+    public long getDnsRefreshes()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getRefreshes();
+    }
+
+    @Override
+    public long getDnsLookupFailures()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getFailures();
+    }
+
+    @Override
+    public double getDnsLookupP50()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getLookupTime().getPercentile(50);
+    }
+
+    @Override
+    public double getDnsLookupP99()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? 0 : resolver.getLookupTime().getPercentile(99);
+    }
+
+    @Override
+    public Map<String, Integer> getDnsAddressConnections()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        return resolver == null ? Collections.<String, Integer> emptyMap() : resolver.getAddressConnections();
+    }
+
+    @Override
+    public void clearDnsCache()
+    {
+        final CachingDnsResolver resolver = dnsResolver();
+        if (resolver != null)
+        {
+            resolver.clear();
+            LOG.info("{}: cleared DNS cache", objectName);
+        }
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo()
+    {
+        return NOTIFICATION_INFO.clone();
+    }
+
+    /**
+     * Emits a notification that a limit of the pool is adjusted.
+     * 
+     * @param limit
+     * @param oldValue
+     * @param newValue
+     */
+    void notifyResized(final String limit, final int oldValue, final int newValue)
+    {
+        LOG.info("{}: autosized {} from {} to {}", objectName, limit, oldValue, newValue);
+        sendNotification(new AttributeChangeNotification(this, notificationSequence.incrementAndGet(), System.currentTimeMillis(), limit
+                + " autosized from " + oldValue + " to " + newValue, limit, "int", oldValue, newValue));
+    }
+
+    /**
+     * Emits a notification that the pool starts or stops starving.
+     * 
+     * @param starving
+     * @param percentile
+     * @param waitTime in milliseconds
+     * @param poolTimeouts within the last interval
+     */
+    void notifyStarvation(final boolean starving, final double percentile, final double waitTime, final long poolTimeouts)
+    {
+        final String message = String.format("Lease wait time p%s %.3fms, %d pool timeouts", percentile, waitTime, poolTimeouts);
+        if (starving)
+        {
+            LOG.warn("{}: pool starving, {}", objectName, message);
+        }
+        else
+        {
+            LOG.info("{}: pool recovered, {}", objectName, message);
+        }
+        final Notification notification = new Notification(starving ? POOL_STARVING : POOL_RECOVERED, this, notificationSequence.incrementAndGet(),
+                System.currentTimeMillis(), message);
+        notification.setUserData(waitTime);
+        sendNotification(notification);
+    }
+
+    boolean isMaxPerRouteOverridden(final HttpRoute route)
+    {
+        return maxPerRouteOverrides.containsKey(route);
+    }
+
+    /**
+     * Applies per-route maximums set via JMX to the given pool, and lets cleared routes follow its default maximum.
+     * 
+     * @param connMgr
+     */
+    void applyMaxPerRouteOverrides(final PoolingClientConnectionManager connMgr)
+    {
+        for (final HttpRoute route : overriddenRoutes)
+        {
+            final Integer maxPerRoute = maxPerRouteOverrides.get(route);
+            connMgr.setMaxPerRoute(route, maxPerRoute != null ? maxPerRoute : connMgr.getDefaultMaxPerRoute());
+        }
+    }
+
+    private CachingDnsResolver dnsResolver()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        if (!(connMgr instanceof MonitoredClientConnMgr)) { return null; }
+        final DnsResolver resolver = ((MonitoredClientConnMgr) connMgr).getDnsResolver();
+        return resolver instanceof CachingDnsResolver ? (CachingDnsResolver) resolver : null;
+    }
+
+    private RoutePermits routePermits()
+    {
+        final PoolingClientConnectionManager connMgr = connMgrRef.get();
+        return connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getRoutePermits() : null;
+    }
+
+    private Set<HttpRoute> knownRoutes(final PoolingClientConnectionManager connMgr)
+    {
+        final Set<HttpRoute> routes = new HashSet<HttpRoute>(overriddenRoutes);
+        if (connMgr instanceof MonitoredClientConnMgr)
+        {
+            routes.addAll(((MonitoredClientConnMgr) connMgr).getRoutes());
+        }
+        return routes;
+    }
+
 }
@@ -1,5 +1,8 @@
 package com.github.pqian.http;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.management.MXBean;
 
 @MXBean
@@ -12,4 +15,193 @@ public interface ClientConnMgrSettingsMBean
     int getMaxTotal();
 
     void setMaxTotal(final int maxTotal);
+
+    ConnPoolStats getTotalStats();
+
+    /**
+     * Returns stats of every known route, keyed by route.
+     * 
+     * @return
+     */
+    Map<String, ConnPoolStats> getRouteStats();
+
+    /**
+     * Returns stats of every stripe of a striped connection manager, empty if not striped.
+     * 
+     * @return
+     */
+    List<ConnPoolStats> getStripeStats();
+
+    /**
+     * Returns all known routes, i.e. routes leased for or with maximums set.
+     * 
+     * @return
+     */
+    List<String> getRoutes();
+
+    /**
+     * Returns the maximum of a route, given either as a known route or in form of <code>scheme://host[:port]</code>.
+     * 
+     * @param route
+     * @return
+     */
+    int getMaxPerRoute(final String route);
+
+    void setMaxPerRoute(final String route, final int maxPerRoute);
+
+    /**
+     * Clears the maximum of a route set before, so that the route follows defaultMaxPerRoute again.
+     * 
+     * @param route
+     */
+    void clearMaxPerRoute(final String route);
+
+    Map<String, Integer> getMaxPerRouteOverrides();
+
+    /**
+     * Opens connections of routes ahead of traffic in parallel, each route given as for {@link #getMaxPerRoute(String)} along with its number
+     * of connections, within the time budget in milliseconds.
+     * 
+     * @param routes
+     * @param connections
+     * @param timeBudget
+     * @return
+     */
+    WarmUpResult warmUp(final String[] routes, final int[] connections, final long timeBudget);
+
+    /**
+     * Returns the time in milliseconds a connection may be idle before evicted, not positive for never.
+     * 
+     * @return
+     */
+    long getMaxIdleTime();
+
+    void setMaxIdleTime(final long maxIdleTime);
+
+    long getEvictedConnections();
+
+    long getEvictionRuns();
+
+    long getReusedConnections();
+
+    long getOpenedConnections();
+
+    /**
+     * Returns how many requests run by {@link HttpClientExecutor}s hold a route permit.
+     * 
+     * @return
+     */
+    int getPermitsInUse();
+
+    int getQueuedWaiters();
+
+    /**
+     * Returns how many requests run by {@link HttpClientExecutor}s were rejected without a route permit in time.
+     * 
+     * @return
+     */
+    long getRejectedRequests();
+
+    /**
+     * Returns the median time in milliseconds callers have waited for a connection from the pool.
+     * 
+     * @return
+     */
+    double getLeaseWaitP50();
+
+    double getLeaseWaitP99();
+
+    double getLeaseWaitMax();
+
+    /**
+     * Returns how many leases failed with ConnectionPoolTimeoutException.
+     * 
+     * @return
+     */
+    long getPoolTimeouts();
+
+    /**
+     * Returns the lease wait time in milliseconds at the lease wait percentile from which a starving notification is emitted, not positive for never.
+     * 
+     * @return
+     */
+    long getLeaseWaitThreshold();
+
+    void setLeaseWaitThreshold(final long leaseWaitThreshold);
+
+    /**
+     * Returns the percentile of lease wait times over each check interval compared with the threshold, e.g. 99.
+     * 
+     * @return
+     */
+    double getLeaseWaitPercentile();
+
+    void setLeaseWaitPercentile(final double leaseWaitPercentile);
+
+    /**
+     * Returns whether per-route and total limits are adjusted to the load automatically, each adjustment emitted as a notification.
+     * 
+     * @return
+     */
+    boolean isAutosizingEnabled();
+
+    void setAutosizingEnabled(final boolean autosizingEnabled);
+
+    /**
+     * Returns the time in milliseconds addresses of hosts are cached, not positive for looking up every time, or for no {@link CachingDnsResolver}.
+     * 
+     * @return
+     */
+    long getDnsCacheTtl();
+
+    void setDnsCacheTtl(final long dnsCacheTtl);
+
+    /**
+     * Returns how connections spread over the addresses of a host, either <code>NONE</code>, <code>ROUND_ROBIN</code> or
+     * <code>LEAST_CONNECTIONS</code>.
+     * 
+     * @return
+     */
+    String getDnsSpreading();
+
+    void setDnsSpreading(final String dnsSpreading);
+
+    /**
+     * Returns the share of host resolutions answered from the cache.
+     * 
+     * @return
+     */
+    double getDnsCacheHitRate();
+
+    long getDnsCacheMisses();
+
+    /**
+     * Returns how many cached addresses were refreshed in the background ahead of expiry.
+     * 
+     * @return
+     */
+    long getDnsRefreshes();
+
+    long getDnsLookupFailures();
+
+    /**
+     * Returns the median time in milliseconds lookups of the underlying resolver have taken.
+     * 
+     * @return
+     */
+    double getDnsLookupP50();
+
+    double getDnsLookupP99();
+
+    /**
+     * Returns the connections open by resolved address.
+     * 
+     * @return
+     */
+    Map<String, Integer> getDnsAddressConnections();
+
+    /**
+     * Drops all cached addresses, looked up again on next use.
+     */
+    void clearDnsCache();
 }
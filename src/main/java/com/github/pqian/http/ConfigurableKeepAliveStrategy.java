@@ -0,0 +1,77 @@
+package com.github.pqian.http;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keeps a connection alive no longer than a time to live, given per host or by default, even if the server sends no Keep-Alive header.
+ */
+public class ConfigurableKeepAliveStrategy implements ConnectionKeepAliveStrategy
+{
+    private final ConnectionKeepAliveStrategy serverStrategy = new DefaultConnectionKeepAliveStrategy();
+    private final ConcurrentMap<String, Long> hostKeepAliveTimeouts = new ConcurrentHashMap<String, Long>();
+    private volatile long keepAliveTimeout;
+
+    /**
+     * @param keepAliveTimeout
+     *            time to live in milliseconds, not positive for indefinitely
+     */
+    public ConfigurableKeepAliveStrategy(final long keepAliveTimeout)
+    {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    @Override
+    public long getKeepAliveDuration(final HttpResponse response, final HttpContext context)
+    {
+        final long serverDuration = serverStrategy.getKeepAliveDuration(response, context);
+        final long ttl = getKeepAliveTimeout((HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST));
+        if (ttl <= 0) { return serverDuration; }
+        return serverDuration > 0 ? Math.min(serverDuration, ttl) : ttl;
+    }
+
+    private long getKeepAliveTimeout(final HttpHost target)
+    {
+        if (target != null && !hostKeepAliveTimeouts.isEmpty())
+        {
+            final Long hostKeepAliveTimeout = hostKeepAliveTimeouts.get(target.getHostName().toLowerCase(Locale.ENGLISH));
+            if (hostKeepAliveTimeout != null) { return hostKeepAliveTimeout; }
+        }
+        return keepAliveTimeout;
+    }
+
+    public long getKeepAliveTimeout()
+    {
+        return keepAliveTimeout;
+    }
+
+    public void setKeepAliveTimeout(final long keepAliveTimeout)
+    {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    public Map<String, Long> getHostKeepAliveTimeouts()
+    {
+        return new TreeMap<String, Long>(hostKeepAliveTimeouts);
+    }
+
+    public void setHostKeepAliveTimeout(final String host, final long keepAliveTimeout)
+    {
+        hostKeepAliveTimeouts.put(host.toLowerCase(Locale.ENGLISH), keepAliveTimeout);
+    }
+
+    public void clearHostKeepAliveTimeout(final String host)
+    {
+        hostKeepAliveTimeouts.remove(host.toLowerCase(Locale.ENGLISH));
+    }
+}
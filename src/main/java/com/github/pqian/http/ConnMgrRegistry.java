@@ -0,0 +1,128 @@
+package com.github.pqian.http;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe registry of connection managers weakly referenced, indexed by identity and by object name of their settings MBeans.
+ * Lookups take no locks, entries of collected managers are expunged on registering.
+ */
+class ConnMgrRegistry<M>
+{
+    private final ConcurrentMap<Key<M>, String> objectNames = new ConcurrentHashMap<Key<M>, String>();
+    private final ConcurrentMap<String, Key<M>> connMgrs = new ConcurrentHashMap<String, Key<M>>();
+    private final ReferenceQueue<M> queue = new ReferenceQueue<M>();
+    private volatile Key<M> latest;
+
+    /**
+     * Maps the manager to the object name unless it is mapped already.
+     * 
+     * @param connMgr
+     * @param objectName
+     * @return the object name mapped before, or null if mapped now
+     * @throws IllegalArgumentException
+     *             if the object name is mapped to another manager
+     */
+    String putIfAbsent(final M connMgr, final String objectName)
+    {
+        expunge();
+        final Key<M> key = new Key<M>(connMgr, queue);
+        final String existing = objectNames.putIfAbsent(key, objectName);
+        if (existing != null) { return existing; }
+        while (true)
+        {
+            final Key<M> owner = connMgrs.putIfAbsent(objectName, key);
+            if (owner == null) { break; }
+            if (owner.get() != null)
+            {
+                objectNames.remove(key, objectName);
+                throw new IllegalArgumentException("Object name " + objectName + " is mapped to another connection manager");
+            }
+            // collected, not expunged yet
+            if (connMgrs.replace(objectName, owner, key)) { break; }
+        }
+        latest = key;
+        return null;
+    }
+
+    /**
+     * Returns the manager monitored by the MBean of the given object name, or the latest registered one alive if the object name is null.
+     * 
+     * @param objectName
+     * @return
+     */
+    M find(final String objectName)
+    {
+        if (objectName == null) { return findLatest(); }
+        final Key<M> key = connMgrs.get(objectName);
+        return key == null ? null : key.get();
+    }
+
+    private M findLatest()
+    {
+        final Key<M> key = latest;
+        final M connMgr = key == null ? null : key.get();
+        if (connMgr != null) { return connMgr; }
+        for (final Key<M> other : connMgrs.values())
+        {
+            final M alive = other.get();
+            if (alive != null) { return alive; }
+        }
+        return null;
+    }
+
+    boolean contains(final M connMgr)
+    {
+        return objectNames.containsKey(new Key<M>(connMgr, null));
+    }
+
+    boolean isEmpty()
+    {
+        return objectNames.isEmpty();
+    }
+
+    private void expunge()
+    {
+        Reference<? extends M> ref;
+        while ((ref = queue.poll()) != null)
+        {
+            final String objectName = objectNames.remove(ref);
+            if (objectName != null)
+            {
+                connMgrs.remove(objectName, ref);
+            }
+        }
+    }
+
+    /**
+     * Weak reference equal to another one only if both refer to the same manager, or are the same reference once cleared.
+     */
+    private static class Key<M> extends WeakReference<M>
+    {
+        private final int hash;
+
+        Key(final M connMgr, final ReferenceQueue<M> queue)
+        {
+            super(connMgr, queue);
+            hash = System.identityHashCode(connMgr);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            if (this == obj) { return true; }
+            if (!(obj instanceof Key<?>)) { return false; }
+            final Object referent = get();
+            return referent != null && referent == ((Key<?>) obj).get();
+        }
+    }
+}
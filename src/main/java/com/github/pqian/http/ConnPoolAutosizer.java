@@ -0,0 +1,122 @@
+package com.github.pqian.http;
+
+import java.util.Set;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Grows and shrinks per-route and total limits of a connection manager within the bounds of {@link HttpSettings}, additive increase while requests
+ * wait for connections, multiplicative decrease while less than half of the connections are leased. Besides the requests waiting at the time,
+ * leases having waited since the last run at the lease wait percentile of the manager count as waiting, so that short bursts of contention are not
+ * missed between runs. Routes with maximums set via JMX are left alone. Every adjustment is emitted as a notification of the
+ * {@link ClientConnMgrSettings} MBean.
+ */
+class ConnPoolAutosizer extends MaintenanceScheduler.Task<MonitoredClientConnMgr>
+{
+    private static final double HEADROOM = 1.25;
+    private static final double DECREASE_FACTOR = 0.75;
+    // the lease wait in milliseconds counting as waiting if the manager has no starvation threshold
+    private static final long DEFAULT_LEASE_WAIT_THRESHOLD = 1;
+
+    private volatile boolean enabled = true;
+
+    ConnPoolAutosizer(final MonitoredClientConnMgr connMgr)
+    {
+        super(connMgr);
+    }
+
+    /**
+     * Starts autosizing the given manager with the interval in milliseconds.
+     * 
+     * @param connMgr
+     * @param autosizingInterval
+     */
+    static ConnPoolAutosizer schedule(final MonitoredClientConnMgr connMgr, final long autosizingInterval)
+    {
+        final ConnPoolAutosizer autosizer = new ConnPoolAutosizer(connMgr);
+        connMgr.setAutosizer(autosizer);
+        MaintenanceScheduler.schedule(autosizer, autosizingInterval);
+        return autosizer;
+    }
+
+    boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    void run(final MonitoredClientConnMgr connMgr)
+    {
+        final LatencyHistogram window = connMgr.getAutosizingWindow();
+        final double waitTime = window.getPercentile(connMgr.getLeaseWaitPercentile());
+        window.reset();
+        if (!enabled) { return; }
+        final long threshold = connMgr.getLeaseWaitThreshold();
+        final boolean waited = waitTime >= (threshold > 0 ? threshold : DEFAULT_LEASE_WAIT_THRESHOLD);
+        final HttpSettingsSnapshot bounds = HttpSettings.snapshot();
+        final ClientConnMgrSettings settings = connMgr.getSettings();
+        final Set<HttpRoute> routes = connMgr.getRoutes();
+        // nothing to size the total by yet
+        if (routes.isEmpty()) { return; }
+        int sumOfMaxPerRoute = 0;
+        for (final HttpRoute route : routes)
+        {
+            final PoolStats stats = connMgr.getStats(route);
+            final int max = stats.getMax();
+            int target = max;
+            if (settings == null || !settings.isMaxPerRouteOverridden(route))
+            {
+                if (stats.getPending() > 0)
+                {
+                    target = max + Math.max(1, stats.getPending());
+                }
+                else if (waited)
+                {
+                    // the waits may have been for any route, grow those using all their connections, shrink none
+                    if (stats.getLeased() >= max)
+                    {
+                        target = max + 1;
+                    }
+                }
+                else if (stats.getLeased() < max / 2)
+                {
+                    target = Math.max((int) (max * DECREASE_FACTOR), (int) Math.ceil(stats.getLeased() * HEADROOM));
+                }
+                target = Math.max(bounds.getAutosizingMinPerRoute(), Math.min(bounds.getAutosizingMaxPerRoute(), target));
+                if (target != max)
+                {
+                    connMgr.setMaxPerRoute(route, target);
+                    if (settings != null)
+                    {
+                        settings.notifyResized("MaxPerRoute " + route, max, target);
+                    }
+                }
+            }
+            sumOfMaxPerRoute += target;
+        }
+
+        final PoolStats totalStats = connMgr.getTotalStats();
+        final int maxTotal = totalStats.getMax();
+        // enough for every route to reach its maximum, plus whatever callers are waiting for, plus one if leases waited on the total
+        int needed = Math.max(sumOfMaxPerRoute, totalStats.getLeased() + totalStats.getPending());
+        if (waited && totalStats.getLeased() >= maxTotal)
+        {
+            needed = Math.max(needed, maxTotal + 1);
+        }
+        final int targetTotal = Math.max(bounds.getAutosizingMinPerRoute(), Math.min(bounds.getAutosizingMaxTotal(), needed));
+        if (targetTotal != maxTotal)
+        {
+            connMgr.setMaxTotal(targetTotal);
+            if (settings != null)
+            {
+                settings.notifyResized("MaxTotal", maxTotal, targetTotal);
+            }
+        }
+    }
+}
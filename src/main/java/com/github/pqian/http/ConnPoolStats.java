@@ -0,0 +1,56 @@
+package com.github.pqian.http;
+
+import java.beans.ConstructorProperties;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Immutable snapshot of {@link PoolStats}, mapped to CompositeData by {@link ClientConnMgrSettingsMBean}.
+ */
+public class ConnPoolStats
+{
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final int max;
+
+    @ConstructorProperties({ "leased", "pending", "available", "max" })
+    public ConnPoolStats(final int leased, final int pending, final int available, final int max)
+    {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+    }
+
+    public static ConnPoolStats of(final PoolStats stats)
+    {
+        return new ConnPoolStats(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+    }
+
+    public int getLeased()
+    {
+        return leased;
+    }
+
+    public int getPending()
+    {
+        return pending;
+    }
+
+    public int getAvailable()
+    {
+        return available;
+    }
+
+    public int getMax()
+    {
+        return max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[leased: " + leased + "; pending: " + pending + "; available: " + available + "; max: " + max + "]";
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.pqian.http;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Emits request, lease and eviction events to Java Flight Recorder, so that pool behaviour lines up with GC and CPU in the same recording. Nothing
+ * is emitted unless the JVM has JFR and a recording enables the event; the JFR classes are only touched once found.
+ */
+final class FlightEvents
+{
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightEvents()
+    {}
+
+    /**
+     * Returns whether a recording takes request events, for clients not instrumented otherwise.
+     * 
+     * @return
+     */
+    static boolean isRequestEnabled()
+    {
+        return AVAILABLE && Jfr.REQUEST.isEnabled();
+    }
+
+    /**
+     * Emits a request event.
+     * 
+     * @param target
+     * @param status
+     *            -1 if no response was received
+     * @param nanos
+     */
+    static void request(final HttpHost target, final int status, final long nanos)
+    {
+        if (AVAILABLE)
+        {
+            Jfr.request(target, status, nanos);
+        }
+    }
+
+    static void lease(final HttpRoute route, final long nanos, final boolean timedOut)
+    {
+        if (AVAILABLE)
+        {
+            Jfr.lease(route, nanos, timedOut);
+        }
+    }
+
+    static void eviction(final int evicted, final long maxIdleTime)
+    {
+        if (AVAILABLE)
+        {
+            Jfr.eviction(evicted, maxIdleTime);
+        }
+    }
+
+    private static boolean isAvailable()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        }
+        catch (final ClassNotFoundException e)
+        {
+            return false;
+        }
+        catch (final LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Loaded on first use only, once JFR is known to be there.
+     */
+    private static final class Jfr
+    {
+        static final EventType REQUEST = EventType.getEventType(RequestEvent.class);
+
+        static void request(final HttpHost target, final int status, final long nanos)
+        {
+            final RequestEvent event = new RequestEvent();
+            if (event.isEnabled())
+            {
+                event.target = RequestMetrics.routeOf(target);
+                event.status = status;
+                event.latency = nanos;
+                event.commit();
+            }
+        }
+
+        static void lease(final HttpRoute route, final long nanos, final boolean timedOut)
+        {
+            final LeaseEvent event = new LeaseEvent();
+            if (event.isEnabled())
+            {
+                event.route = route.toString();
+                event.waitTime = nanos;
+                event.timedOut = timedOut;
+                event.commit();
+            }
+        }
+
+        static void eviction(final int evicted, final long maxIdleTime)
+        {
+            final EvictionEvent event = new EvictionEvent();
+            if (event.isEnabled())
+            {
+                event.evicted = evicted;
+                event.maxIdleTime = maxIdleTime;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("pqian.http.Request")
+    @Label("HTTP Request")
+    @Category("HTTP Client")
+    @StackTrace(false)
+    static class RequestEvent extends Event
+    {
+        @Label("Target")
+        String target;
+        @Label("Status")
+        int status;
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("pqian.http.ConnectionLease")
+    @Label("Connection Lease")
+    @Category("HTTP Client")
+    @StackTrace(false)
+    static class LeaseEvent extends Event
+    {
+        @Label("Route")
+        String route;
+        @Label("Wait Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime;
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    @Name("pqian.http.ConnectionEviction")
+    @Label("Connection Eviction")
+    @Category("HTTP Client")
+    @StackTrace(false)
+    static class EvictionEvent extends Event
+    {
+        @Label("Evicted Connections")
+        int evicted;
+        @Label("Max Idle Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long maxIdleTime;
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a copy of an idempotent request by another director once the original has taken longer than {@link RequestHedging} allows, and returns
+ * whichever response arrives first. The request left behind is aborted. Hedges are paid out of the budget of the {@link RetryPolicy}, if any. A
+ * request with an entity is only hedged if the entity is repeatable, and copied once the hedge fires, going on alone if it cannot be copied.
+ */
+class HedgingRequestDirector implements RequestDirector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingRequestDirector.class);
+
+    private final RequestDirector director;
+    private final RequestDirector hedgeDirector;
+    private final RequestHedging hedging;
+    private final RetryPolicy retryPolicy;
+
+    HedgingRequestDirector(final RequestDirector director, final RequestDirector hedgeDirector, final RequestHedging hedging,
+            final RetryPolicy retryPolicy)
+    {
+        this.director = director;
+        this.hedgeDirector = hedgeDirector;
+        this.hedging = hedging;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context) throws HttpException, IOException
+    {
+        final String route = RequestMetrics.routeOf(target);
+        final long start = System.nanoTime();
+        // the copy has to be abortable, and the original too, to be given up once the copy wins
+        final long delay = request instanceof HttpRequestBase && RetryPolicy.isIdempotent(request) && isRepeatable(request) ? hedging.delayOf(route)
+                : 0;
+        if (delay <= 0)
+        {
+            final HttpResponse response = director.execute(target, request, context);
+            hedging.record(route, System.nanoTime() - start);
+            return response;
+        }
+
+        final HttpRequestBase original = (HttpRequestBase) request;
+        final Hedge hedge = new Hedge(target, original, context, start);
+        final ScheduledFuture<?> timer = MaintenanceScheduler.delay(hedge, delay);
+        final HttpResponse response;
+        try
+        {
+            response = director.execute(target, request, context);
+        }
+        catch (final IOException e)
+        {
+            return hedgeOrThrow(timer, hedge, original, e);
+        }
+        catch (final HttpException e)
+        {
+            return hedgeOrThrow(timer, hedge, original, e);
+        }
+        catch (final RuntimeException e)
+        {
+            return hedgeOrThrow(timer, hedge, original, e);
+        }
+
+        timer.cancel(false);
+        if (hedge.claim())
+        {
+            hedging.record(route, System.nanoTime() - start);
+            hedge.abort();
+            return response;
+        }
+        // the hedge has won meanwhile
+        discard(response);
+        original.reset();
+        return hedge.await();
+    }
+
+    private static <E extends Exception> HttpResponse hedgeOrThrow(final ScheduledFuture<?> timer, final Hedge hedge, final HttpRequestBase original,
+            final E e) throws E, IOException
+    {
+        timer.cancel(false);
+        final HttpResponse hedged = hedge.awaitIfFired();
+        if (hedged == null) { throw e; }
+        // aborted by the hedge, usable again for the caller
+        original.reset();
+        return hedged;
+    }
+
+    private static boolean isRepeatable(final HttpRequest request)
+    {
+        if (!(request instanceof HttpEntityEnclosingRequest)) { return true; }
+        final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        return entity == null || entity.isRepeatable();
+    }
+
+    private static void discard(final HttpResponse response)
+    {
+        try
+        {
+            EntityUtils.consume(response.getEntity());
+        }
+        catch (final IOException e)
+        {
+            LOG.debug("Discarding response of a hedged request failed", e);
+        }
+    }
+
+    /**
+     * The second attempt of a request, fired by a timer and executed on the shared executor.
+     */
+    private class Hedge implements Runnable
+    {
+        private static final int PENDING = 0;
+        private static final int FIRED = 1;
+        private static final int CANCELLED = 2;
+
+        private final HttpHost target;
+        private final HttpRequestBase original;
+        // copied once fired
+        private volatile HttpRequestBase copy;
+        private final HttpContext context;
+        private final long start;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // whether a response, of the original or the copy, has been taken
+        private final AtomicBoolean decided = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile HttpResponse response;
+
+        Hedge(final HttpHost target, final HttpRequestBase original, final HttpContext context, final long start)
+        {
+            this.target = target;
+            this.original = original;
+            this.context = context;
+            this.start = start;
+        }
+
+        @Override
+        public void run()
+        {
+            if (decided.get() || !state.compareAndSet(PENDING, FIRED)) { return; }
+            if (retryPolicy != null && !retryPolicy.withdraw())
+            {
+                // out of budget, as if it had failed
+                done.countDown();
+                return;
+            }
+            hedging.recordFired();
+            HttpClientExecutor.sharedExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    attempt();
+                }
+            });
+        }
+
+        private void attempt()
+        {
+            try
+            {
+                copy = (HttpRequestBase) original.clone();
+            }
+            catch (final CloneNotSupportedException e)
+            {
+                // the original goes on alone
+                LOG.debug("Cloning hedged request failed, " + original.getRequestLine(), e);
+                done.countDown();
+                return;
+            }
+            if (decided.get())
+            {
+                done.countDown();
+                return;
+            }
+            try
+            {
+                final HttpResponse hedged = hedgeDirector.execute(target, copy, new BasicHttpContext(context));
+                if (decided.compareAndSet(false, true))
+                {
+                    response = hedged;
+                    hedging.recordWon();
+                    hedging.record(RequestMetrics.routeOf(target), System.nanoTime() - start);
+                    original.abort();
+                }
+                else
+                {
+                    discard(hedged);
+                }
+            }
+            catch (final Exception e)
+            {
+                LOG.debug("Hedged request failed, " + copy.getRequestLine(), e);
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+
+        /**
+         * Takes the response of the original request if the hedge hasn't won yet.
+         * 
+         * @return
+         */
+        boolean claim()
+        {
+            state.compareAndSet(PENDING, CANCELLED);
+            return decided.compareAndSet(false, true);
+        }
+
+        void abort()
+        {
+            final HttpRequestBase firedCopy = copy;
+            if (state.get() == FIRED && firedCopy != null)
+            {
+                firedCopy.abort();
+            }
+        }
+
+        HttpResponse await() throws IOException
+        {
+            try
+            {
+                done.await();
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for hedged request", e);
+            }
+            return response;
+        }
+
+        /**
+         * Returns the response of the hedge after the original request failed, null if not fired or failed as well.
+         * 
+         * @return
+         * @throws IOException
+         */
+        HttpResponse awaitIfFired() throws IOException
+        {
+            if (state.compareAndSet(PENDING, CANCELLED)) { return null; }
+            return await();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HttpCacheSettings implements HttpCacheSettingsMBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCacheSettings.class);
+
+    private final String objectName;
+    private final WeakReference<CachingHttpClient> clientRef;
+    private final WeakReference<BoundedHttpCacheStorage> storageRef;
+
+    public HttpCacheSettings(final CachingHttpClient client, final BoundedHttpCacheStorage storage, final String objectName)
+    {
+        this.objectName = objectName;
+        clientRef = new WeakReference<CachingHttpClient>(client);
+        storageRef = new WeakReference<BoundedHttpCacheStorage>(storage);
+
+        MBeanReaper.watch(client, objectName);
+    }
+
+    @Override
+    public long getCacheHits()
+    {
+        return clientRef.get().getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses()
+    {
+        return clientRef.get().getCacheMisses();
+    }
+
+    @Override
+    public long getCacheUpdates()
+    {
+        return clientRef.get().getCacheUpdates();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        final CachingHttpClient client = clientRef.get();
+        final long hits = client.getCacheHits();
+        final long total = hits + client.getCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public int getEntryCount()
+    {
+        return storageRef.get().getEntryCount();
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return storageRef.get().getEvictions();
+    }
+
+    @Override
+    public long getHeapBytes()
+    {
+        return storageRef.get().getHeapBytes();
+    }
+
+    @Override
+    public long getFileBytes()
+    {
+        return storageRef.get().getFileBytes();
+    }
+
+    @Override
+    public long getMaxHeapBytes()
+    {
+        return storageRef.get().getMaxHeapBytes();
+    }
+
+    @Override
+    public void setMaxHeapBytes(final long maxHeapBytes)
+    {
+        storageRef.get().setMaxHeapBytes(maxHeapBytes);
+        LOG.info("{}: set maxHeapBytes with {}", objectName, maxHeapBytes);
+    }
+
+    @Override
+    public long getMaxFileBytes()
+    {
+        return storageRef.get().getMaxFileBytes();
+    }
+
+    @Override
+    public void setMaxFileBytes(final long maxFileBytes)
+    {
+        storageRef.get().setMaxFileBytes(maxFileBytes);
+        LOG.info("{}: set maxFileBytes with {}", objectName, maxFileBytes);
+    }
+
+    @Override
+    public int getMaxEntries()
+    {
+        return storageRef.get().getMaxEntries();
+    }
+
+    @Override
+    public void setMaxEntries(final int maxEntries)
+    {
+        storageRef.get().setMaxEntries(maxEntries);
+        LOG.info("{}: set maxEntries with {}", objectName, maxEntries);
+    }
+
+    @Override
+    public void flush()
+    {
+        storageRef.get().flush();
+        LOG.info("{}: flushed", objectName);
+    }
+}
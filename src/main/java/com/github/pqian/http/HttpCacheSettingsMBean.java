@@ -0,0 +1,65 @@
+package com.github.pqian.http;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface HttpCacheSettingsMBean
+{
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * Returns how many cached responses were revalidated with the origin server.
+     * 
+     * @return
+     */
+    long getCacheUpdates();
+
+    /**
+     * Returns the ratio of requests served from the cache, 0 if none yet.
+     * 
+     * @return
+     */
+    double getHitRatio();
+
+    int getEntryCount();
+
+    long getEvictions();
+
+    /**
+     * Returns the bytes of bodies and headers kept on heap.
+     * 
+     * @return
+     */
+    long getHeapBytes();
+
+    /**
+     * Returns the bytes of bodies kept in files.
+     * 
+     * @return
+     */
+    long getFileBytes();
+
+    long getMaxHeapBytes();
+
+    void setMaxHeapBytes(final long maxHeapBytes);
+
+    /**
+     * Returns the bytes of bodies kept in files at most, 0 if no file tier is configured.
+     * 
+     * @return
+     */
+    long getMaxFileBytes();
+
+    void setMaxFileBytes(final long maxFileBytes);
+
+    int getMaxEntries();
+
+    void setMaxEntries(final int maxEntries);
+
+    /**
+     * Removes all cached responses.
+     */
+    void flush();
+}
@@ -0,0 +1,156 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.params.HttpConnectionParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs blocking requests of a {@link HttpClient} asynchronously, on virtual threads if the JVM offers them, otherwise on a shared pool of daemon
+ * threads. Concurrent requests per route are bounded by the per-route maximums of a {@link MonitoredClientConnMgr}, so that callers can issue many
+ * requests in parallel without blowing past the pool.
+ */
+public class HttpClientExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientExecutor.class);
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final HttpClient client;
+    private final RoutePermits permits;
+
+    public HttpClientExecutor(final HttpClient client)
+    {
+        this.client = client;
+        final Object connMgr = client.getConnectionManager();
+        permits = connMgr instanceof MonitoredClientConnMgr ? ((MonitoredClientConnMgr) connMgr).getRoutePermits() : null;
+    }
+
+    /**
+     * Executes the request and handles its response asynchronously, the connection is released before the future completes.
+     * 
+     * @param request
+     * @param handler
+     * @return
+     */
+    public <T> CompletableFuture<T> execute(final HttpUriRequest request, final ResponseHandler<? extends T> handler)
+    {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    future.complete(executeWithPermit(request, handler));
+                }
+                catch (final Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Executes the request asynchronously, the response entity is buffered in memory so that the connection is released before the future completes.
+     * 
+     * @param request
+     * @return
+     */
+    public CompletableFuture<HttpResponse> execute(final HttpUriRequest request)
+    {
+        return execute(request, new ResponseHandler<HttpResponse>()
+        {
+            @Override
+            public HttpResponse handleResponse(final HttpResponse response) throws IOException
+            {
+                if (response.getEntity() != null)
+                {
+                    response.setEntity(new BufferedHttpEntity(response.getEntity()));
+                }
+                return response;
+            }
+        });
+    }
+
+    private <T> T executeWithPermit(final HttpUriRequest request, final ResponseHandler<? extends T> handler) throws IOException, InterruptedException
+    {
+        if (permits == null) { return client.execute(request, handler); }
+        final HttpRoute route = routeOf(request.getURI());
+        if (!permits.acquire(route, permitTimeout())) { throw new RejectedExecutionException("No permit of route " + route + " available in time"); }
+        try
+        {
+            return client.execute(request, handler);
+        }
+        finally
+        {
+            permits.release(route);
+        }
+    }
+
+    private long permitTimeout()
+    {
+        final long timeout = HttpClientParams.getConnectionManagerTimeout(client.getParams());
+        return timeout > 0 ? timeout : HttpConnectionParams.getConnectionTimeout(client.getParams());
+    }
+
+    /**
+     * Returns the executor shared by all instances, also running hedged requests of {@link MonitoredHttpClient}s.
+     * 
+     * @return
+     */
+    static ExecutorService sharedExecutor()
+    {
+        return EXECUTOR;
+    }
+
+    private static HttpRoute routeOf(final URI uri)
+    {
+        final HttpHost target = URIUtils.extractHost(uri);
+        return new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+    }
+
+    private static ExecutorService createExecutor()
+    {
+        try
+        {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            LOG.info("Requests are executed on virtual threads");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (final Exception e)
+        {
+            LOG.info("Virtual threads not available, requests are executed on daemon threads");
+            return Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable r)
+                {
+                    final Thread thread = new Thread(r, "HttpClientExecutor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.github.pqian.http;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -13,6 +19,10 @@ public class HttpClientFactory
 {
     private static final Logger LOG = LoggerFactory.getLogger(HttpClientFactory.class);
 
+    // the client whose settings MBean unnamed clients are aggregated into, by connection manager
+    private static final Map<ClientConnectionManager, WeakReference<MonitoredHttpClient>> AGGREGATES =
+            new WeakHashMap<ClientConnectionManager, WeakReference<MonitoredHttpClient>>();
+
     private HttpClientFactory()
     {}
 
@@ -97,14 +107,106 @@ public class HttpClientFactory
         return createNewInstance(connMgr, mbeanName);
     }
 
+    /**
+     * Creates a new {@link HttpClient} caching responses as allowed by HTTP, on heap and optionally in files, bounded by the defaults of
+     * {@link HttpSettings}. Its cache is monitored by a {@link HttpCacheSettings} MBean with the given name.
+     * 
+     * @param mbeanName
+     * @return
+     */
+    public static HttpClient newCachingInstance(final String mbeanName)
+    {
+        final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+        final HttpClient backend = newInstance(mbeanName);
+        final String cacheDirectory = settings.getDefaultCacheDirectory();
+        final long maxFileBytes = settings.getDefaultCacheMaxFileBytes();
+        final File directory;
+        if (maxFileBytes <= 0)
+        {
+            directory = null;
+        }
+        else
+        {
+            directory = cacheDirectory == null || cacheDirectory.isEmpty() ? new File(System.getProperty("java.io.tmpdir")) : new File(cacheDirectory);
+            if (!directory.isDirectory() && !directory.mkdirs())
+            {
+                throw new RuntimeException("Creating cache directory failed, " + directory);
+            }
+        }
+        final BoundedHttpCacheStorage storage = new BoundedHttpCacheStorage(settings.getDefaultCacheMaxHeapBytes(), maxFileBytes,
+                settings.getDefaultCacheMaxEntries());
+        final CacheConfig config = new CacheConfig();
+        config.setMaxObjectSize(settings.getDefaultCacheMaxObjectSize());
+        // a client of its own, responses marked private are fine to cache
+        config.setSharedCache(false);
+        final CachingHttpClient client = new CachingHttpClient(backend, new TieredResourceFactory(directory, settings.getDefaultCacheFileThreshold()),
+                storage, config);
+        final String objectName = MBeanRegistrar.registerHttpCacheSettings(client, storage, mbeanName);
+        LOG.info("CachingHttpClient {} is being monitered by Mbean {}", client, objectName);
+        return client;
+    }
+
+    /**
+     * Creates a new {@link HttpClient} caching responses, see {@link #newCachingInstance(String)}.
+     * 
+     * @return
+     */
+    public static HttpClient newCachingInstance()
+    {
+        return newCachingInstance(null);
+    }
+
+    /**
+     * Creates a {@link HttpClientExecutor} running requests of the specified {@link HttpClient} asynchronously.
+     * 
+     * @param client
+     * @return
+     */
+    public static HttpClientExecutor newExecutor(final HttpClient client)
+    {
+        return new HttpClientExecutor(client);
+    }
+
     private static HttpClient createNewInstance(final ClientConnectionManager connMgr, final String mbeanName)
     {
-        final HttpClient client = new DefaultHttpClient(connMgr);
+        final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+        if ((mbeanName == null || mbeanName.isEmpty()) && settings.isDefaultClientAggregationEnabled())
+        {
+            synchronized (AGGREGATES)
+            {
+                final WeakReference<MonitoredHttpClient> leadRef = AGGREGATES.get(connMgr);
+                final MonitoredHttpClient lead = leadRef == null ? null : leadRef.get();
+                if (lead != null)
+                {
+                    MBeanRegistrar.countAggregated();
+                    return new MonitoredHttpClient(lead);
+                }
+                final MonitoredHttpClient client = createNewInstance(connMgr, mbeanName, settings);
+                AGGREGATES.put(connMgr, new WeakReference<MonitoredHttpClient>(client));
+                return client;
+            }
+        }
+        return createNewInstance(connMgr, mbeanName, settings);
+    }
+
+    private static MonitoredHttpClient createNewInstance(final ClientConnectionManager connMgr, final String mbeanName,
+            final HttpSettingsSnapshot settings)
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(connMgr, settings);
+        client.setInstrumentationEnabled(settings.isDefaultInstrumentationEnabled());
+        client.setCircuitBreakerEnabled(settings.isDefaultCircuitBreakerEnabled());
+        client.setHttpRequestRetryHandler(new RetryPolicy(settings.getDefaultMaxRetries(), settings.getDefaultRetryBackoff(),
+                settings.getDefaultMaxRetryBackoff(), settings.getDefaultRetryBudget()));
+        client.setHedgingEnabled(settings.isDefaultHedgingEnabled());
+        client.setRateLimitEnabled(settings.isDefaultRateLimitEnabled());
+        client.setKeepAliveStrategy(new ConfigurableKeepAliveStrategy(settings.getDefaultKeepAliveTimeout()));
         final HttpParams params = client.getParams();
-        HttpConnectionParams.setConnectionTimeout(params, HttpSettings.INSTANCE.getDefaultConnectionTimeout());
-        HttpConnectionParams.setSoTimeout(params, HttpSettings.INSTANCE.getDefaultSocketTimeout());
+        HttpConnectionParams.setConnectionTimeout(params, settings.getDefaultConnectionTimeout());
+        HttpConnectionParams.setSoTimeout(params, settings.getDefaultSocketTimeout());
         final String objectName = MBeanRegistrar.registerHttpClientSettings(client, mbeanName);
         LOG.info("HttpClient {} is being monitered by Mbean {}", connMgr, objectName);
+        // named alike, even if unnamed
+        MBeanRegistrar.registerRateLimiterSettings(client, MBeanRegistrar.mbeanNameOf(objectName));
         return client;
     }
 
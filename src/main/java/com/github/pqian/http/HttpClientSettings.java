@@ -1,10 +1,14 @@
 package com.github.pqian.http;
 
 import java.lang.ref.WeakReference;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.management.openmbean.TabularData;
 
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.params.HttpConnectionParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +17,6 @@ public class HttpClientSettings implements HttpClientSettingsMBean
 {
     private static final Logger LOG = LoggerFactory.getLogger(HttpClientSettings.class);
 
-    private static final Timer DAEMON = new Timer("ClientHttpSettingsUnregistrar");
-
     private final String objectName;
     private final WeakReference<HttpClient> clientRef;
 
@@ -23,20 +25,7 @@ public class HttpClientSettings implements HttpClientSettingsMBean
         this.objectName = objectName;
         clientRef = new WeakReference<HttpClient>(client);
 
-        final TimerTask task = new TimerTask()
-        {
-            @Override
-            public void run()
-            {
-                if (clientRef.get() == null)
-                {
-                    this.cancel();
-                    MBeanRegistrar.unregisterMBean(objectName);
-                    LOG.info("ClientHttpSettings unregistered {}", objectName);
-                }
-            }
-        };
-        DAEMON.schedule(task, 30 * 1000, 30 * 1000);
+        MBeanReaper.watch(client, objectName);
     }
 
     @Override
@@ -65,4 +54,480 @@ public class HttpClientSettings implements HttpClientSettingsMBean
         LOG.info("{}: set socketTimeout with {}", objectName, socketTimeout);
     }
 
+    @Override
+    public boolean isInstrumentationEnabled()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client != null && client.isInstrumentationEnabled();
+    }
+
+    @Override
+    public void setInstrumentationEnabled(final boolean instrumentationEnabled)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null)
+        {
+            LOG.warn("{}: instrumentation is only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        client.setInstrumentationEnabled(instrumentationEnabled);
+        LOG.info("{}: set instrumentationEnabled with {}", objectName, instrumentationEnabled);
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getMetrics().getRequestCount();
+    }
+
+    @Override
+    public double getThroughput()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getMetrics().getThroughput();
+    }
+
+    @Override
+    public double getLatencyP50()
+    {
+        return getLatencyPercentile(50);
+    }
+
+    @Override
+    public double getLatencyP99()
+    {
+        return getLatencyPercentile(99);
+    }
+
+    @Override
+    public double getLatencyP999()
+    {
+        return getLatencyPercentile(99.9);
+    }
+
+    @Override
+    public LatencyStats getLatencyStats()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? new RequestMetrics().getTotalStats() : client.getMetrics().getTotalStats();
+    }
+
+    @Override
+    public Map<String, LatencyStats> getRouteLatencyStats()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null) { return Collections.emptyMap(); }
+        return client.getMetrics().getRouteStats();
+    }
+
+    @Override
+    public void resetLatencyStats()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client != null)
+        {
+            client.getMetrics().reset();
+            LOG.info("{}: latency stats reset", objectName);
+        }
+    }
+
+    @Override
+    public long getKeepAliveTimeout()
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        return strategy == null ? 0 : strategy.getKeepAliveTimeout();
+    }
+
+    @Override
+    public void setKeepAliveTimeout(final long keepAliveTimeout)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null)
+        {
+            LOG.warn("{}: keep-alive is only configurable with ConfigurableKeepAliveStrategy", objectName);
+            return;
+        }
+        strategy.setKeepAliveTimeout(keepAliveTimeout);
+        LOG.info("{}: set keepAliveTimeout with {}", objectName, keepAliveTimeout);
+    }
+
+    @Override
+    public Map<String, Long> getHostKeepAliveTimeouts()
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null) { return Collections.emptyMap(); }
+        return strategy.getHostKeepAliveTimeouts();
+    }
+
+    @Override
+    public void setHostKeepAliveTimeout(final String host, final long keepAliveTimeout)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy == null)
+        {
+            LOG.warn("{}: keep-alive is only configurable with ConfigurableKeepAliveStrategy", objectName);
+            return;
+        }
+        strategy.setHostKeepAliveTimeout(host, keepAliveTimeout);
+        LOG.info("{}: set keepAliveTimeout of {} with {}", objectName, host, keepAliveTimeout);
+    }
+
+    @Override
+    public void clearHostKeepAliveTimeout(final String host)
+    {
+        final ConfigurableKeepAliveStrategy strategy = keepAliveStrategy();
+        if (strategy != null)
+        {
+            strategy.clearHostKeepAliveTimeout(host);
+            LOG.info("{}: cleared keepAliveTimeout of {}", objectName, host);
+        }
+    }
+
+    @Override
+    public boolean isCircuitBreakerEnabled()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client != null && client.isCircuitBreakerEnabled();
+    }
+
+    @Override
+    public void setCircuitBreakerEnabled(final boolean circuitBreakerEnabled)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null)
+        {
+            LOG.warn("{}: circuit breakers are only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        client.setCircuitBreakerEnabled(circuitBreakerEnabled);
+        LOG.info("{}: set circuitBreakerEnabled with {}", objectName, circuitBreakerEnabled);
+    }
+
+    @Override
+    public int getFailureThreshold()
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        return breakers == null ? 0 : breakers.getFailureThreshold();
+    }
+
+    @Override
+    public void setFailureThreshold(final int failureThreshold)
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        if (breakers == null)
+        {
+            LOG.warn("{}: circuit breakers are only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        breakers.setFailureThreshold(failureThreshold);
+        LOG.info("{}: set failureThreshold with {}", objectName, failureThreshold);
+    }
+
+    @Override
+    public long getOpenDuration()
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        return breakers == null ? 0 : breakers.getOpenDuration();
+    }
+
+    @Override
+    public void setOpenDuration(final long openDuration)
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        if (breakers == null)
+        {
+            LOG.warn("{}: circuit breakers are only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        breakers.setOpenDuration(openDuration);
+        LOG.info("{}: set openDuration with {}", objectName, openDuration);
+    }
+
+    @Override
+    public int getBulkheadSize()
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        return breakers == null ? 0 : breakers.getBulkheadSize();
+    }
+
+    @Override
+    public void setBulkheadSize(final int bulkheadSize)
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        if (breakers == null)
+        {
+            LOG.warn("{}: circuit breakers are only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        breakers.setBulkheadSize(bulkheadSize);
+        LOG.info("{}: set bulkheadSize with {}", objectName, bulkheadSize);
+    }
+
+    @Override
+    public Map<String, CircuitBreakerStats> getCircuitBreakerStats()
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        if (breakers == null) { return Collections.emptyMap(); }
+        return breakers.getStats();
+    }
+
+    @Override
+    public void forceCircuitBreakerOpen(final String route)
+    {
+        forceCircuitBreaker(route, CircuitBreaker.State.OPEN);
+    }
+
+    @Override
+    public void forceCircuitBreakerClosed(final String route)
+    {
+        forceCircuitBreaker(route, CircuitBreaker.State.CLOSED);
+    }
+
+    @Override
+    public void clearForcedCircuitBreaker(final String route)
+    {
+        forceCircuitBreaker(route, null);
+    }
+
+    @Override
+    public int getMaxRetries()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getMaxRetries();
+    }
+
+    @Override
+    public void setMaxRetries(final int maxRetries)
+    {
+        final RetryPolicy policy = retryPolicy();
+        if (policy == null)
+        {
+            LOG.warn("{}: retries are only configurable with RetryPolicy", objectName);
+            return;
+        }
+        policy.setMaxRetries(maxRetries);
+        LOG.info("{}: set maxRetries with {}", objectName, maxRetries);
+    }
+
+    @Override
+    public long getRetryBackoff()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getBackoff();
+    }
+
+    @Override
+    public void setRetryBackoff(final long retryBackoff)
+    {
+        final RetryPolicy policy = retryPolicy();
+        if (policy == null)
+        {
+            LOG.warn("{}: retries are only configurable with RetryPolicy", objectName);
+            return;
+        }
+        policy.setBackoff(retryBackoff);
+        LOG.info("{}: set retryBackoff with {}", objectName, retryBackoff);
+    }
+
+    @Override
+    public long getMaxRetryBackoff()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getMaxBackoff();
+    }
+
+    @Override
+    public void setMaxRetryBackoff(final long maxRetryBackoff)
+    {
+        final RetryPolicy policy = retryPolicy();
+        if (policy == null)
+        {
+            LOG.warn("{}: retries are only configurable with RetryPolicy", objectName);
+            return;
+        }
+        policy.setMaxBackoff(maxRetryBackoff);
+        LOG.info("{}: set maxRetryBackoff with {}", objectName, maxRetryBackoff);
+    }
+
+    @Override
+    public double getRetryBudget()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getBudget();
+    }
+
+    @Override
+    public void setRetryBudget(final double retryBudget)
+    {
+        final RetryPolicy policy = retryPolicy();
+        if (policy == null)
+        {
+            LOG.warn("{}: retries are only configurable with RetryPolicy", objectName);
+            return;
+        }
+        policy.setBudget(retryBudget);
+        LOG.info("{}: set retryBudget with {}", objectName, retryBudget);
+    }
+
+    @Override
+    public long getRetries()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getRetries();
+    }
+
+    @Override
+    public long getRetriesDenied()
+    {
+        final RetryPolicy policy = retryPolicy();
+        return policy == null ? 0 : policy.getRetriesDenied();
+    }
+
+    @Override
+    public boolean isHedgingEnabled()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client != null && client.isHedgingEnabled();
+    }
+
+    @Override
+    public void setHedgingEnabled(final boolean hedgingEnabled)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null)
+        {
+            LOG.warn("{}: hedging is only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        client.setHedgingEnabled(hedgingEnabled);
+        LOG.info("{}: set hedgingEnabled with {}", objectName, hedgingEnabled);
+    }
+
+    @Override
+    public double getHedgePercentile()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getHedging().getPercentile();
+    }
+
+    @Override
+    public void setHedgePercentile(final double hedgePercentile)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null)
+        {
+            LOG.warn("{}: hedging is only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        client.getHedging().setPercentile(hedgePercentile);
+        LOG.info("{}: set hedgePercentile with {}", objectName, hedgePercentile);
+    }
+
+    @Override
+    public long getHedgesFired()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getHedging().getHedgesFired();
+    }
+
+    @Override
+    public long getHedgesWon()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getHedging().getHedgesWon();
+    }
+
+    @Override
+    public double getTraceSampleRate()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getTraceSampler().getRate();
+    }
+
+    @Override
+    public void setTraceSampleRate(final double traceSampleRate)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        if (client == null)
+        {
+            LOG.warn("{}: trace sampling is only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        client.getTraceSampler().setRate(traceSampleRate);
+        LOG.info("{}: set traceSampleRate with {}", objectName, traceSampleRate);
+    }
+
+    @Override
+    public int getTraceBufferSize()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getTraceSampler().getCapacity();
+    }
+
+    @Override
+    public long getTracesSampled()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getTraceSampler().getSampled();
+    }
+
+    @Override
+    public TabularData dumpLatestTraces(final int count)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? TraceSampler.emptyTabularData() : client.getTraceSampler().latest(count);
+    }
+
+    @Override
+    public TabularData dumpSlowestTraces(final int count)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? TraceSampler.emptyTabularData() : client.getTraceSampler().slowest(count);
+    }
+
+    private void forceCircuitBreaker(final String route, final CircuitBreaker.State state)
+    {
+        final CircuitBreakers breakers = circuitBreakers();
+        if (breakers == null)
+        {
+            LOG.warn("{}: circuit breakers are only possible for MonitoredHttpClient", objectName);
+            return;
+        }
+        breakers.get(route).force(state);
+        LOG.info("{}: forced circuit breaker of {} with {}", objectName, route, state);
+    }
+
+    private RetryPolicy retryPolicy()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? null : client.getRetryPolicy();
+    }
+
+    private CircuitBreakers circuitBreakers()
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? null : client.getCircuitBreakers();
+    }
+
+    private double getLatencyPercentile(final double percentile)
+    {
+        final MonitoredHttpClient client = monitoredClient();
+        return client == null ? 0 : client.getMetrics().getHistogram().getPercentile(percentile);
+    }
+
+    private ConfigurableKeepAliveStrategy keepAliveStrategy()
+    {
+        final HttpClient client = clientRef.get();
+        if (!(client instanceof AbstractHttpClient)) { return null; }
+        final ConnectionKeepAliveStrategy strategy = ((AbstractHttpClient) client).getConnectionKeepAliveStrategy();
+        return strategy instanceof ConfigurableKeepAliveStrategy ? (ConfigurableKeepAliveStrategy) strategy : null;
+    }
+
+    private MonitoredHttpClient monitoredClient()
+    {
+        final HttpClient client = clientRef.get();
+        return client instanceof MonitoredHttpClient ? (MonitoredHttpClient) client : null;
+    }
+
 }
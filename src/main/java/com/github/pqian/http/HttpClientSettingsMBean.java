@@ -1,6 +1,9 @@
 package com.github.pqian.http;
 
+import java.util.Map;
+
 import javax.management.MXBean;
+import javax.management.openmbean.TabularData;
 
 @MXBean
 public interface HttpClientSettingsMBean
@@ -12,4 +15,210 @@ public interface HttpClientSettingsMBean
     int getSocketTimeout();
 
     void setSocketTimeout(final int socketTimeout);
+
+    boolean isInstrumentationEnabled();
+
+    void setInstrumentationEnabled(final boolean instrumentationEnabled);
+
+    long getRequestCount();
+
+    /**
+     * Returns requests per second since instrumented or reset.
+     * 
+     * @return
+     */
+    double getThroughput();
+
+    double getLatencyP50();
+
+    double getLatencyP99();
+
+    double getLatencyP999();
+
+    LatencyStats getLatencyStats();
+
+    /**
+     * Returns latency stats of every requested route, keyed by target host.
+     * 
+     * @return
+     */
+    Map<String, LatencyStats> getRouteLatencyStats();
+
+    void resetLatencyStats();
+
+    /**
+     * Returns the time in milliseconds a connection is kept alive at most, unless the server asks for less. Not positive for indefinitely.
+     * 
+     * @return
+     */
+    long getKeepAliveTimeout();
+
+    void setKeepAliveTimeout(final long keepAliveTimeout);
+
+    Map<String, Long> getHostKeepAliveTimeouts();
+
+    void setHostKeepAliveTimeout(final String host, final long keepAliveTimeout);
+
+    void clearHostKeepAliveTimeout(final String host);
+
+    /**
+     * Returns whether requests pass the circuit breaker and bulkhead of their route.
+     * 
+     * @return
+     */
+    boolean isCircuitBreakerEnabled();
+
+    void setCircuitBreakerEnabled(final boolean circuitBreakerEnabled);
+
+    /**
+     * Returns how many consecutive failures, i.e. exceptions or 5xx responses, of a route open its circuit breaker.
+     * 
+     * @return
+     */
+    int getFailureThreshold();
+
+    void setFailureThreshold(final int failureThreshold);
+
+    /**
+     * Returns the time in milliseconds an open circuit breaker rejects requests before letting a trial through.
+     * 
+     * @return
+     */
+    long getOpenDuration();
+
+    void setOpenDuration(final long openDuration);
+
+    /**
+     * Returns the maximum of requests in flight per route, not positive for unbounded.
+     * 
+     * @return
+     */
+    int getBulkheadSize();
+
+    void setBulkheadSize(final int bulkheadSize);
+
+    /**
+     * Returns state, trips and rejections of the circuit breaker of every requested route, keyed by target host.
+     * 
+     * @return
+     */
+    Map<String, CircuitBreakerStats> getCircuitBreakerStats();
+
+    /**
+     * Rejects all requests of the route until cleared.
+     * 
+     * @param route
+     *            e.g. http://localhost:8080
+     */
+    void forceCircuitBreakerOpen(final String route);
+
+    /**
+     * Admits all requests of the route regardless of failures until cleared, the bulkhead still applies.
+     * 
+     * @param route
+     */
+    void forceCircuitBreakerClosed(final String route);
+
+    /**
+     * Lets failures drive the circuit breaker of the route again, starting closed.
+     * 
+     * @param route
+     */
+    void clearForcedCircuitBreaker(final String route);
+
+    /**
+     * Returns how many times an idempotent request failed with an I/O error is retried at most.
+     * 
+     * @return
+     */
+    int getMaxRetries();
+
+    void setMaxRetries(final int maxRetries);
+
+    /**
+     * Returns the backoff in milliseconds before the first retry, doubled for every further retry and jittered.
+     * 
+     * @return
+     */
+    long getRetryBackoff();
+
+    void setRetryBackoff(final long retryBackoff);
+
+    long getMaxRetryBackoff();
+
+    void setMaxRetryBackoff(final long maxRetryBackoff);
+
+    /**
+     * Returns the ratio of retries and hedges to requests allowed, e.g. 0.1 for one per ten requests.
+     * 
+     * @return
+     */
+    double getRetryBudget();
+
+    void setRetryBudget(final double retryBudget);
+
+    long getRetries();
+
+    /**
+     * Returns how many retries were denied because the budget was used up.
+     * 
+     * @return
+     */
+    long getRetriesDenied();
+
+    /**
+     * Returns whether an idempotent request is sent a second time once it is slower than the hedge percentile of its route.
+     * 
+     * @return
+     */
+    boolean isHedgingEnabled();
+
+    void setHedgingEnabled(final boolean hedgingEnabled);
+
+    double getHedgePercentile();
+
+    void setHedgePercentile(final double hedgePercentile);
+
+    long getHedgesFired();
+
+    /**
+     * Returns how many hedged requests responded before the original.
+     * 
+     * @return
+     */
+    long getHedgesWon();
+
+    /**
+     * Returns the share of requests whose timings are sampled, from 0 for none to 1 for all.
+     * 
+     * @return
+     */
+    double getTraceSampleRate();
+
+    void setTraceSampleRate(final double traceSampleRate);
+
+    /**
+     * Returns how many samples are kept, the oldest overwritten first.
+     * 
+     * @return
+     */
+    int getTraceBufferSize();
+
+    long getTracesSampled();
+
+    /**
+     * Returns the latest samples kept, with the lease wait, connect, time to first byte, body read and total times in milliseconds.
+     * 
+     * @param count
+     * @return
+     */
+    TabularData dumpLatestTraces(final int count);
+
+    /**
+     * Returns the slowest samples kept by total time.
+     * 
+     * @param count
+     * @return
+     */
+    TabularData dumpSlowestTraces(final int count);
 }
@@ -0,0 +1,35 @@
+package com.github.pqian.http;
+
+import java.net.URI;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Converts routes given as text via JMX to {@link HttpRoute}.
+ */
+final class HttpRoutes
+{
+    private HttpRoutes()
+    {}
+
+    /**
+     * Returns the known route whose text equals the given one, otherwise parses the text as a direct route in form of <code>scheme://host[:port]</code>.
+     * 
+     * @param route
+     * @param knownRoutes
+     * @return
+     */
+    static HttpRoute parse(final String route, final Iterable<HttpRoute> knownRoutes)
+    {
+        if (route == null || route.trim().isEmpty()) { throw new IllegalArgumentException("Route must not be empty"); }
+        for (final HttpRoute known : knownRoutes)
+        {
+            if (route.equals(known.toString())) { return known; }
+        }
+        final URI uri = URI.create(route.trim());
+        if (uri.getScheme() == null || uri.getHost() == null) { throw new IllegalArgumentException("Route must be in form of scheme://host[:port], " + route); }
+        final HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        return new HttpRoute(target, null, "https".equalsIgnoreCase(uri.getScheme()));
+    }
+}
@@ -1,5 +1,12 @@
 package com.github.pqian.http;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,63 +14,726 @@ public class HttpSettings implements HttpSettingsMBean
 {
     private static final Logger LOG = LoggerFactory.getLogger(HttpSettings.class);
 
-    private static int defaultConnectionTimeout = 5000;
-    private static int defaultSocketTimeout = 20000;
-    private static int defaultMaxConnectionsPerRoute = 1000;
-    private static int defaultMaxTotalConnections = 1000;
+    private static final int HISTORY_SIZE = 16;
+
+    // readers take no locks, writers publish a changed copy holding the class lock
+    private static final AtomicReference<HttpSettingsSnapshot> SNAPSHOT = new AtomicReference<HttpSettingsSnapshot>(new HttpSettingsSnapshot());
+    // published snapshots to roll back to, the latest last, guarded by the class lock
+    private static final LinkedList<HttpSettingsSnapshot> HISTORY = new LinkedList<HttpSettingsSnapshot>(Collections.singleton(SNAPSHOT.get()));
 
     public static final HttpSettings INSTANCE = new HttpSettings();
 
+    /**
+     * Returns the current settings as a whole, to read several attributes of the same version.
+     * 
+     * @return
+     */
+    public static HttpSettingsSnapshot snapshot()
+    {
+        return SNAPSHOT.get();
+    }
+
+    /**
+     * Changes several attributes at once, given by their names in JMX, publishing them as a single new version unless any is invalid.
+     * 
+     * @param attributes
+     * @return the snapshot published
+     */
+    public static synchronized HttpSettingsSnapshot apply(final Map<String, ?> attributes)
+    {
+        final HttpSettingsSnapshot next = SNAPSHOT.get().copy(HISTORY.getLast().getVersion() + 1);
+        for (final Map.Entry<String, ?> attribute : attributes.entrySet())
+        {
+            final Object value = attribute.getValue();
+            next.set(attribute.getKey(), value instanceof String ? SettingsReloader.convert((String) value, HttpSettingsSnapshot.typeOf(attribute.getKey())
+                    .getName()) : value);
+        }
+        next.validate();
+        publish(next);
+        LOG.info("set {} with version {}", attributes, next.getVersion());
+        return next;
+    }
+
+    /**
+     * Publishes the attributes of a version still kept as a new version.
+     * 
+     * @param version
+     * @return the snapshot published
+     */
+    public static synchronized HttpSettingsSnapshot rollback(final long version)
+    {
+        for (final HttpSettingsSnapshot snapshot : HISTORY)
+        {
+            if (snapshot.getVersion() == version)
+            {
+                final HttpSettingsSnapshot next = snapshot.copy(HISTORY.getLast().getVersion() + 1);
+                publish(next);
+                LOG.info("rolled back to version {} with version {}", version, next.getVersion());
+                return next;
+            }
+        }
+        throw new IllegalArgumentException("Settings version not kept, " + version);
+    }
+
+    private static void publish(final HttpSettingsSnapshot next)
+    {
+        SNAPSHOT.set(next);
+        HISTORY.add(next);
+        if (HISTORY.size() > HISTORY_SIZE)
+        {
+            HISTORY.removeFirst();
+        }
+    }
+
+    private static void update(final String attribute, final Object value)
+    {
+        apply(Collections.singletonMap(attribute, value));
+    }
+
     @Override
     public int getDefaultConnectionTimeout()
     {
-        return defaultConnectionTimeout;
+        return SNAPSHOT.get().getDefaultConnectionTimeout();
     }
 
     @Override
     public void setDefaultConnectionTimeout(final int defaultConnectionTimeout)
     {
-        HttpSettings.defaultConnectionTimeout = defaultConnectionTimeout;
-        LOG.info("set defaultConnectionTimeout with {}", defaultConnectionTimeout);
+        update("defaultConnectionTimeout", defaultConnectionTimeout);
     }
 
     @Override
     public int getDefaultSocketTimeout()
     {
-        return defaultSocketTimeout;
+        return SNAPSHOT.get().getDefaultSocketTimeout();
     }
 
     @Override
     public void setDefaultSocketTimeout(final int defaultSocketTimeout)
     {
-        HttpSettings.defaultSocketTimeout = defaultSocketTimeout;
-        LOG.info("set defaultSocketTimeout with {}", defaultSocketTimeout);
+        update("defaultSocketTimeout", defaultSocketTimeout);
     }
 
     @Override
     public int getDefaultMaxConnectionsPerRoute()
     {
-        return defaultMaxConnectionsPerRoute;
+        return SNAPSHOT.get().getDefaultMaxConnectionsPerRoute();
     }
 
     @Override
     public void setDefaultMaxConnectionsPerRoute(final int defaultMaxConnectionsPerRoute)
     {
-        HttpSettings.defaultMaxConnectionsPerRoute = defaultMaxConnectionsPerRoute;
-        LOG.info("set defaultMaxConnectionsPerRoute with {}", defaultMaxConnectionsPerRoute);
+        update("defaultMaxConnectionsPerRoute", defaultMaxConnectionsPerRoute);
     }
 
     @Override
     public int getDefaultMaxTotalConnections()
     {
-        return defaultMaxTotalConnections;
+        return SNAPSHOT.get().getDefaultMaxTotalConnections();
     }
 
     @Override
     public void setDefaultMaxTotalConnections(final int defaultMaxTotalConnections)
     {
-        HttpSettings.defaultMaxTotalConnections = defaultMaxTotalConnections;
-        LOG.info("set defaultMaxTotalConnections with {}", defaultMaxTotalConnections);
+        update("defaultMaxTotalConnections", defaultMaxTotalConnections);
+    }
+
+    @Override
+    public boolean isDefaultInstrumentationEnabled()
+    {
+        return SNAPSHOT.get().isDefaultInstrumentationEnabled();
+    }
+
+    @Override
+    public void setDefaultInstrumentationEnabled(final boolean defaultInstrumentationEnabled)
+    {
+        update("defaultInstrumentationEnabled", defaultInstrumentationEnabled);
+    }
+
+    @Override
+    public long getDefaultEvictionInterval()
+    {
+        return SNAPSHOT.get().getDefaultEvictionInterval();
+    }
+
+    @Override
+    public void setDefaultEvictionInterval(final long defaultEvictionInterval)
+    {
+        update("defaultEvictionInterval", defaultEvictionInterval);
+    }
+
+    @Override
+    public long getDefaultMaxIdleTime()
+    {
+        return SNAPSHOT.get().getDefaultMaxIdleTime();
+    }
+
+    @Override
+    public void setDefaultMaxIdleTime(final long defaultMaxIdleTime)
+    {
+        update("defaultMaxIdleTime", defaultMaxIdleTime);
+    }
+
+    @Override
+    public long getDefaultKeepAliveTimeout()
+    {
+        return SNAPSHOT.get().getDefaultKeepAliveTimeout();
+    }
+
+    @Override
+    public void setDefaultKeepAliveTimeout(final long defaultKeepAliveTimeout)
+    {
+        update("defaultKeepAliveTimeout", defaultKeepAliveTimeout);
+    }
+
+    @Override
+    public int getDefaultIoThreadCount()
+    {
+        return SNAPSHOT.get().getDefaultIoThreadCount();
+    }
+
+    @Override
+    public void setDefaultIoThreadCount(final int defaultIoThreadCount)
+    {
+        update("defaultIoThreadCount", defaultIoThreadCount);
+    }
+
+    @Override
+    public boolean isDefaultAutosizingEnabled()
+    {
+        return SNAPSHOT.get().isDefaultAutosizingEnabled();
+    }
+
+    @Override
+    public void setDefaultAutosizingEnabled(final boolean defaultAutosizingEnabled)
+    {
+        update("defaultAutosizingEnabled", defaultAutosizingEnabled);
+    }
+
+    @Override
+    public long getDefaultAutosizingInterval()
+    {
+        return SNAPSHOT.get().getDefaultAutosizingInterval();
+    }
+
+    @Override
+    public void setDefaultAutosizingInterval(final long defaultAutosizingInterval)
+    {
+        update("defaultAutosizingInterval", defaultAutosizingInterval);
+    }
+
+    @Override
+    public int getAutosizingMinPerRoute()
+    {
+        return SNAPSHOT.get().getAutosizingMinPerRoute();
+    }
+
+    @Override
+    public void setAutosizingMinPerRoute(final int autosizingMinPerRoute)
+    {
+        update("autosizingMinPerRoute", autosizingMinPerRoute);
+    }
+
+    @Override
+    public int getAutosizingMaxPerRoute()
+    {
+        return SNAPSHOT.get().getAutosizingMaxPerRoute();
+    }
+
+    @Override
+    public void setAutosizingMaxPerRoute(final int autosizingMaxPerRoute)
+    {
+        update("autosizingMaxPerRoute", autosizingMaxPerRoute);
+    }
+
+    @Override
+    public int getAutosizingMaxTotal()
+    {
+        return SNAPSHOT.get().getAutosizingMaxTotal();
+    }
+
+    @Override
+    public void setAutosizingMaxTotal(final int autosizingMaxTotal)
+    {
+        update("autosizingMaxTotal", autosizingMaxTotal);
+    }
+
+    @Override
+    public boolean isDefaultClientAggregationEnabled()
+    {
+        return SNAPSHOT.get().isDefaultClientAggregationEnabled();
+    }
+
+    @Override
+    public void setDefaultClientAggregationEnabled(final boolean defaultClientAggregationEnabled)
+    {
+        update("defaultClientAggregationEnabled", defaultClientAggregationEnabled);
+    }
+
+    @Override
+    public int getMaxMBeans()
+    {
+        return SNAPSHOT.get().getMaxMBeans();
+    }
+
+    @Override
+    public void setMaxMBeans(final int maxMBeans)
+    {
+        if (maxMBeans < 0) { throw new IllegalArgumentException("MBean cap must not be negative, " + maxMBeans); }
+        update("maxMBeans", maxMBeans);
+    }
+
+    @Override
+    public long getAggregatedClients()
+    {
+        return MBeanRegistrar.getAggregatedCount();
+    }
+
+    @Override
+    public long getDroppedMBeans()
+    {
+        return MBeanRegistrar.getDroppedCount();
+    }
+
+    @Override
+    public double getDefaultTraceSampleRate()
+    {
+        return SNAPSHOT.get().getDefaultTraceSampleRate();
+    }
+
+    @Override
+    public void setDefaultTraceSampleRate(final double defaultTraceSampleRate)
+    {
+        if (defaultTraceSampleRate < 0 || defaultTraceSampleRate > 1) { throw new IllegalArgumentException("Sample rate must be from 0 to 1, " + defaultTraceSampleRate); }
+        update("defaultTraceSampleRate", defaultTraceSampleRate);
+    }
+
+    @Override
+    public int getDefaultTraceBufferSize()
+    {
+        return SNAPSHOT.get().getDefaultTraceBufferSize();
+    }
+
+    @Override
+    public void setDefaultTraceBufferSize(final int defaultTraceBufferSize)
+    {
+        if (defaultTraceBufferSize < 1) { throw new IllegalArgumentException("Trace buffer size must be positive, " + defaultTraceBufferSize); }
+        update("defaultTraceBufferSize", defaultTraceBufferSize);
+    }
+
+    @Override
+    public long getDefaultDnsCacheTtl()
+    {
+        return SNAPSHOT.get().getDefaultDnsCacheTtl();
+    }
+
+    @Override
+    public void setDefaultDnsCacheTtl(final long defaultDnsCacheTtl)
+    {
+        update("defaultDnsCacheTtl", defaultDnsCacheTtl);
+    }
+
+    @Override
+    public String getDefaultDnsSpreading()
+    {
+        return SNAPSHOT.get().getDefaultDnsSpreading();
+    }
+
+    @Override
+    public void setDefaultDnsSpreading(final String defaultDnsSpreading)
+    {
+        update("defaultDnsSpreading", defaultDnsSpreading);
+    }
+
+    @Override
+    public long getDefaultLeaseWaitThreshold()
+    {
+        return SNAPSHOT.get().getDefaultLeaseWaitThreshold();
+    }
+
+    @Override
+    public void setDefaultLeaseWaitThreshold(final long defaultLeaseWaitThreshold)
+    {
+        update("defaultLeaseWaitThreshold", defaultLeaseWaitThreshold);
+    }
+
+    @Override
+    public long getDefaultStarvationCheckInterval()
+    {
+        return SNAPSHOT.get().getDefaultStarvationCheckInterval();
+    }
+
+    @Override
+    public void setDefaultStarvationCheckInterval(final long defaultStarvationCheckInterval)
+    {
+        update("defaultStarvationCheckInterval", defaultStarvationCheckInterval);
+    }
+
+    @Override
+    public boolean isDefaultCircuitBreakerEnabled()
+    {
+        return SNAPSHOT.get().isDefaultCircuitBreakerEnabled();
+    }
+
+    @Override
+    public void setDefaultCircuitBreakerEnabled(final boolean defaultCircuitBreakerEnabled)
+    {
+        update("defaultCircuitBreakerEnabled", defaultCircuitBreakerEnabled);
+    }
+
+    @Override
+    public int getDefaultFailureThreshold()
+    {
+        return SNAPSHOT.get().getDefaultFailureThreshold();
+    }
+
+    @Override
+    public void setDefaultFailureThreshold(final int defaultFailureThreshold)
+    {
+        update("defaultFailureThreshold", defaultFailureThreshold);
+    }
+
+    @Override
+    public long getDefaultOpenDuration()
+    {
+        return SNAPSHOT.get().getDefaultOpenDuration();
+    }
+
+    @Override
+    public void setDefaultOpenDuration(final long defaultOpenDuration)
+    {
+        update("defaultOpenDuration", defaultOpenDuration);
+    }
+
+    @Override
+    public int getDefaultBulkheadSize()
+    {
+        return SNAPSHOT.get().getDefaultBulkheadSize();
+    }
+
+    @Override
+    public void setDefaultBulkheadSize(final int defaultBulkheadSize)
+    {
+        update("defaultBulkheadSize", defaultBulkheadSize);
+    }
+
+    @Override
+    public int getDefaultMaxRetries()
+    {
+        return SNAPSHOT.get().getDefaultMaxRetries();
+    }
+
+    @Override
+    public void setDefaultMaxRetries(final int defaultMaxRetries)
+    {
+        update("defaultMaxRetries", defaultMaxRetries);
+    }
+
+    @Override
+    public long getDefaultRetryBackoff()
+    {
+        return SNAPSHOT.get().getDefaultRetryBackoff();
+    }
+
+    @Override
+    public void setDefaultRetryBackoff(final long defaultRetryBackoff)
+    {
+        update("defaultRetryBackoff", defaultRetryBackoff);
+    }
+
+    @Override
+    public long getDefaultMaxRetryBackoff()
+    {
+        return SNAPSHOT.get().getDefaultMaxRetryBackoff();
+    }
+
+    @Override
+    public void setDefaultMaxRetryBackoff(final long defaultMaxRetryBackoff)
+    {
+        update("defaultMaxRetryBackoff", defaultMaxRetryBackoff);
+    }
+
+    @Override
+    public double getDefaultRetryBudget()
+    {
+        return SNAPSHOT.get().getDefaultRetryBudget();
+    }
+
+    @Override
+    public void setDefaultRetryBudget(final double defaultRetryBudget)
+    {
+        update("defaultRetryBudget", defaultRetryBudget);
+    }
+
+    @Override
+    public boolean isDefaultHedgingEnabled()
+    {
+        return SNAPSHOT.get().isDefaultHedgingEnabled();
+    }
+
+    @Override
+    public void setDefaultHedgingEnabled(final boolean defaultHedgingEnabled)
+    {
+        update("defaultHedgingEnabled", defaultHedgingEnabled);
+    }
+
+    @Override
+    public double getDefaultHedgePercentile()
+    {
+        return SNAPSHOT.get().getDefaultHedgePercentile();
+    }
+
+    @Override
+    public void setDefaultHedgePercentile(final double defaultHedgePercentile)
+    {
+        update("defaultHedgePercentile", defaultHedgePercentile);
+    }
+
+    @Override
+    public long getDefaultCacheMaxHeapBytes()
+    {
+        return SNAPSHOT.get().getDefaultCacheMaxHeapBytes();
+    }
+
+    @Override
+    public void setDefaultCacheMaxHeapBytes(final long defaultCacheMaxHeapBytes)
+    {
+        update("defaultCacheMaxHeapBytes", defaultCacheMaxHeapBytes);
+    }
+
+    @Override
+    public long getDefaultCacheMaxFileBytes()
+    {
+        return SNAPSHOT.get().getDefaultCacheMaxFileBytes();
+    }
+
+    @Override
+    public void setDefaultCacheMaxFileBytes(final long defaultCacheMaxFileBytes)
+    {
+        update("defaultCacheMaxFileBytes", defaultCacheMaxFileBytes);
+    }
+
+    @Override
+    public String getDefaultCacheDirectory()
+    {
+        return SNAPSHOT.get().getDefaultCacheDirectory();
+    }
+
+    @Override
+    public void setDefaultCacheDirectory(final String defaultCacheDirectory)
+    {
+        update("defaultCacheDirectory", defaultCacheDirectory);
+    }
+
+    @Override
+    public long getDefaultCacheFileThreshold()
+    {
+        return SNAPSHOT.get().getDefaultCacheFileThreshold();
+    }
+
+    @Override
+    public void setDefaultCacheFileThreshold(final long defaultCacheFileThreshold)
+    {
+        update("defaultCacheFileThreshold", defaultCacheFileThreshold);
+    }
+
+    @Override
+    public int getDefaultCacheMaxEntries()
+    {
+        return SNAPSHOT.get().getDefaultCacheMaxEntries();
+    }
+
+    @Override
+    public void setDefaultCacheMaxEntries(final int defaultCacheMaxEntries)
+    {
+        update("defaultCacheMaxEntries", defaultCacheMaxEntries);
+    }
+
+    @Override
+    public long getDefaultCacheMaxObjectSize()
+    {
+        return SNAPSHOT.get().getDefaultCacheMaxObjectSize();
+    }
+
+    @Override
+    public void setDefaultCacheMaxObjectSize(final long defaultCacheMaxObjectSize)
+    {
+        update("defaultCacheMaxObjectSize", defaultCacheMaxObjectSize);
+    }
+
+    @Override
+    public boolean isDefaultRateLimitEnabled()
+    {
+        return SNAPSHOT.get().isDefaultRateLimitEnabled();
+    }
+
+    @Override
+    public void setDefaultRateLimitEnabled(final boolean defaultRateLimitEnabled)
+    {
+        update("defaultRateLimitEnabled", defaultRateLimitEnabled);
+    }
+
+    @Override
+    public double getDefaultRateLimit()
+    {
+        return SNAPSHOT.get().getDefaultRateLimit();
+    }
+
+    @Override
+    public void setDefaultRateLimit(final double defaultRateLimit)
+    {
+        update("defaultRateLimit", defaultRateLimit);
+    }
+
+    @Override
+    public int getDefaultRateLimitBurst()
+    {
+        return SNAPSHOT.get().getDefaultRateLimitBurst();
+    }
+
+    @Override
+    public void setDefaultRateLimitBurst(final int defaultRateLimitBurst)
+    {
+        update("defaultRateLimitBurst", defaultRateLimitBurst);
+    }
+
+    @Override
+    public long getDefaultRateLimitMaxWait()
+    {
+        return SNAPSHOT.get().getDefaultRateLimitMaxWait();
+    }
+
+    @Override
+    public void setDefaultRateLimitMaxWait(final long defaultRateLimitMaxWait)
+    {
+        update("defaultRateLimitMaxWait", defaultRateLimitMaxWait);
+    }
+
+    @Override
+    public int getDefaultStripeCount()
+    {
+        return SNAPSHOT.get().getDefaultStripeCount();
+    }
+
+    @Override
+    public void setDefaultStripeCount(final int defaultStripeCount)
+    {
+        if (defaultStripeCount < 1) { throw new IllegalArgumentException("Stripe count must be positive, " + defaultStripeCount); }
+        update("defaultStripeCount", defaultStripeCount);
+    }
+
+    @Override
+    public String getDefaultStripeBy()
+    {
+        return SNAPSHOT.get().getDefaultStripeBy();
+    }
+
+    @Override
+    public void setDefaultStripeBy(final String defaultStripeBy)
+    {
+        update("defaultStripeBy", defaultStripeBy);
+    }
+
+    @Override
+    public int getReaperWatchedMBeans()
+    {
+        return MBeanReaper.getWatchedCount();
+    }
+
+    @Override
+    public long getReaperUnregisteredMBeans()
+    {
+        return MBeanReaper.getUnregisteredCount();
+    }
+
+    @Override
+    public boolean isLazyMBeanRegistration()
+    {
+        return MBeanRegistrar.isLazyRegistration();
+    }
+
+    @Override
+    public void setLazyMBeanRegistration(final boolean lazyMBeanRegistration)
+    {
+        MBeanRegistrar.setLazyRegistration(lazyMBeanRegistration);
+    }
+
+    @Override
+    public int getPendingMBeans()
+    {
+        return MBeanRegistrar.getPendingCount();
+    }
+
+    @Override
+    public String getSettingsFile()
+    {
+        final File file = SettingsReloader.getWatchedFile();
+        return file == null ? null : file.getPath();
+    }
+
+    @Override
+    public String getSettingsVersion()
+    {
+        return SettingsReloader.getVersion();
+    }
+
+    @Override
+    public long getSettingsReloads()
+    {
+        return SettingsReloader.getReloadCount();
+    }
+
+    @Override
+    public long getSettingsReloadFailures()
+    {
+        return SettingsReloader.getFailedReloadCount();
+    }
+
+    @Override
+    public String reloadSettings()
+    {
+        final File file = SettingsReloader.getWatchedFile();
+        if (file == null) { throw new IllegalStateException("No settings file watched"); }
+        return SettingsReloader.load(file);
+    }
+
+    @Override
+    public long getSnapshotVersion()
+    {
+        return SNAPSHOT.get().getVersion();
+    }
+
+    @Override
+    public long[] getSnapshotVersions()
+    {
+        synchronized (HttpSettings.class)
+        {
+            final long[] versions = new long[HISTORY.size()];
+            int i = 0;
+            for (final HttpSettingsSnapshot snapshot : HISTORY)
+            {
+                versions[i++] = snapshot.getVersion();
+            }
+            return versions;
+        }
+    }
+
+    @Override
+    public long applySettings(final String[] attributes, final String[] values)
+    {
+        if (attributes.length != values.length) { throw new IllegalArgumentException("Attributes and values differ in length"); }
+        final Map<String, String> changes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < attributes.length; i++)
+        {
+            changes.put(attributes[i], values[i]);
+        }
+        return apply(changes).getVersion();
+    }
+
+    @Override
+    public long rollbackSettings(final long version)
+    {
+        return rollback(version).getVersion();
     }
 
 }
@@ -20,4 +20,452 @@ public interface HttpSettingsMBean
     int getDefaultMaxTotalConnections();
 
     void setDefaultMaxTotalConnections(final int defaultMaxTotalConnections);
+
+    boolean isDefaultInstrumentationEnabled();
+
+    void setDefaultInstrumentationEnabled(final boolean defaultInstrumentationEnabled);
+
+    /**
+     * Returns the interval in milliseconds to evict expired and idle connections of a new connection manager, not positive for no eviction.
+     * 
+     * @return
+     */
+    long getDefaultEvictionInterval();
+
+    void setDefaultEvictionInterval(final long defaultEvictionInterval);
+
+    /**
+     * Returns the time in milliseconds a connection of a new connection manager may be idle before evicted, not positive for never.
+     * 
+     * @return
+     */
+    long getDefaultMaxIdleTime();
+
+    void setDefaultMaxIdleTime(final long defaultMaxIdleTime);
+
+    /**
+     * Returns the time in milliseconds a connection of a new client is kept alive at most, unless the server asks for less. Not positive for indefinitely.
+     * 
+     * @return
+     */
+    long getDefaultKeepAliveTimeout();
+
+    void setDefaultKeepAliveTimeout(final long defaultKeepAliveTimeout);
+
+    /**
+     * Returns the count of I/O dispatch threads of a new asynchronous connection manager.
+     * 
+     * @return
+     */
+    int getDefaultIoThreadCount();
+
+    void setDefaultIoThreadCount(final int defaultIoThreadCount);
+
+    /**
+     * Returns whether limits of a new connection manager are adjusted to the load automatically.
+     * 
+     * @return
+     */
+    boolean isDefaultAutosizingEnabled();
+
+    void setDefaultAutosizingEnabled(final boolean defaultAutosizingEnabled);
+
+    /**
+     * Returns the interval in milliseconds to sample a new connection manager and adjust its limits.
+     * 
+     * @return
+     */
+    long getDefaultAutosizingInterval();
+
+    void setDefaultAutosizingInterval(final long defaultAutosizingInterval);
+
+    /**
+     * Returns the lower bound of per-route maximums adjusted by autosizing, applied to all autosized connection managers.
+     * 
+     * @return
+     */
+    int getAutosizingMinPerRoute();
+
+    void setAutosizingMinPerRoute(final int autosizingMinPerRoute);
+
+    /**
+     * Returns the upper bound of per-route maximums adjusted by autosizing, applied to all autosized connection managers.
+     * 
+     * @return
+     */
+    int getAutosizingMaxPerRoute();
+
+    void setAutosizingMaxPerRoute(final int autosizingMaxPerRoute);
+
+    /**
+     * Returns the upper bound of total maximums adjusted by autosizing, applied to all autosized connection managers.
+     * 
+     * @return
+     */
+    int getAutosizingMaxTotal();
+
+    void setAutosizingMaxTotal(final int autosizingMaxTotal);
+
+    /**
+     * Returns whether clients created by {@link HttpClientFactory} without a name share one settings MBean per connection manager, rather than
+     * each registering its own.
+     * 
+     * @return
+     */
+    boolean isDefaultClientAggregationEnabled();
+
+    void setDefaultClientAggregationEnabled(final boolean defaultClientAggregationEnabled);
+
+    /**
+     * Returns how many settings MBeans of managers and clients may be registered at most, 0 for no cap. Registrations beyond are dropped.
+     * 
+     * @return
+     */
+    int getMaxMBeans();
+
+    void setMaxMBeans(final int maxMBeans);
+
+    /**
+     * Returns how many unnamed clients were aggregated into the settings MBean of another client, rather than registered.
+     * 
+     * @return
+     */
+    long getAggregatedClients();
+
+    long getDroppedMBeans();
+
+    /**
+     * Returns the share of requests a new client samples timings of, from 0 for none to 1 for all.
+     * 
+     * @return
+     */
+    double getDefaultTraceSampleRate();
+
+    void setDefaultTraceSampleRate(final double defaultTraceSampleRate);
+
+    /**
+     * Returns how many samples a new client keeps, rounded up to a power of two.
+     * 
+     * @return
+     */
+    int getDefaultTraceBufferSize();
+
+    void setDefaultTraceBufferSize(final int defaultTraceBufferSize);
+
+    /**
+     * Returns the time in milliseconds a new connection manager caches the addresses of hosts, not positive for looking up every time.
+     * 
+     * @return
+     */
+    long getDefaultDnsCacheTtl();
+
+    void setDefaultDnsCacheTtl(final long defaultDnsCacheTtl);
+
+    /**
+     * Returns how a new connection manager spreads connections over the addresses of a host, either <code>NONE</code>, <code>ROUND_ROBIN</code>
+     * or <code>LEAST_CONNECTIONS</code>. The JVM resolver is used as is while <code>NONE</code> and no cache time to live is set.
+     * 
+     * @return
+     */
+    String getDefaultDnsSpreading();
+
+    void setDefaultDnsSpreading(final String defaultDnsSpreading);
+
+    /**
+     * Returns the lease wait time in milliseconds from which a new connection manager is considered starving, not positive for never.
+     * 
+     * @return
+     */
+    long getDefaultLeaseWaitThreshold();
+
+    void setDefaultLeaseWaitThreshold(final long defaultLeaseWaitThreshold);
+
+    /**
+     * Returns the interval in milliseconds to check a new connection manager for starvation, not positive for never.
+     * 
+     * @return
+     */
+    long getDefaultStarvationCheckInterval();
+
+    void setDefaultStarvationCheckInterval(final long defaultStarvationCheckInterval);
+
+    /**
+     * Returns whether requests of a new client pass per-route circuit breakers and bulkheads.
+     * 
+     * @return
+     */
+    boolean isDefaultCircuitBreakerEnabled();
+
+    void setDefaultCircuitBreakerEnabled(final boolean defaultCircuitBreakerEnabled);
+
+    /**
+     * Returns how many consecutive failures of a route open its circuit breaker in a new client.
+     * 
+     * @return
+     */
+    int getDefaultFailureThreshold();
+
+    void setDefaultFailureThreshold(final int defaultFailureThreshold);
+
+    /**
+     * Returns the time in milliseconds an open circuit breaker of a new client rejects requests before letting a trial through.
+     * 
+     * @return
+     */
+    long getDefaultOpenDuration();
+
+    void setDefaultOpenDuration(final long defaultOpenDuration);
+
+    /**
+     * Returns the maximum of requests in flight per route of a new client, not positive for unbounded.
+     * 
+     * @return
+     */
+    int getDefaultBulkheadSize();
+
+    void setDefaultBulkheadSize(final int defaultBulkheadSize);
+
+    /**
+     * Returns how many times an idempotent request of a new client is retried at most.
+     * 
+     * @return
+     */
+    int getDefaultMaxRetries();
+
+    void setDefaultMaxRetries(final int defaultMaxRetries);
+
+    /**
+     * Returns the backoff in milliseconds before the first retry of a new client, doubled for every further retry.
+     * 
+     * @return
+     */
+    long getDefaultRetryBackoff();
+
+    void setDefaultRetryBackoff(final long defaultRetryBackoff);
+
+    /**
+     * Returns the maximal backoff in milliseconds between retries of a new client.
+     * 
+     * @return
+     */
+    long getDefaultMaxRetryBackoff();
+
+    void setDefaultMaxRetryBackoff(final long defaultMaxRetryBackoff);
+
+    /**
+     * Returns the ratio of retries and hedges to requests allowed for a new client.
+     * 
+     * @return
+     */
+    double getDefaultRetryBudget();
+
+    void setDefaultRetryBudget(final double defaultRetryBudget);
+
+    /**
+     * Returns whether idempotent requests of a new client are hedged.
+     * 
+     * @return
+     */
+    boolean isDefaultHedgingEnabled();
+
+    void setDefaultHedgingEnabled(final boolean defaultHedgingEnabled);
+
+    /**
+     * Returns the percentile of response times of a route after which a request of a new client is hedged.
+     * 
+     * @return
+     */
+    double getDefaultHedgePercentile();
+
+    void setDefaultHedgePercentile(final double defaultHedgePercentile);
+
+    /**
+     * Returns the bytes of responses a new caching client keeps on heap at most.
+     * 
+     * @return
+     */
+    long getDefaultCacheMaxHeapBytes();
+
+    void setDefaultCacheMaxHeapBytes(final long defaultCacheMaxHeapBytes);
+
+    /**
+     * Returns the bytes of response bodies a new caching client keeps in files at most, 0 for heap only.
+     * 
+     * @return
+     */
+    long getDefaultCacheMaxFileBytes();
+
+    void setDefaultCacheMaxFileBytes(final long defaultCacheMaxFileBytes);
+
+    /**
+     * Returns the directory of files keeping response bodies of a new caching client, the temporary directory if not set.
+     * 
+     * @return
+     */
+    String getDefaultCacheDirectory();
+
+    void setDefaultCacheDirectory(final String defaultCacheDirectory);
+
+    /**
+     * Returns the size in bytes from which a response body is kept in a file, once files are allowed.
+     * 
+     * @return
+     */
+    long getDefaultCacheFileThreshold();
+
+    void setDefaultCacheFileThreshold(final long defaultCacheFileThreshold);
+
+    /**
+     * Returns how many responses a new caching client keeps at most.
+     * 
+     * @return
+     */
+    int getDefaultCacheMaxEntries();
+
+    void setDefaultCacheMaxEntries(final int defaultCacheMaxEntries);
+
+    /**
+     * Returns the size in bytes of the biggest response body a new caching client keeps.
+     * 
+     * @return
+     */
+    long getDefaultCacheMaxObjectSize();
+
+    void setDefaultCacheMaxObjectSize(final long defaultCacheMaxObjectSize);
+
+    /**
+     * Returns whether requests of a new client are throttled by per-route rate limits.
+     * 
+     * @return
+     */
+    boolean isDefaultRateLimitEnabled();
+
+    void setDefaultRateLimitEnabled(final boolean defaultRateLimitEnabled);
+
+    /**
+     * Returns the permits per second of a route of a new client, not positive for unlimited.
+     * 
+     * @return
+     */
+    double getDefaultRateLimit();
+
+    void setDefaultRateLimit(final double defaultRateLimit);
+
+    /**
+     * Returns how many permits of a route of a new client can be taken at once after a quiet period.
+     * 
+     * @return
+     */
+    int getDefaultRateLimitBurst();
+
+    void setDefaultRateLimitBurst(final int defaultRateLimitBurst);
+
+    /**
+     * Returns the time in milliseconds a request of a new client waits for a permit at most, 0 to fail fast.
+     * 
+     * @return
+     */
+    long getDefaultRateLimitMaxWait();
+
+    void setDefaultRateLimitMaxWait(final long defaultRateLimitMaxWait);
+
+    /**
+     * Returns how many pools a new connection manager spreads its connections over, 1 for a single pool.
+     * 
+     * @return
+     */
+    int getDefaultStripeCount();
+
+    void setDefaultStripeCount(final int defaultStripeCount);
+
+    /**
+     * Returns how a new striped connection manager picks a pool, either by <code>THREAD</code> or by <code>ROUTE</code>.
+     * 
+     * @return
+     */
+    String getDefaultStripeBy();
+
+    void setDefaultStripeBy(final String defaultStripeBy);
+
+    /**
+     * Returns how many settings MBeans wait for the objects they manage to be collected, then to be unregistered.
+     * 
+     * @return
+     */
+    int getReaperWatchedMBeans();
+
+    long getReaperUnregisteredMBeans();
+
+    /**
+     * Returns whether settings MBeans are held pending until a JMX client first looks into the domain, rather than registered at once.
+     * 
+     * @return
+     */
+    boolean isLazyMBeanRegistration();
+
+    void setLazyMBeanRegistration(final boolean lazyMBeanRegistration);
+
+    int getPendingMBeans();
+
+    /**
+     * Returns the settings file watched for changes, null if none.
+     * 
+     * @return
+     */
+    String getSettingsFile();
+
+    /**
+     * Returns the version of the settings file applied last, null if none.
+     * 
+     * @return
+     */
+    String getSettingsVersion();
+
+    long getSettingsReloads();
+
+    /**
+     * Returns how many reloads of the settings file were rejected and left the settings unchanged.
+     * 
+     * @return
+     */
+    long getSettingsReloadFailures();
+
+    /**
+     * Applies the settings file watched again, e.g. to settings MBeans of managers and clients created since.
+     * 
+     * @return the version applied
+     */
+    String reloadSettings();
+
+    /**
+     * Returns the version of the current settings, increased by every change.
+     * 
+     * @return
+     */
+    long getSnapshotVersion();
+
+    /**
+     * Returns the versions kept to roll back to, the latest last.
+     * 
+     * @return
+     */
+    long[] getSnapshotVersions();
+
+    /**
+     * Changes several attributes at once as a single new version, or none if any is invalid, e.g. <code>DefaultMaxTotalConnections</code> and
+     * <code>DefaultMaxConnectionsPerRoute</code>.
+     * 
+     * @param attributes
+     * @param values
+     * @return the new version
+     */
+    long applySettings(final String[] attributes, final String[] values);
+
+    /**
+     * Restores the attributes of a version kept, as a new version.
+     * 
+     * @param version
+     * @return the new version
+     */
+    long rollbackSettings(final long version);
 }
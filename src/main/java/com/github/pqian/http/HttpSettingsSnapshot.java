@@ -0,0 +1,391 @@
+package com.github.pqian.http;
+
+import java.beans.Introspector;
+import java.lang.reflect.Field;
+
+/**
+ * An immutable version of the global settings of {@link HttpSettings}, published as a whole so that a reader sees every attribute of the same
+ * update. Attributes are changed on an unpublished copy only.
+ */
+public final class HttpSettingsSnapshot implements Cloneable
+{
+    private long version;
+    private long timestamp = System.currentTimeMillis();
+    private int defaultConnectionTimeout = 5000;
+    private int defaultSocketTimeout = 20000;
+    private int defaultMaxConnectionsPerRoute = 1000;
+    private int defaultMaxTotalConnections = 1000;
+    private boolean defaultInstrumentationEnabled = false;
+    private long defaultEvictionInterval = 5000;
+    private long defaultMaxIdleTime = 30000;
+    private long defaultKeepAliveTimeout = 30000;
+    private int defaultIoThreadCount = Runtime.getRuntime().availableProcessors();
+    private boolean defaultAutosizingEnabled = false;
+    private long defaultLeaseWaitThreshold = 0;
+    private boolean defaultCircuitBreakerEnabled = false;
+    private int defaultFailureThreshold = 5;
+    private long defaultOpenDuration = 30000;
+    private int defaultBulkheadSize = 0;
+    private int defaultMaxRetries = 3;
+    private long defaultRetryBackoff = 50;
+    private long defaultMaxRetryBackoff = 1000;
+    private double defaultRetryBudget = 0.1;
+    private boolean defaultHedgingEnabled = false;
+    private double defaultHedgePercentile = 95;
+    private long defaultCacheMaxHeapBytes = 32 * 1024 * 1024;
+    private long defaultCacheMaxFileBytes = 0;
+    private String defaultCacheDirectory = null;
+    private long defaultCacheFileThreshold = 64 * 1024;
+    private int defaultCacheMaxEntries = 10000;
+    private long defaultCacheMaxObjectSize = 1024 * 1024;
+    private boolean defaultRateLimitEnabled = false;
+    private double defaultRateLimit = 0;
+    private int defaultRateLimitBurst = 1;
+    private long defaultRateLimitMaxWait = 1000;
+    private int defaultStripeCount = 1;
+    private String defaultStripeBy = StripedClientConnMgr.StripeBy.THREAD.name();
+    private long defaultStarvationCheckInterval = 5000;
+    private long defaultAutosizingInterval = 10000;
+    private int autosizingMinPerRoute = 2;
+    private int autosizingMaxPerRoute = 1000;
+    private int autosizingMaxTotal = 1000;
+    private boolean defaultClientAggregationEnabled = false;
+    private int maxMBeans = 0;
+    private double defaultTraceSampleRate = 0;
+    private int defaultTraceBufferSize = 256;
+    private long defaultDnsCacheTtl = 0;
+    private String defaultDnsSpreading = CachingDnsResolver.Spreading.NONE.name();
+
+    HttpSettingsSnapshot()
+    {}
+
+    /**
+     * Returns the version of the settings, increased by every update.
+     * 
+     * @return
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Returns the time in milliseconds the settings were published.
+     * 
+     * @return
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public int getDefaultConnectionTimeout()
+    {
+        return defaultConnectionTimeout;
+    }
+
+    public int getDefaultSocketTimeout()
+    {
+        return defaultSocketTimeout;
+    }
+
+    public int getDefaultMaxConnectionsPerRoute()
+    {
+        return defaultMaxConnectionsPerRoute;
+    }
+
+    public int getDefaultMaxTotalConnections()
+    {
+        return defaultMaxTotalConnections;
+    }
+
+    public boolean isDefaultInstrumentationEnabled()
+    {
+        return defaultInstrumentationEnabled;
+    }
+
+    public long getDefaultEvictionInterval()
+    {
+        return defaultEvictionInterval;
+    }
+
+    public long getDefaultMaxIdleTime()
+    {
+        return defaultMaxIdleTime;
+    }
+
+    public long getDefaultKeepAliveTimeout()
+    {
+        return defaultKeepAliveTimeout;
+    }
+
+    public int getDefaultIoThreadCount()
+    {
+        return defaultIoThreadCount;
+    }
+
+    public boolean isDefaultAutosizingEnabled()
+    {
+        return defaultAutosizingEnabled;
+    }
+
+    public long getDefaultLeaseWaitThreshold()
+    {
+        return defaultLeaseWaitThreshold;
+    }
+
+    public boolean isDefaultCircuitBreakerEnabled()
+    {
+        return defaultCircuitBreakerEnabled;
+    }
+
+    public int getDefaultFailureThreshold()
+    {
+        return defaultFailureThreshold;
+    }
+
+    public long getDefaultOpenDuration()
+    {
+        return defaultOpenDuration;
+    }
+
+    public int getDefaultBulkheadSize()
+    {
+        return defaultBulkheadSize;
+    }
+
+    public int getDefaultMaxRetries()
+    {
+        return defaultMaxRetries;
+    }
+
+    public long getDefaultRetryBackoff()
+    {
+        return defaultRetryBackoff;
+    }
+
+    public long getDefaultMaxRetryBackoff()
+    {
+        return defaultMaxRetryBackoff;
+    }
+
+    public double getDefaultRetryBudget()
+    {
+        return defaultRetryBudget;
+    }
+
+    public boolean isDefaultHedgingEnabled()
+    {
+        return defaultHedgingEnabled;
+    }
+
+    public double getDefaultHedgePercentile()
+    {
+        return defaultHedgePercentile;
+    }
+
+    public long getDefaultCacheMaxHeapBytes()
+    {
+        return defaultCacheMaxHeapBytes;
+    }
+
+    public long getDefaultCacheMaxFileBytes()
+    {
+        return defaultCacheMaxFileBytes;
+    }
+
+    public String getDefaultCacheDirectory()
+    {
+        return defaultCacheDirectory;
+    }
+
+    public long getDefaultCacheFileThreshold()
+    {
+        return defaultCacheFileThreshold;
+    }
+
+    public int getDefaultCacheMaxEntries()
+    {
+        return defaultCacheMaxEntries;
+    }
+
+    public long getDefaultCacheMaxObjectSize()
+    {
+        return defaultCacheMaxObjectSize;
+    }
+
+    public boolean isDefaultRateLimitEnabled()
+    {
+        return defaultRateLimitEnabled;
+    }
+
+    public double getDefaultRateLimit()
+    {
+        return defaultRateLimit;
+    }
+
+    public int getDefaultRateLimitBurst()
+    {
+        return defaultRateLimitBurst;
+    }
+
+    public long getDefaultRateLimitMaxWait()
+    {
+        return defaultRateLimitMaxWait;
+    }
+
+    public int getDefaultStripeCount()
+    {
+        return defaultStripeCount;
+    }
+
+    public String getDefaultStripeBy()
+    {
+        return defaultStripeBy;
+    }
+
+    public long getDefaultStarvationCheckInterval()
+    {
+        return defaultStarvationCheckInterval;
+    }
+
+    public long getDefaultAutosizingInterval()
+    {
+        return defaultAutosizingInterval;
+    }
+
+    public int getAutosizingMinPerRoute()
+    {
+        return autosizingMinPerRoute;
+    }
+
+    public int getAutosizingMaxPerRoute()
+    {
+        return autosizingMaxPerRoute;
+    }
+
+    public int getAutosizingMaxTotal()
+    {
+        return autosizingMaxTotal;
+    }
+
+    public boolean isDefaultClientAggregationEnabled()
+    {
+        return defaultClientAggregationEnabled;
+    }
+
+    public int getMaxMBeans()
+    {
+        return maxMBeans;
+    }
+
+    public double getDefaultTraceSampleRate()
+    {
+        return defaultTraceSampleRate;
+    }
+
+    public int getDefaultTraceBufferSize()
+    {
+        return defaultTraceBufferSize;
+    }
+
+    public long getDefaultDnsCacheTtl()
+    {
+        return defaultDnsCacheTtl;
+    }
+
+    public String getDefaultDnsSpreading()
+    {
+        return defaultDnsSpreading;
+    }
+
+    /**
+     * Returns an unpublished copy of the settings with the given version.
+     * 
+     * @param newVersion
+     * @return
+     */
+    HttpSettingsSnapshot copy(final long newVersion)
+    {
+        final HttpSettingsSnapshot copy;
+        try
+        {
+            copy = (HttpSettingsSnapshot) clone();
+        }
+        catch (final CloneNotSupportedException e)
+        {
+            throw new AssertionError(e);
+        }
+        copy.version = newVersion;
+        copy.timestamp = System.currentTimeMillis();
+        return copy;
+    }
+
+    /**
+     * Returns the type of an attribute, given by its name in JMX or as a field, e.g. <code>DefaultSocketTimeout</code>.
+     * 
+     * @param attribute
+     * @return
+     */
+    static Class<?> typeOf(final String attribute)
+    {
+        return field(attribute).getType();
+    }
+
+    /**
+     * Changes an attribute of an unpublished copy.
+     * 
+     * @param attribute
+     * @param value
+     */
+    void set(final String attribute, final Object value)
+    {
+        try
+        {
+            field(attribute).set(this, value);
+        }
+        catch (final IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid value of " + attribute + ", " + value, e);
+        }
+        catch (final IllegalAccessException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Checks and normalizes attributes before the copy is published.
+     */
+    void validate()
+    {
+        if (defaultStripeCount < 1) { throw new IllegalArgumentException("Stripe count must be positive, " + defaultStripeCount); }
+        if (maxMBeans < 0) { throw new IllegalArgumentException("MBean cap must not be negative, " + maxMBeans); }
+        if (defaultTraceSampleRate < 0 || defaultTraceSampleRate > 1) { throw new IllegalArgumentException("Sample rate must be from 0 to 1, " + defaultTraceSampleRate); }
+        if (defaultTraceBufferSize < 1) { throw new IllegalArgumentException("Trace buffer size must be positive, " + defaultTraceBufferSize); }
+        defaultStripeBy = StripedClientConnMgr.StripeBy.valueOf(defaultStripeBy.toUpperCase()).name();
+        defaultDnsSpreading = CachingDnsResolver.Spreading.valueOf(defaultDnsSpreading.toUpperCase()).name();
+    }
+
+    private static Field field(final String attribute)
+    {
+        final String name = Introspector.decapitalize(attribute);
+        try
+        {
+            if ("version".equals(name) || "timestamp".equals(name)) { throw new NoSuchFieldException(name); }
+            final Field field = HttpSettingsSnapshot.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+        catch (final NoSuchFieldException e)
+        {
+            throw new IllegalArgumentException("No settings attribute " + attribute, e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[version: " + version + "; timestamp: " + timestamp + "]";
+    }
+}
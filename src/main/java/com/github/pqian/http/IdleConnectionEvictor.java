@@ -0,0 +1,49 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes expired connections and connections idle longer than {@link MonitoredClientConnMgr#getMaxIdleTime()} of a connection manager periodically, and
+ * prunes the routes left without connections.
+ */
+class IdleConnectionEvictor extends MaintenanceScheduler.Task<MonitoredClientConnMgr>
+{
+    IdleConnectionEvictor(final MonitoredClientConnMgr connMgr)
+    {
+        super(connMgr);
+    }
+
+    /**
+     * Starts evicting connections of the given manager with the interval in milliseconds, no eviction if the interval is not positive.
+     * 
+     * @param connMgr
+     * @param evictionInterval
+     */
+    static void schedule(final MonitoredClientConnMgr connMgr, final long evictionInterval)
+    {
+        if (evictionInterval > 0)
+        {
+            MaintenanceScheduler.schedule(new IdleConnectionEvictor(connMgr), evictionInterval);
+        }
+    }
+
+    @Override
+    void run(final MonitoredClientConnMgr connMgr)
+    {
+        // the pool doesn't tell what it closes, count by available connections, being leased or released meanwhile skews it a bit
+        final int available = connMgr.getTotalStats().getAvailable();
+        connMgr.closeExpiredConnections();
+        final long maxIdleTime = connMgr.getMaxIdleTime();
+        if (maxIdleTime > 0)
+        {
+            connMgr.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
+        final int evicted = Math.max(0, available - connMgr.getTotalStats().getAvailable());
+        connMgr.recordEviction(evicted);
+        connMgr.pruneRoutes();
+        if (evicted > 0)
+        {
+            FlightEvents.eviction(evicted, maxIdleTime);
+        }
+    }
+}
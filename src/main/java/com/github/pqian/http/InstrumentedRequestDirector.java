@@ -0,0 +1,56 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Records the latency until the response head is received, and the status class of every request into {@link RequestMetrics} if any, and as a
+ * {@link FlightEvents flight recorder event}.
+ */
+class InstrumentedRequestDirector implements RequestDirector
+{
+    private final RequestDirector director;
+    private final RequestMetrics metrics;
+
+    InstrumentedRequestDirector(final RequestDirector director, final RequestMetrics metrics)
+    {
+        this.director = director;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context) throws HttpException, IOException
+    {
+        final long start = System.nanoTime();
+        HttpResponse response = null;
+        try
+        {
+            response = director.execute(target, request, context);
+            return response;
+        }
+        finally
+        {
+            final long elapsed = System.nanoTime() - start;
+            final int status = response == null ? -1 : response.getStatusLine().getStatusCode();
+            // no metrics if recorded for the flight recorder only
+            if (metrics != null)
+            {
+                if (response == null)
+                {
+                    metrics.recordFailure(target, elapsed);
+                }
+                else
+                {
+                    metrics.record(target, status, elapsed);
+                }
+            }
+            FlightEvents.request(target, status, elapsed);
+        }
+    }
+}
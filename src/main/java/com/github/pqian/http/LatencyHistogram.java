@@ -0,0 +1,107 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, allocation-free histogram of latencies with HDR-style log-linear buckets of microseconds, precise to about 6%.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+    // the biggest trackable value is about 2^40 micros, i.e. 12 days
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * HALF_SUB_BUCKET_COUNT;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a latency given in nanoseconds.
+     * 
+     * @param nanos
+     */
+    public void record(final long nanos)
+    {
+        final long micros = Math.min(MAX_VALUE, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        counts.incrementAndGet(indexOf(micros));
+        totalCount.incrementAndGet();
+        long max = maxValue.get();
+        while (micros > max && !maxValue.compareAndSet(max, micros))
+        {
+            max = maxValue.get();
+        }
+    }
+
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the maximal recorded latency in milliseconds.
+     * 
+     * @return
+     */
+    public double getMax()
+    {
+        return maxValue.get() / 1000.0;
+    }
+
+    /**
+     * Returns the latency in milliseconds at the given percentile, e.g. 99.9
+     * 
+     * @param percentile
+     * @return
+     */
+    public double getPercentile(final double percentile)
+    {
+        final long total = totalCount.get();
+        if (total == 0) { return 0; }
+        final long target = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target) { return Math.min(highestValueAt(i), maxValue.get()) / 1000.0; }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded values, values being recorded concurrently may be lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    static int indexOf(final long value)
+    {
+        if (value < SUB_BUCKET_COUNT) { return (int) value; }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS + 1;
+        final int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueAt(final int index)
+    {
+        if (index < SUB_BUCKET_COUNT) { return index; }
+        final int k = index - SUB_BUCKET_COUNT;
+        final int exponent = k / HALF_SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        final int shift = exponent - SUB_BUCKET_BITS + 1;
+        final long lowest = (long) (k % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.pqian.http;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of request latencies(in milliseconds) and status class counts, mapped to CompositeData by {@link HttpClientSettingsMBean}.
+ */
+public class LatencyStats
+{
+    private final long count;
+    private final long status2xx;
+    private final long status3xx;
+    private final long status4xx;
+    private final long status5xx;
+    private final long errors;
+    private final double p50;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    @ConstructorProperties({ "count", "status2xx", "status3xx", "status4xx", "status5xx", "errors", "p50", "p99", "p999", "max" })
+    public LatencyStats(final long count, final long status2xx, final long status3xx, final long status4xx, final long status5xx, final long errors,
+            final double p50, final double p99, final double p999, final double max)
+    {
+        this.count = count;
+        this.status2xx = status2xx;
+        this.status3xx = status3xx;
+        this.status4xx = status4xx;
+        this.status5xx = status5xx;
+        this.errors = errors;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getStatus2xx()
+    {
+        return status2xx;
+    }
+
+    public long getStatus3xx()
+    {
+        return status3xx;
+    }
+
+    public long getStatus4xx()
+    {
+        return status4xx;
+    }
+
+    public long getStatus5xx()
+    {
+        return status5xx;
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    public double getP50()
+    {
+        return p50;
+    }
+
+    public double getP99()
+    {
+        return p99;
+    }
+
+    public double getP999()
+    {
+        return p999;
+    }
+
+    public double getMax()
+    {
+        return max;
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.pqian.http;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single daemon thread unregistering a settings MBean as soon as the object it manages is collected by GC. It blocks on a {@link ReferenceQueue}
+ * rather than polling, so each collected object costs a constant amount of work.
+ */
+final class MBeanReaper
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MBeanReaper.class);
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+    // keeps watches reachable until their targets are collected
+    private static final Set<Watch> WATCHES = Collections.newSetFromMap(new ConcurrentHashMap<Watch, Boolean>());
+    private static final AtomicLong UNREGISTERED = new AtomicLong();
+
+    static
+    {
+        final Thread thread = new Thread("HttpMBeanReaper")
+        {
+            @Override
+            public void run()
+            {
+                while (true)
+                {
+                    try
+                    {
+                        reap((Watch) QUEUE.remove());
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        LOG.warn("MBean reaper interrupted, MBeans of collected objects are not unregistered any more");
+                        return;
+                    }
+                    catch (final RuntimeException e)
+                    {
+                        LOG.warn("Unregistering MBean of collected object failed", e);
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private MBeanReaper()
+    {}
+
+    /**
+     * Unregisters the MBean of the given object name once the target is collected by GC.
+     * 
+     * @param target
+     * @param objectName
+     */
+    static void watch(final Object target, final String objectName)
+    {
+        WATCHES.add(new Watch(target, objectName));
+    }
+
+    /**
+     * Returns how many MBeans are waiting for their targets to be collected.
+     * 
+     * @return
+     */
+    static int getWatchedCount()
+    {
+        return WATCHES.size();
+    }
+
+    static long getUnregisteredCount()
+    {
+        return UNREGISTERED.get();
+    }
+
+    private static void reap(final Watch watch)
+    {
+        // never registered if dropped by the cap of MBeans
+        if (WATCHES.remove(watch) && MBeanRegistrar.isRegistered(watch.objectName))
+        {
+            MBeanRegistrar.unregisterMBean(watch.objectName);
+            UNREGISTERED.incrementAndGet();
+            LOG.info("MBean of collected object unregistered {}", watch.objectName);
+        }
+    }
+
+    private static class Watch extends WeakReference<Object>
+    {
+        private final String objectName;
+
+        Watch(final Object target, final String objectName)
+        {
+            super(target, QUEUE);
+            this.objectName = objectName;
+        }
+    }
+}
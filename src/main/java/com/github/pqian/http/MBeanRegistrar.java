@@ -1,30 +1,88 @@
 package com.github.pqian.http;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.WeakHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerFactory;
 import javax.management.ObjectName;
+import javax.management.ReflectionException;
 
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.cache.CachingHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Registers settings MBeans with the platform MBean server by default, so that they are seen by jconsole and remote JMX clients. The servers to
+ * register with are chosen by the system property <code>pqian.http.mbeanServers</code>, a comma separated list of <code>platform</code> and
+ * agent ids, or by {@link #setMBeanServers(List)}. With lazy registration, set by the system property <code>pqian.http.lazyMBeans</code> or by
+ * {@link #setLazyRegistration(boolean)}, MBeans are held pending and registered all at once when a JMX client first looks into the
+ * <code>pqian.http</code> domain, through the {@link #PENDING_MBEANS} MBean, or when the registered MBeans are queried here.
+ */
 public class MBeanRegistrar
 {
     private static final Logger LOG = LoggerFactory.getLogger(MBeanRegistrar.class);
 
-    private static final MBeanServer MBEAN_SERVER = findMBeanServer(null);
+    public static final String PLATFORM = "platform";
 
-    private static final WeakHashMap<ClientConnectionManager, String> CONN_MGR_MAP = new WeakHashMap<ClientConnectionManager, String>();
+    public static final String PENDING_MBEANS = "pqian.http:name=PendingMBeans";
+
+    // held for reading to register, for writing to change the servers
+    private static final ReadWriteLock SERVERS_LOCK = new ReentrantReadWriteLock();
+
+    private static volatile List<MBeanServer> mbeanServers = findMBeanServers(System.getProperty("pqian.http.mbeanServers", PLATFORM));
+
+    private static volatile boolean lazyRegistration;
+
+    // every MBean registered, to be moved on changing the servers
+    private static final ConcurrentMap<String, Object> REGISTERED = new ConcurrentHashMap<String, Object>();
+
+    // MBeans to be registered on first look, by object name
+    private static final ConcurrentMap<String, Object> PENDING = new ConcurrentHashMap<String, Object>();
+
+    // names unnamed MBeans uniquely, however fast they are created
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private static final AtomicLong AGGREGATED = new AtomicLong();
+
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    private static final ConnMgrRegistry<ClientConnectionManager> CONN_MGR_REGISTRY = new ConnMgrRegistry<ClientConnectionManager>();
+
+    private static final ConnMgrRegistry<ClientAsyncConnectionManager> ASYNC_CONN_MGR_REGISTRY = new ConnMgrRegistry<ClientAsyncConnectionManager>();
+
+    static
+    {
+        if (Boolean.getBoolean("pqian.http.lazyMBeans"))
+        {
+            setLazyRegistration(true);
+        }
+    }
 
     private MBeanRegistrar()
     {}
@@ -54,18 +112,25 @@ public class MBeanRegistrar
     }
 
     /**
-     * Registers a named MBean to manage the specified {@link ClientConnectionManager}.
+     * Registers a named MBean to manage the specified {@link ClientConnectionManager}, unless it is managed by a MBean already.
      * 
      * @param connMgr
      * @param mbeanName
-     * @return
+     * @return object name of the MBean managing the connMgr
+     * @throws IllegalArgumentException
+     *             if the name is taken by the MBean of another manager
      */
     public static String registerClientConnMgrSettings(final PoolingClientConnectionManager connMgr, final String mbeanName)
     {
         final String objectName = createObjectNameForClientConnMgrSettings(mbeanName);
+        final String existing = CONN_MGR_REGISTRY.putIfAbsent(connMgr, objectName);
+        if (existing != null)
+        {
+            LOG.warn("ClientConnectionManager {} has been monitored by MBean {} before", connMgr, existing);
+            return existing;
+        }
         final ClientConnMgrSettings connMgrSettings = new ClientConnMgrSettings(connMgr, objectName);
         registerMBean(connMgrSettings, objectName);
-        CONN_MGR_MAP.put(connMgr, objectName);
         return objectName;
     }
     
@@ -114,28 +179,348 @@ public class MBeanRegistrar
     }
     
     /**
-     * Base register method.
+     * Registers a named MBean to manage rate limits of the specified {@link MonitoredHttpClient}.
+     * 
+     * @param client
+     * @param mbeanName
+     * @return
+     */
+    public static String registerRateLimiterSettings(final MonitoredHttpClient client, final String mbeanName)
+    {
+        final String objectName = createObjectNameForRateLimiterSettings(mbeanName);
+        final RateLimiterSettings limiterSettings = new RateLimiterSettings(client, objectName);
+        registerMBean(limiterSettings, objectName);
+        return objectName;
+    }
+
+    /**
+     * Creates object name for instance of {@link RateLimiterSettings}
+     * @param mbeanName
+     * @return
+     */
+    public static String createObjectNameForRateLimiterSettings(String mbeanName) {
+      return "pqian.http:type=RateLimiterSettings,name=" + createMbeanName(mbeanName);
+    }
+
+    /**
+     * Registers a named MBean to manage the specified {@link CachingHttpClient} and its storage.
+     * 
+     * @param client
+     * @param storage
+     * @param mbeanName
+     * @return
+     */
+    public static String registerHttpCacheSettings(final CachingHttpClient client, final BoundedHttpCacheStorage storage, final String mbeanName)
+    {
+        final String objectName = createObjectNameForHttpCacheSettings(mbeanName);
+        final HttpCacheSettings cacheSettings = new HttpCacheSettings(client, storage, objectName);
+        registerMBean(cacheSettings, objectName);
+        return objectName;
+    }
+
+    /**
+     * Creates object name for instance of {@link HttpCacheSettings}
+     * @param mbeanName
+     * @return
+     */
+    public static String createObjectNameForHttpCacheSettings(String mbeanName) {
+      return "pqian.http:type=HttpCacheSettings,name=" + createMbeanName(mbeanName);
+    }
+
+    /**
+     * Registers a MBean to manage the specified {@link ClientAsyncConnectionManager}.
+     * 
+     * @param connMgr
+     * @return
+     */
+    public static String registerAsyncClientConnMgrSettings(final PoolingClientAsyncConnectionManager connMgr)
+    {
+        return registerAsyncClientConnMgrSettings(connMgr, null);
+    }
+
+    /**
+     * Registers a named MBean to manage the specified {@link ClientAsyncConnectionManager}, unless it is managed by a MBean already.
+     * 
+     * @param connMgr
+     * @param mbeanName
+     * @return object name of the MBean managing the connMgr
+     * @throws IllegalArgumentException
+     *             if the name is taken by the MBean of another manager
+     */
+    public static String registerAsyncClientConnMgrSettings(final PoolingClientAsyncConnectionManager connMgr, final String mbeanName)
+    {
+        final String objectName = createObjectNameForAsyncClientConnMgrSettings(mbeanName);
+        final String existing = ASYNC_CONN_MGR_REGISTRY.putIfAbsent(connMgr, objectName);
+        if (existing != null)
+        {
+            LOG.warn("ClientAsyncConnectionManager {} has been monitored by MBean {} before", connMgr, existing);
+            return existing;
+        }
+        final AsyncClientConnMgrSettings connMgrSettings = new AsyncClientConnMgrSettings(connMgr, objectName);
+        registerMBean(connMgrSettings, objectName);
+        return objectName;
+    }
+
+    /**
+     * Creates object name for instance of {@link AsyncClientConnMgrSettings}
+     * @param mbeanName
+     * @return
+     */
+    public static String createObjectNameForAsyncClientConnMgrSettings(String mbeanName) {
+      return "pqian.http:type=AsyncClientConnMgrSettings,name=" + createMbeanName(mbeanName);
+    }
+
+    /**
+     * Registers a MBean to manage the specified {@link HttpAsyncClient}.
+     * 
+     * @param client
+     * @return
+     */
+    public static String registerAsyncHttpClientSettings(final HttpAsyncClient client)
+    {
+        return registerAsyncHttpClientSettings(client, null);
+    }
+
+    /**
+     * Registers a named MBean to manage the specified {@link HttpAsyncClient}.
+     * 
+     * @param client
+     * @param mbeanName
+     * @return
+     */
+    public static String registerAsyncHttpClientSettings(final HttpAsyncClient client, final String mbeanName)
+    {
+        final String objectName = createObjectNameForAsyncHttpClientSettings(mbeanName);
+        final AsyncHttpClientSettings clientSettings = new AsyncHttpClientSettings(client, objectName);
+        registerMBean(clientSettings, objectName);
+        return objectName;
+    }
+
+    /**
+     * Creates object name for instance of {@link AsyncHttpClientSettings}
+     * @param mbeanName
+     * @return
+     */
+    public static String createObjectNameForAsyncHttpClientSettings(String mbeanName) {
+      return "pqian.http:type=AsyncHttpClientSettings,name=" + createMbeanName(mbeanName);
+    }
+
+    /**
+     * Base register method. The MBean is held pending if registration is lazy, and dropped if it manages a single manager or client while
+     * {@link HttpSettingsSnapshot#getMaxMBeans()} are registered already.
      * 
      * @param mbean
      * @param objectName
      */
     public static void registerMBean(final Object mbean, final String objectName)
     {
+        final Map<String, Object> mbeans = new HashMap<String, Object>(1);
+        mbeans.put(objectName, mbean);
+        registerMBeans(mbeans);
+    }
+
+    /**
+     * Registers several MBeans by object name at once with every server, holding the servers for the whole batch. The MBeans are held pending if
+     * registration is lazy.
+     * 
+     * @param mbeans
+     */
+    public static void registerMBeans(final Map<String, ?> mbeans)
+    {
+        SERVERS_LOCK.readLock().lock();
+        try
+        {
+            // checked under the lock, so that nothing is held pending after lazy registration is turned off and the pending ones drained
+            if (lazyRegistration)
+            {
+                for (final Map.Entry<String, ?> mbean : mbeans.entrySet())
+                {
+                    if (isDropped(mbean.getKey()))
+                    {
+                        continue;
+                    }
+                    if (REGISTERED.containsKey(mbean.getKey()) || PENDING.putIfAbsent(mbean.getKey(), mbean.getValue()) != null)
+                    {
+                        LOG.warn("MBean has been registered before, {}", mbean.getKey());
+                    }
+                }
+                return;
+            }
+            for (final Map.Entry<String, ?> mbean : mbeans.entrySet())
+            {
+                if (!isDropped(mbean.getKey()))
+                {
+                    register(mbeanServers, mbean.getValue(), mbean.getKey());
+                }
+            }
+        }
+        finally
+        {
+            SERVERS_LOCK.readLock().unlock();
+        }
+    }
+
+    private static void register(final List<MBeanServer> servers, final Object mbean, final String objectName)
+    {
+        // registered with all servers or none
+        final List<MBeanServer> registered = new ArrayList<MBeanServer>(servers.size());
         try
         {
-            MBEAN_SERVER.registerMBean(mbean, new ObjectName(objectName));
+            final ObjectName name = new ObjectName(objectName);
+            for (final MBeanServer server : servers)
+            {
+                server.registerMBean(mbean, name);
+                registered.add(server);
+            }
+            REGISTERED.put(objectName, mbean);
             LOG.debug("MBean registered, {}", objectName);
         }
         catch (final InstanceAlreadyExistsException e)
         {
+            rollBack(registered, objectName);
             LOG.warn("MBean has been registered before, {}", objectName);
         }
         catch (final Exception e)
         {
+            rollBack(registered, objectName);
             throw new RuntimeException("Registering MBean failed, " + objectName, e);
         }
     }
 
+    private static void rollBack(final List<MBeanServer> registered, final String objectName)
+    {
+        for (final MBeanServer server : registered)
+        {
+            try
+            {
+                server.unregisterMBean(new ObjectName(objectName));
+            }
+            catch (final Exception e)
+            {
+                LOG.warn("Unregistering MBean failed, {}, {}", objectName, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Checks the cap of MBeans, counting the registration dropped if reached. Singletons such as HttpSettings have no type and are never dropped.
+     */
+    private static boolean isDropped(final String objectName)
+    {
+        final int maxMBeans = HttpSettings.snapshot().getMaxMBeans();
+        if (maxMBeans <= 0 || !objectName.startsWith("pqian.http:type=") || REGISTERED.size() + PENDING.size() < maxMBeans) { return false; }
+        if (DROPPED.incrementAndGet() == 1)
+        {
+            LOG.warn("{} MBeans registered at most, {} and later ones are dropped", maxMBeans, objectName);
+        }
+        else
+        {
+            LOG.debug("MBean dropped, {}", objectName);
+        }
+        return true;
+    }
+
+    /**
+     * Counts a client aggregated into the settings MBean of another one.
+     */
+    static void countAggregated()
+    {
+        AGGREGATED.incrementAndGet();
+    }
+
+    static long getAggregatedCount()
+    {
+        return AGGREGATED.get();
+    }
+
+    static long getDroppedCount()
+    {
+        return DROPPED.get();
+    }
+
+    /**
+     * Registers every MBean held pending by lazy registration.
+     * 
+     * @return how many MBeans were registered
+     */
+    public static int registerPendingMBeans()
+    {
+        if (PENDING.isEmpty()) { return 0; }
+        final Map<String, Object> mbeans = new LinkedHashMap<String, Object>();
+        for (final String objectName : new ArrayList<String>(PENDING.keySet()))
+        {
+            final Object mbean = PENDING.remove(objectName);
+            // unregistered meanwhile
+            if (mbean != null)
+            {
+                mbeans.put(objectName, mbean);
+            }
+        }
+        SERVERS_LOCK.readLock().lock();
+        try
+        {
+            for (final Map.Entry<String, Object> mbean : mbeans.entrySet())
+            {
+                register(mbeanServers, mbean.getValue(), mbean.getKey());
+            }
+        }
+        finally
+        {
+            SERVERS_LOCK.readLock().unlock();
+        }
+        if (!mbeans.isEmpty())
+        {
+            LOG.info("{} pending MBeans registered", mbeans.size());
+        }
+        return mbeans.size();
+    }
+
+    /**
+     * Returns how many MBeans are held pending by lazy registration.
+     * 
+     * @return
+     */
+    public static int getPendingCount()
+    {
+        return PENDING.size();
+    }
+
+    public static boolean isLazyRegistration()
+    {
+        return lazyRegistration;
+    }
+
+    /**
+     * Holds MBeans registered from now on pending until a JMX client looks into the domain, or registers those pending now if set to false.
+     * 
+     * @param lazy
+     */
+    public static void setLazyRegistration(final boolean lazy)
+    {
+        SERVERS_LOCK.writeLock().lock();
+        try
+        {
+            if (lazy == lazyRegistration) { return; }
+            lazyRegistration = lazy;
+            if (lazy)
+            {
+                register(mbeanServers, new PendingMBeans(), PENDING_MBEANS);
+            }
+            else
+            {
+                unregister(mbeanServers, PENDING_MBEANS);
+            }
+        }
+        finally
+        {
+            SERVERS_LOCK.writeLock().unlock();
+        }
+        if (!lazy)
+        {
+            registerPendingMBeans();
+        }
+    }
+
     /**
      * Base unregister method.
      * 
@@ -143,10 +528,45 @@ public class MBeanRegistrar
      */
     public static void unregisterMBean(final String objectName)
     {
+        if (PENDING.remove(objectName) != null)
+        {
+            LOG.debug("Pending MBean dropped, {}", objectName);
+            return;
+        }
+        SERVERS_LOCK.readLock().lock();
+        try
+        {
+            unregister(mbeanServers, objectName);
+        }
+        finally
+        {
+            SERVERS_LOCK.readLock().unlock();
+        }
+    }
+
+    private static void unregister(final List<MBeanServer> servers, final String objectName)
+    {
+        REGISTERED.remove(objectName);
         try
         {
-            MBEAN_SERVER.unregisterMBean(new ObjectName(objectName));
-            LOG.debug("MBean unregistered, {}", objectName);
+            final ObjectName name = new ObjectName(objectName);
+            boolean found = false;
+            for (final MBeanServer server : servers)
+            {
+                if (server.isRegistered(name))
+                {
+                    server.unregisterMBean(name);
+                    found = true;
+                }
+            }
+            if (found)
+            {
+                LOG.debug("MBean unregistered, {}", objectName);
+            }
+            else
+            {
+                LOG.warn("MBean not found to unregister, {}", objectName);
+            }
         }
         catch (final InstanceNotFoundException e)
         {
@@ -159,16 +579,17 @@ public class MBeanRegistrar
     }
 
     /**
-     * Checks whether objectName is registered with.
+     * Checks whether objectName is registered with, or held pending.
      * 
      * @param objectName
      * @return
      */
     public static boolean isRegistered(final String objectName)
     {
+        if (PENDING.containsKey(objectName)) { return true; }
         try
         {
-            return MBEAN_SERVER.isRegistered(new ObjectName(objectName));
+            return mbeanServers.get(0).isRegistered(new ObjectName(objectName));
         }
         catch (final Exception e)
         {
@@ -177,21 +598,96 @@ public class MBeanRegistrar
     }
 
     /**
-     * Returns bound {@link ClientConnectionManager} by the given mbeanName.
+     * Returns the MBean servers settings MBeans are registered with.
      * 
-     * @param mbeanName
      * @return
      */
-    public static ClientConnectionManager findClientConnMgrByMbeanName(final String mbeanName)
+    public static List<MBeanServer> getMBeanServers()
+    {
+        return mbeanServers;
+    }
+
+    /**
+     * Registers settings MBeans with the given servers from now on, moving those registered with other servers before.
+     * 
+     * @param servers
+     */
+    public static void setMBeanServers(final List<MBeanServer> servers)
     {
-        if (CONN_MGR_MAP.isEmpty()) { return null; }
-        if (mbeanName == null) { return CONN_MGR_MAP.entrySet().iterator().next().getKey(); }
-        String objectName = createObjectNameForClientConnMgrSettings(mbeanName);
-        for (final Entry<ClientConnectionManager, String> entry : CONN_MGR_MAP.entrySet())
+        if (servers.isEmpty()) { throw new IllegalArgumentException("No MBean server given"); }
+        final List<MBeanServer> newServers = Collections.unmodifiableList(new ArrayList<MBeanServer>(servers));
+        SERVERS_LOCK.writeLock().lock();
+        try
+        {
+            final List<MBeanServer> oldServers = mbeanServers;
+            final List<MBeanServer> added = new ArrayList<MBeanServer>(newServers);
+            added.removeAll(oldServers);
+            final List<MBeanServer> removed = new ArrayList<MBeanServer>(oldServers);
+            removed.removeAll(newServers);
+            final Map<String, Object> moved = new HashMap<String, Object>(REGISTERED);
+            for (final Map.Entry<String, Object> mbean : moved.entrySet())
+            {
+                try
+                {
+                    final ObjectName name = new ObjectName(mbean.getKey());
+                    for (final MBeanServer server : removed)
+                    {
+                        if (server.isRegistered(name))
+                        {
+                            server.unregisterMBean(name);
+                        }
+                    }
+                    for (final MBeanServer server : added)
+                    {
+                        if (!server.isRegistered(name))
+                        {
+                            server.registerMBean(mbean.getValue(), name);
+                        }
+                    }
+                }
+                catch (final Exception e)
+                {
+                    throw new RuntimeException("Moving MBean failed, " + mbean.getKey(), e);
+                }
+            }
+            mbeanServers = newServers;
+            LOG.info("{} MBeans moved to MBean servers {}", moved.size(), newServers);
+        }
+        finally
         {
-            if (objectName.equals(entry.getValue())) { return entry.getKey(); }
+            SERVERS_LOCK.writeLock().unlock();
         }
-        return null;
+    }
+
+    /**
+     * Registers settings MBeans with the platform MBean server from now on.
+     */
+    public static void usePlatformMBeanServer()
+    {
+        setMBeanServers(Collections.singletonList(ManagementFactory.getPlatformMBeanServer()));
+    }
+
+    /**
+     * Registers settings MBeans with the MBean server of the given agent id from now on, created if not found.
+     * 
+     * @param agentId
+     */
+    public static void useMBeanServer(final String agentId)
+    {
+        setMBeanServers(Collections.singletonList(findMBeanServer(agentId)));
+    }
+
+    /**
+     * Returns bound {@link ClientConnectionManager} by the given mbeanName, or the latest bound one if mbeanName is null.
+     * 
+     * @param mbeanName
+     * @return
+     */
+    public static ClientConnectionManager findClientConnMgrByMbeanName(final String mbeanName)
+    {
+        if (CONN_MGR_REGISTRY.isEmpty()) { return null; }
+        if (mbeanName == null) { return CONN_MGR_REGISTRY.find(null); }
+        return CONN_MGR_REGISTRY.find(createObjectNameForClientConnMgrSettings(mbeanName));
     }
 
     /**
@@ -202,8 +698,61 @@ public class MBeanRegistrar
      */
     public static boolean isMapped(final ClientConnectionManager connMgr)
     {
-        if (CONN_MGR_MAP.isEmpty()) { return false; }
-        return CONN_MGR_MAP.containsKey(connMgr);
+        if (CONN_MGR_REGISTRY.isEmpty()) { return false; }
+        return CONN_MGR_REGISTRY.contains(connMgr);
+    }
+
+    /**
+     * Returns bound {@link ClientAsyncConnectionManager} by the given mbeanName, or the latest bound one if mbeanName is null.
+     * 
+     * @param mbeanName
+     * @return
+     */
+    public static ClientAsyncConnectionManager findAsyncClientConnMgrByMbeanName(final String mbeanName)
+    {
+        if (ASYNC_CONN_MGR_REGISTRY.isEmpty()) { return null; }
+        if (mbeanName == null) { return ASYNC_CONN_MGR_REGISTRY.find(null); }
+        return ASYNC_CONN_MGR_REGISTRY.find(createObjectNameForAsyncClientConnMgrSettings(mbeanName));
+    }
+
+    /**
+     * Checks whether the specified {@link ClientAsyncConnectionManager} is Bound.
+     * 
+     * @param connMgr
+     * @return
+     */
+    public static boolean isMapped(final ClientAsyncConnectionManager connMgr)
+    {
+        if (ASYNC_CONN_MGR_REGISTRY.isEmpty()) { return false; }
+        return ASYNC_CONN_MGR_REGISTRY.contains(connMgr);
+    }
+
+    /**
+     * Returns the MBean server to query registered settings MBeans, having those pending registered.
+     * 
+     * @return
+     */
+    static MBeanServer getMBeanServer()
+    {
+        registerPendingMBeans();
+        return mbeanServers.get(0);
+    }
+
+    private static List<MBeanServer> findMBeanServers(final String servers)
+    {
+        final List<MBeanServer> found = new ArrayList<MBeanServer>();
+        for (final String server : servers.split(","))
+        {
+            if (!server.trim().isEmpty())
+            {
+                found.add(PLATFORM.equals(server.trim()) ? ManagementFactory.getPlatformMBeanServer() : findMBeanServer(server.trim()));
+            }
+        }
+        if (found.isEmpty())
+        {
+            found.add(ManagementFactory.getPlatformMBeanServer());
+        }
+        return Collections.unmodifiableList(found);
     }
 
     private static MBeanServer findMBeanServer(final String agentId)
@@ -215,26 +764,98 @@ public class MBeanRegistrar
             if (server != null)
             {
                 found = server;
-                LOG.warn("MBean server found by agentId {}", agentId);
+                LOG.info("MBean server found by agentId {}", agentId);
                 break;
             }
         }
         if (found == null)
         {
-            if (agentId != null)
-            {
-                LOG.warn("MBean server not found by agentId {}", agentId);
-            }
+            LOG.warn("MBean server not found by agentId {}", agentId);
             found = MBeanServerFactory.createMBeanServer();
             LOG.info("A new MBean server created, {}", found);
         }
         return found;
     }
 
+    /**
+     * Returns the name of a settings MBean by its object name.
+     * 
+     * @param objectName
+     * @return
+     */
+    static String mbeanNameOf(final String objectName)
+    {
+        try
+        {
+            return new ObjectName(objectName).getKeyProperty("name");
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException("Parsing objectName failed, " + objectName, e);
+        }
+    }
+
+    /**
+     * Returns the given name, or a name from a sequence if none, which never collides however fast unnamed MBeans are created.
+     */
     private static String createMbeanName(final String mbeanName)
     {
-        if (mbeanName == null || mbeanName.isEmpty()) { return Thread.currentThread().getId() + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date()); }
+        if (mbeanName == null || mbeanName.isEmpty()) { return "unnamed_" + SEQUENCE.incrementAndGet(); }
         return mbeanName;
     }
 
+    /**
+     * Stands for the MBeans held pending in the domain. Whenever a JMX client reads its info or count, all of them are registered.
+     */
+    private static class PendingMBeans implements DynamicMBean
+    {
+        @Override
+        public Object getAttribute(final String attribute) throws AttributeNotFoundException
+        {
+            if (!"Count".equals(attribute)) { throw new AttributeNotFoundException(attribute); }
+            registerPendingMBeans();
+            return getPendingCount();
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute) throws AttributeNotFoundException
+        {
+            throw new AttributeNotFoundException(attribute.getName() + " is not writable");
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] attributes)
+        {
+            final AttributeList list = new AttributeList();
+            for (final String attribute : attributes)
+            {
+                if ("Count".equals(attribute))
+                {
+                    registerPendingMBeans();
+                    list.add(new Attribute(attribute, getPendingCount()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes)
+        {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params, final String[] signature) throws ReflectionException
+        {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo()
+        {
+            registerPendingMBeans();
+            return new MBeanInfo(getClass().getName(), "MBeans registered on first look", new MBeanAttributeInfo[] { new MBeanAttributeInfo("Count",
+                    "int", "MBeans still pending", true, false, false) }, null, new MBeanOperationInfo[0], null);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single daemon thread running periodic maintenance of connection managers and clients. A task stops on its own once its target is collected by GC.
+ */
+final class MaintenanceScheduler
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MaintenanceScheduler.class);
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(final Runnable r)
+        {
+            final Thread thread = new Thread(r, "HttpMaintenanceScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static
+    {
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private MaintenanceScheduler()
+    {}
+
+    /**
+     * Runs the task periodically with the given delay in milliseconds while its target is reachable.
+     * 
+     * @param task
+     * @param delayMillis
+     */
+    static <T> void schedule(final Task<T> task, final long delayMillis)
+    {
+        task.future = EXECUTOR.scheduleWithFixedDelay(task, delayMillis, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a short, non-blocking action once after the given delay in milliseconds.
+     * 
+     * @param action
+     * @param delayMillis
+     * @return
+     */
+    static ScheduledFuture<?> delay(final Runnable action, final long delayMillis)
+    {
+        return EXECUTOR.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Periodic work on a weakly referenced target.
+     */
+    abstract static class Task<T> implements Runnable
+    {
+        private final WeakReference<T> targetRef;
+        private volatile ScheduledFuture<?> future;
+
+        Task(final T target)
+        {
+            targetRef = new WeakReference<T>(target);
+        }
+
+        @Override
+        public final void run()
+        {
+            final T target = targetRef.get();
+            if (target == null)
+            {
+                cancel();
+                return;
+            }
+            try
+            {
+                run(target);
+            }
+            catch (final RuntimeException e)
+            {
+                LOG.warn("Maintenance task failed, " + this, e);
+            }
+        }
+
+        /**
+         * Stops running this task.
+         */
+        void cancel()
+        {
+            final ScheduledFuture<?> f = future;
+            if (f != null)
+            {
+                f.cancel(false);
+            }
+        }
+
+        abstract void run(T target);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.pqian.http;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.ManagedClientAsyncConnection;
+import org.apache.http.nio.reactor.IOReactorException;
+
+/**
+ * A {@link PoolingClientAsyncConnectionManager} on its own I/O reactor, which remembers every route it has been asked for, so that per-route
+ * statistics can be reported via JMX.
+ */
+public class MonitoredClientAsyncConnMgr extends PoolingClientAsyncConnectionManager
+{
+    private final Set<HttpRoute> routes = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+    private final int ioThreadCount;
+
+    public MonitoredClientAsyncConnMgr(final IOReactorConfig config) throws IOReactorException
+    {
+        super(new DefaultConnectingIOReactor(config));
+        ioThreadCount = config.getIoThreadCount();
+    }
+
+    @Override
+    public Future<ManagedClientAsyncConnection> leaseConnection(final HttpRoute route, final Object state, final long connectTimeout,
+            final TimeUnit tunit, final FutureCallback<ManagedClientAsyncConnection> callback)
+    {
+        if (!routes.contains(route))
+        {
+            routes.add(route);
+        }
+        return super.leaseConnection(route, state, connectTimeout, tunit, callback);
+    }
+
+    /**
+     * Returns all routes this manager has leased connections for.
+     * 
+     * @return
+     */
+    public Set<HttpRoute> getRoutes()
+    {
+        return Collections.unmodifiableSet(routes);
+    }
+
+    /**
+     * Returns the count of I/O dispatch threads of the reactor, fixed once created.
+     * 
+     * @return
+     */
+    public int getIoThreadCount()
+    {
+        return ioThreadCount;
+    }
+}
@@ -0,0 +1,322 @@
+package com.github.pqian.http;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A {@link PoolingClientConnectionManager} that remembers every route it has been asked for, so that per-route statistics can be reported via JMX.
+ */
+public class MonitoredClientConnMgr extends PoolingClientConnectionManager
+{
+    private final Set<HttpRoute> routes = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+    private final AtomicLong evictedConnections = new AtomicLong();
+    private final AtomicLong evictionRuns = new AtomicLong();
+    private final RoutePermits routePermits = new RoutePermits(this);
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final AtomicLong openedConnections = new AtomicLong();
+    private final LatencyHistogram leaseWaitTime = new LatencyHistogram();
+    // lease wait times since the last starvation check
+    private final LatencyHistogram leaseWaitWindow = new LatencyHistogram();
+    // lease wait times since the last autosizing
+    private final LatencyHistogram autosizingWindow = new LatencyHistogram();
+    private final AtomicLong poolTimeouts = new AtomicLong();
+    private volatile long maxIdleTime;
+    private volatile long leaseWaitThreshold;
+    private volatile double leaseWaitPercentile = 99;
+    private volatile ConnPoolAutosizer autosizer;
+    private volatile ClientConnMgrSettings settings;
+    private final DnsResolver dnsResolver;
+
+    public MonitoredClientConnMgr()
+    {
+        this(new SystemDefaultDnsResolver());
+    }
+
+    /**
+     * Creates a manager for the default schemes, resolving hosts with the given resolver.
+     * 
+     * @param dnsResolver
+     */
+    public MonitoredClientConnMgr(final DnsResolver dnsResolver)
+    {
+        super(SchemeRegistryFactory.createDefault(), dnsResolver);
+        this.dnsResolver = dnsResolver;
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(final HttpRoute route, final Object state)
+    {
+        if (!routes.contains(route))
+        {
+            routes.add(route);
+        }
+        final ClientConnectionRequest request = requestPooledConnection(route, state);
+        return new ClientConnectionRequest()
+        {
+            @Override
+            public ManagedClientConnection getConnection(final long timeout, final TimeUnit tunit) throws InterruptedException,
+                    ConnectionPoolTimeoutException
+            {
+                final long start = System.nanoTime();
+                final ManagedClientConnection conn;
+                try
+                {
+                    conn = request.getConnection(timeout, tunit);
+                }
+                catch (final ConnectionPoolTimeoutException e)
+                {
+                    final long waitTime = System.nanoTime() - start;
+                    recordLeaseWait(waitTime);
+                    poolTimeouts.incrementAndGet();
+                    FlightEvents.lease(route, waitTime, true);
+                    RequestTrace.recordLeaseWait(waitTime);
+                    throw e;
+                }
+                final long waitTime = System.nanoTime() - start;
+                recordLeaseWait(waitTime);
+                FlightEvents.lease(route, waitTime, false);
+                RequestTrace.recordLeaseWait(waitTime);
+                // a pooled connection is leased open, otherwise it is going to be opened by the caller
+                (conn.isOpen() ? reusedConnections : openedConnections).incrementAndGet();
+                // the route may have been pruned while the request was pending
+                routes.add(route);
+                return conn;
+            }
+
+            @Override
+            public void abortRequest()
+            {
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    protected ClientConnectionOperator createConnectionOperator(final SchemeRegistry schreg)
+    {
+        return new MonitoredConnectionOperator(super.createConnectionOperator(schreg), this);
+    }
+
+    /**
+     * Requests a connection from the underlying pool.
+     * 
+     * @param route
+     * @param state
+     * @return
+     */
+    ClientConnectionRequest requestPooledConnection(final HttpRoute route, final Object state)
+    {
+        return super.requestConnection(route, state);
+    }
+
+    private void recordLeaseWait(final long nanos)
+    {
+        leaseWaitTime.record(nanos);
+        leaseWaitWindow.record(nanos);
+        autosizingWindow.record(nanos);
+    }
+
+    /**
+     * Returns the resolver hosts are resolved with.
+     * 
+     * @return
+     */
+    public DnsResolver getDnsResolver()
+    {
+        return dnsResolver;
+    }
+
+    /**
+     * Returns the routes this manager has leased connections for, except those pruned by {@link #pruneRoutes()}.
+     * 
+     * @return
+     */
+    public Set<HttpRoute> getRoutes()
+    {
+        return Collections.unmodifiableSet(routes);
+    }
+
+    /**
+     * Forgets the routes without leased, available or pending connections, unless their maximum is overridden via JMX, called on every eviction run.
+     */
+    void pruneRoutes()
+    {
+        final ClientConnMgrSettings settings = this.settings;
+        for (final HttpRoute route : routes)
+        {
+            if (isIdle(route) && (settings == null || !settings.isMaxPerRouteOverridden(route)))
+            {
+                routes.remove(route);
+                // a connection leased meanwhile keeps its route
+                if (!isIdle(route))
+                {
+                    routes.add(route);
+                }
+            }
+        }
+    }
+
+    private boolean isIdle(final HttpRoute route)
+    {
+        final PoolStats stats = getStats(route);
+        return stats.getLeased() == 0 && stats.getAvailable() == 0 && stats.getPending() == 0;
+    }
+
+    /**
+     * Returns the time in milliseconds a connection may be idle before evicted, not positive for never.
+     * 
+     * @return
+     */
+    public long getMaxIdleTime()
+    {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(final long maxIdleTime)
+    {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getEvictedConnections()
+    {
+        return evictedConnections.get();
+    }
+
+    public long getEvictionRuns()
+    {
+        return evictionRuns.get();
+    }
+
+    void recordEviction(final int evicted)
+    {
+        evictionRuns.incrementAndGet();
+        evictedConnections.addAndGet(evicted);
+    }
+
+    /**
+     * Returns per-route permits bounding requests run by {@link HttpClientExecutor}s on this manager.
+     * 
+     * @return
+     */
+    public RoutePermits getRoutePermits()
+    {
+        return routePermits;
+    }
+
+    /**
+     * Returns how many connections were leased from the pool already open.
+     * 
+     * @return
+     */
+    public long getReusedConnections()
+    {
+        return reusedConnections.get();
+    }
+
+    /**
+     * Returns how many connections were leased to be newly opened.
+     * 
+     * @return
+     */
+    public long getOpenedConnections()
+    {
+        return openedConnections.get();
+    }
+
+    /**
+     * Returns the time callers have waited for connections from the pool, timed out leases included.
+     * 
+     * @return
+     */
+    public LatencyHistogram getLeaseWaitTime()
+    {
+        return leaseWaitTime;
+    }
+
+    LatencyHistogram getLeaseWaitWindow()
+    {
+        return leaseWaitWindow;
+    }
+
+    LatencyHistogram getAutosizingWindow()
+    {
+        return autosizingWindow;
+    }
+
+    /**
+     * Returns how many leases failed with {@link ConnectionPoolTimeoutException}.
+     * 
+     * @return
+     */
+    public long getPoolTimeouts()
+    {
+        return poolTimeouts.get();
+    }
+
+    /**
+     * Returns the lease wait time in milliseconds at {@link #getLeaseWaitPercentile()} from which the pool is considered starving, not positive for
+     * never.
+     * 
+     * @return
+     */
+    public long getLeaseWaitThreshold()
+    {
+        return leaseWaitThreshold;
+    }
+
+    public void setLeaseWaitThreshold(final long leaseWaitThreshold)
+    {
+        this.leaseWaitThreshold = leaseWaitThreshold;
+    }
+
+    public double getLeaseWaitPercentile()
+    {
+        return leaseWaitPercentile;
+    }
+
+    public void setLeaseWaitPercentile(final double leaseWaitPercentile)
+    {
+        this.leaseWaitPercentile = leaseWaitPercentile;
+    }
+
+    ConnPoolAutosizer getAutosizer()
+    {
+        return autosizer;
+    }
+
+    void setAutosizer(final ConnPoolAutosizer autosizer)
+    {
+        this.autosizer = autosizer;
+    }
+
+    /**
+     * Returns the settings MBean managing this manager, if any.
+     * 
+     * @return
+     */
+    ClientConnMgrSettings getSettings()
+    {
+        return settings;
+    }
+
+    void setSettings(final ClientConnMgrSettings settings)
+    {
+        this.settings = settings;
+    }
+
+}
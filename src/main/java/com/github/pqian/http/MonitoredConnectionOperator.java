@@ -0,0 +1,69 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Adds the time opening a connection takes to the {@link RequestTrace} of the current request, if sampled. The TLS handshake is part of it, as
+ * secure sockets are connected and verified in one step. Connections opened are noted by the {@link CachingDnsResolver} of the manager, if any.
+ */
+class MonitoredConnectionOperator implements ClientConnectionOperator
+{
+    private final ClientConnectionOperator operator;
+    // read once opening, the operator is created while the manager is constructed
+    private final MonitoredClientConnMgr connMgr;
+
+    MonitoredConnectionOperator(final ClientConnectionOperator operator, final MonitoredClientConnMgr connMgr)
+    {
+        this.operator = operator;
+        this.connMgr = connMgr;
+    }
+
+    @Override
+    public OperatedClientConnection createConnection()
+    {
+        return operator.createConnection();
+    }
+
+    @Override
+    public void openConnection(final OperatedClientConnection conn, final HttpHost target, final InetAddress local, final HttpContext context,
+            final HttpParams params) throws IOException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            operator.openConnection(conn, target, local, context, params);
+            final DnsResolver dnsResolver = connMgr.getDnsResolver();
+            if (dnsResolver instanceof CachingDnsResolver)
+            {
+                ((CachingDnsResolver) dnsResolver).connected(conn);
+            }
+        }
+        finally
+        {
+            RequestTrace.recordConnect(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void updateSecureConnection(final OperatedClientConnection conn, final HttpHost target, final HttpContext context, final HttpParams params)
+            throws IOException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            operator.updateSecureConnection(conn, target, context, params);
+        }
+        finally
+        {
+            RequestTrace.recordConnect(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.github.pqian.http;
+
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.client.AuthenticationStrategy;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * A {@link DefaultHttpClient} whose request execution path can be instrumented at runtime.
+ */
+public class MonitoredHttpClient extends DefaultHttpClient
+{
+    // switches are read from the lead of aggregated clients
+    private final MonitoredHttpClient lead;
+    private final RequestMetrics metrics;
+    private final CircuitBreakers circuitBreakers;
+    private volatile boolean instrumentationEnabled;
+    private volatile boolean circuitBreakerEnabled;
+    private final RequestHedging hedging;
+    private volatile boolean hedgingEnabled;
+    private final RateLimiter rateLimiter;
+    private volatile boolean rateLimitEnabled;
+    private final TraceSampler traceSampler;
+
+    public MonitoredHttpClient(final ClientConnectionManager connMgr)
+    {
+        this(connMgr, HttpSettings.snapshot());
+    }
+
+    /**
+     * Creates a client with circuit breakers, hedging and rate limits set by the given defaults.
+     * 
+     * @param connMgr
+     * @param settings
+     */
+    public MonitoredHttpClient(final ClientConnectionManager connMgr, final HttpSettingsSnapshot settings)
+    {
+        super(connMgr);
+        lead = this;
+        metrics = new RequestMetrics();
+        circuitBreakers = new CircuitBreakers(settings.getDefaultFailureThreshold(), settings.getDefaultOpenDuration(), settings.getDefaultBulkheadSize());
+        hedging = new RequestHedging(settings.getDefaultHedgePercentile());
+        rateLimiter = new RateLimiter(settings.getDefaultRateLimit(), settings.getDefaultRateLimitBurst(), settings.getDefaultRateLimitMaxWait());
+        traceSampler = new TraceSampler(settings.getDefaultTraceBufferSize(), settings.getDefaultTraceSampleRate());
+    }
+
+    /**
+     * Creates a client aggregated with the given one: it shares the connection manager, parameters, metrics, circuit breakers, hedging, rate
+     * limits, trace samples, retry policy and keep-alive strategy of the lead, and follows its switches, so that a single settings MBean manages both.
+     * 
+     * @param lead
+     */
+    MonitoredHttpClient(final MonitoredHttpClient lead)
+    {
+        super(lead.getConnectionManager(), lead.getParams());
+        this.lead = lead.lead;
+        metrics = lead.metrics;
+        circuitBreakers = lead.circuitBreakers;
+        hedging = lead.hedging;
+        rateLimiter = lead.rateLimiter;
+        traceSampler = lead.traceSampler;
+        setHttpRequestRetryHandler(lead.getHttpRequestRetryHandler());
+        setKeepAliveStrategy(lead.getConnectionKeepAliveStrategy());
+    }
+
+    @Override
+    protected RequestDirector createClientRequestDirector(final HttpRequestExecutor requestExec, final ClientConnectionManager conman,
+            final ConnectionReuseStrategy reustrat, final ConnectionKeepAliveStrategy kastrat, final HttpRoutePlanner rouplan,
+            final HttpProcessor httpProcessor, final HttpRequestRetryHandler retryHandler, final RedirectStrategy redirectStrategy,
+            final AuthenticationStrategy targetAuthStrategy, final AuthenticationStrategy proxyAuthStrategy, final UserTokenHandler userTokenHandler,
+            final HttpParams params)
+    {
+        // every attempt takes permits of its own, retries run within the permits of the request though
+        final RateLimiter limiter = lead.rateLimitEnabled ? rateLimiter : null;
+        final CircuitBreakers breakers = lead.circuitBreakerEnabled ? circuitBreakers : null;
+        final HttpRequestRetryHandler attemptRetryHandler = retryHandler != null && (limiter != null || breakers != null) ? new ThrottledRetryHandler(
+                retryHandler, limiter, breakers) : retryHandler;
+        RequestDirector director = super.createClientRequestDirector(requestExec, conman, reustrat, kastrat, rouplan, httpProcessor,
+                attemptRetryHandler, redirectStrategy, targetAuthStrategy, proxyAuthStrategy, userTokenHandler, params);
+        // a director is created for every request executed
+        if (traceSampler.shouldSample())
+        {
+            // the network phases only, within throttling and hedging
+            director = new TracingRequestDirector(director, traceSampler);
+        }
+        final RetryPolicy retryPolicy = retryHandler instanceof RetryPolicy ? (RetryPolicy) retryHandler : null;
+        if (retryPolicy != null)
+        {
+            retryPolicy.deposit();
+        }
+        if (lead.hedgingEnabled)
+        {
+            // directors are stateful, the hedge needs its own
+            final RequestDirector hedgeDirector = super.createClientRequestDirector(requestExec, conman, reustrat, kastrat, rouplan, httpProcessor,
+                    attemptRetryHandler, redirectStrategy, targetAuthStrategy, proxyAuthStrategy, userTokenHandler, params);
+            director = new HedgingRequestDirector(director, guard(hedgeDirector, limiter, breakers), hedging, retryPolicy);
+        }
+        director = guard(director, limiter, breakers);
+        // rejected requests are recorded as failures, instantly
+        if (lead.instrumentationEnabled)
+        {
+            return new InstrumentedRequestDirector(director, metrics);
+        }
+        return FlightEvents.isRequestEnabled() ? new InstrumentedRequestDirector(director, null) : director;
+    }
+
+    /**
+     * Wraps the director in the bulkhead and circuit breaker, then the rate limit, of the route if enabled.
+     */
+    private static RequestDirector guard(final RequestDirector director, final RateLimiter limiter, final CircuitBreakers breakers)
+    {
+        RequestDirector guarded = director;
+        if (breakers != null)
+        {
+            guarded = new ProtectedRequestDirector(guarded, breakers);
+        }
+        // throttled before taking a place in the bulkhead
+        if (limiter != null)
+        {
+            guarded = new RateLimitedRequestDirector(guarded, limiter);
+        }
+        return guarded;
+    }
+
+    public RequestMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Returns the sampler keeping timings of a share of requests.
+     * 
+     * @return
+     */
+    TraceSampler getTraceSampler()
+    {
+        return traceSampler;
+    }
+
+    public boolean isInstrumentationEnabled()
+    {
+        return lead.instrumentationEnabled;
+    }
+
+    public void setInstrumentationEnabled(final boolean instrumentationEnabled)
+    {
+        lead.instrumentationEnabled = instrumentationEnabled;
+    }
+
+    /**
+     * Returns per-route circuit breakers and bulkheads, applied while enabled.
+     * 
+     * @return
+     */
+    public CircuitBreakers getCircuitBreakers()
+    {
+        return circuitBreakers;
+    }
+
+    /**
+     * Returns the retry policy, if set as retry handler.
+     * 
+     * @return
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        final HttpRequestRetryHandler retryHandler = getHttpRequestRetryHandler();
+        return retryHandler instanceof RetryPolicy ? (RetryPolicy) retryHandler : null;
+    }
+
+    public RequestHedging getHedging()
+    {
+        return hedging;
+    }
+
+    public boolean isHedgingEnabled()
+    {
+        return lead.hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(final boolean hedgingEnabled)
+    {
+        lead.hedgingEnabled = hedgingEnabled;
+    }
+
+    /**
+     * Returns per-route rate limits, applied while enabled.
+     * 
+     * @return
+     */
+    public RateLimiter getRateLimiter()
+    {
+        return rateLimiter;
+    }
+
+    public boolean isRateLimitEnabled()
+    {
+        return lead.rateLimitEnabled;
+    }
+
+    public void setRateLimitEnabled(final boolean rateLimitEnabled)
+    {
+        lead.rateLimitEnabled = rateLimitEnabled;
+    }
+
+    public boolean isCircuitBreakerEnabled()
+    {
+        return lead.circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(final boolean circuitBreakerEnabled)
+    {
+        lead.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.pqian.http;
+
+/**
+ * Compares the lease wait time percentile of a connection manager over each interval with its threshold, and has the {@link ClientConnMgrSettings}
+ * MBean emit a notification once the pool starts or stops starving. A lease timing out counts as starving regardless of the percentile.
+ */
+class PoolStarvationMonitor extends MaintenanceScheduler.Task<MonitoredClientConnMgr>
+{
+    private long lastPoolTimeouts;
+    private boolean starving;
+
+    PoolStarvationMonitor(final MonitoredClientConnMgr connMgr)
+    {
+        super(connMgr);
+    }
+
+    /**
+     * Starts checking the given manager for starvation with the interval in milliseconds, no checks if the interval is not positive.
+     * 
+     * @param connMgr
+     * @param checkInterval
+     */
+    static void schedule(final MonitoredClientConnMgr connMgr, final long checkInterval)
+    {
+        if (checkInterval > 0)
+        {
+            MaintenanceScheduler.schedule(new PoolStarvationMonitor(connMgr), checkInterval);
+        }
+    }
+
+    @Override
+    void run(final MonitoredClientConnMgr connMgr)
+    {
+        final LatencyHistogram window = connMgr.getLeaseWaitWindow();
+        final double percentile = connMgr.getLeaseWaitPercentile();
+        final double waitTime = window.getPercentile(percentile);
+        final long leases = window.getCount();
+        window.reset();
+        final long poolTimeouts = connMgr.getPoolTimeouts();
+        final long newTimeouts = poolTimeouts - lastPoolTimeouts;
+        lastPoolTimeouts = poolTimeouts;
+
+        // no lease done while callers are still waiting, the pool may be stuck, keep it as it is
+        if (leases == 0 && newTimeouts == 0 && connMgr.getTotalStats().getPending() > 0) { return; }
+        final long threshold = connMgr.getLeaseWaitThreshold();
+        final boolean nowStarving = threshold > 0 && (waitTime >= threshold || newTimeouts > 0);
+        if (nowStarving == starving) { return; }
+        starving = nowStarving;
+        final ClientConnMgrSettings settings = connMgr.getSettings();
+        if (settings != null)
+        {
+            settings.notifyStarvation(nowStarving, percentile, waitTime, newTimeouts);
+        }
+    }
+}
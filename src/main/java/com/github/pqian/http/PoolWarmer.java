@@ -0,0 +1,143 @@
+package com.github.pqian.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens connections of a pool ahead of traffic, in parallel on the {@link HttpClientExecutor#sharedExecutor() shared executor}. Every lease,
+ * connect and handshake is bounded by what is left of the time budget, so that no connection is left leased once a warm-up returns.
+ */
+final class PoolWarmer
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PoolWarmer.class);
+
+    private PoolWarmer()
+    {}
+
+    /**
+     * Leases the given number of connections per route at once, opens those not yet open and releases all back to the pool. Released connections
+     * do not expire, yet are still evicted once idle longer than the max idle time of the pool.
+     * 
+     * @param connMgr
+     * @param targets
+     *            number of connections per route
+     * @param timeBudget
+     *            in milliseconds
+     * @return
+     */
+    static WarmUpResult warmUp(final ClientConnectionManager connMgr, final Map<HttpRoute, Integer> targets, final long timeBudget)
+    {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeBudget);
+        final List<Future<ManagedClientConnection>> futures = new ArrayList<Future<ManagedClientConnection>>();
+        for (final Map.Entry<HttpRoute, Integer> target : targets.entrySet())
+        {
+            for (int i = 0; i < target.getValue(); i++)
+            {
+                futures.add(HttpClientExecutor.sharedExecutor().submit(new Callable<ManagedClientConnection>()
+                {
+                    @Override
+                    public ManagedClientConnection call() throws Exception
+                    {
+                        return open(connMgr, target.getKey(), deadline);
+                    }
+                }));
+            }
+        }
+
+        // held until all are done, otherwise a released connection is leased again instead of a new one
+        final List<ManagedClientConnection> conns = new ArrayList<ManagedClientConnection>();
+        boolean interrupted = false;
+        for (final Future<ManagedClientConnection> future : futures)
+        {
+            while (true)
+            {
+                try
+                {
+                    conns.add(future.get());
+                    break;
+                }
+                catch (final InterruptedException e)
+                {
+                    // each task ends within the budget, keep waiting so that none is left leased
+                    interrupted = true;
+                }
+                catch (final ExecutionException e)
+                {
+                    LOG.debug("Warming up a connection failed", e.getCause());
+                    break;
+                }
+            }
+        }
+        for (final ManagedClientConnection conn : conns)
+        {
+            connMgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        final WarmUpResult result = new WarmUpResult(futures.size(), conns.size(), futures.size() - conns.size(), TimeUnit.NANOSECONDS.toMillis(System
+                .nanoTime() - start));
+        LOG.info("Warmed up {} of {}: {}", new Object[] { connMgr, targets, result });
+        return result;
+    }
+
+    private static ManagedClientConnection open(final ClientConnectionManager connMgr, final HttpRoute route, final long deadline) throws Exception
+    {
+        final long leaseTimeout = remaining(deadline);
+        // a lease timeout of 0 waits forever
+        if (leaseTimeout <= 0) { throw new ConnectTimeoutException("Time budget exhausted before leasing " + route); }
+        final ManagedClientConnection conn = connMgr.requestConnection(route, null).getConnection(leaseTimeout, TimeUnit.MILLISECONDS);
+        if (conn.isOpen())
+        {
+            // released as is, a leased connection is closed unless marked reusable again
+            conn.markReusable();
+            return conn;
+        }
+        boolean opened = false;
+        try
+        {
+            final HttpSettingsSnapshot settings = HttpSettings.snapshot();
+            final int timeout = (int) Math.min(remaining(deadline), settings.getDefaultConnectionTimeout());
+            if (timeout <= 0) { throw new ConnectTimeoutException("Time budget exhausted before connecting " + route); }
+            final HttpParams params = new BasicHttpParams();
+            HttpConnectionParams.setConnectionTimeout(params, timeout);
+            // bounds a TLS handshake
+            HttpConnectionParams.setSoTimeout(params, timeout);
+            conn.open(route, new BasicHttpContext(), params);
+            conn.setSocketTimeout(settings.getDefaultSocketTimeout());
+            conn.markReusable();
+            opened = true;
+            return conn;
+        }
+        finally
+        {
+            if (!opened)
+            {
+                connMgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static long remaining(final long deadline)
+    {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
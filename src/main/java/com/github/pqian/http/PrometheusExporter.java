@@ -0,0 +1,653 @@
+package com.github.pqian.http;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves every <code>pqian.http</code> MBean in the Prometheus text format at <code>/metrics</code> of an embedded HTTP server. Numeric and boolean
+ * attributes are gauges named <code>pqian_http_&lt;type&gt;_&lt;attribute&gt;</code> and labelled by MBean name, stats add their item to the name,
+ * and per-route or per-stripe tables label each row by its key. Scrapes are serialized on a single buffer reused, the grouping by type and the
+ * tables of values are reused across scrapes, and metric names are converted once. Reading attributes through the MBean server and flattening
+ * composite and stats values still allocate.
+ */
+public final class PrometheusExporter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Set<String> KEY_VALUE = new HashSet<String>(Arrays.asList("key", "value"));
+
+    private final HttpServer server;
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+    private byte[] bytes = new byte[16 * 1024];
+    private final Map<String, String> snakeCases = new HashMap<String, String>();
+    private final Map<String, String> prefixes = new HashMap<String, String>();
+    private final Map<ObjectName, String[]> attributeNames = new HashMap<ObjectName, String[]>();
+    private final Map<Class<?>, Method[]> beanGetters = new HashMap<Class<?>, Method[]>();
+    // grouped by type, every sample of a metric has to be written at once
+    private final Map<String, List<ObjectName>> byType = new TreeMap<String, List<ObjectName>>();
+    // attribute values by MBean, of every type
+    private final Map<String, Object[][]> valuesByType = new HashMap<String, Object[][]>();
+    private final List<String> tableItems = new ArrayList<String>();
+    private final Set<String> itemNames = new TreeSet<String>();
+
+    private PrometheusExporter(final InetSocketAddress address) throws IOException
+    {
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    synchronized (PrometheusExporter.this)
+                    {
+                        final int length = scrape();
+                        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                        exchange.sendResponseHeaders(200, length);
+                        exchange.getResponseBody().write(bytes, 0, length);
+                    }
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Starts serving metrics on the given port of all interfaces, 0 for any free port.
+     * 
+     * @param port
+     * @return
+     */
+    public static PrometheusExporter start(final int port)
+    {
+        return start(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts serving metrics on the given address. The server runs until stopped.
+     * 
+     * @param address
+     * @return
+     */
+    public static PrometheusExporter start(final InetSocketAddress address)
+    {
+        try
+        {
+            final PrometheusExporter exporter = new PrometheusExporter(address);
+            LOG.info("Metrics of MBeans served at http://{}:{}/metrics", address.getHostString(), exporter.getPort());
+            return exporter;
+        }
+        catch (final IOException e)
+        {
+            throw new RuntimeException("Starting metrics server failed, " + address, e);
+        }
+    }
+
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    public void stop()
+    {
+        server.stop(0);
+    }
+
+    /**
+     * Writes metrics of every MBean into the buffer.
+     * 
+     * @return the length of metrics in bytes
+     */
+    synchronized int scrape()
+    {
+        text.setLength(0);
+        final MBeanServer mbeanServer = MBeanRegistrar.getMBeanServer();
+        for (final List<ObjectName> objectNames : byType.values())
+        {
+            objectNames.clear();
+        }
+        try
+        {
+            final Set<ObjectName> registered = mbeanServer.queryNames(new ObjectName("pqian.http:*"), null);
+            // forget attributes of MBeans unregistered since
+            attributeNames.keySet().retainAll(registered);
+            for (final ObjectName objectName : registered)
+            {
+                final String type = objectName.getKeyProperty("type") != null ? objectName.getKeyProperty("type") : objectName.getKeyProperty("name");
+                List<ObjectName> objectNames = byType.get(type);
+                if (objectNames == null)
+                {
+                    objectNames = new ArrayList<ObjectName>();
+                    byType.put(type, objectNames);
+                }
+                objectNames.add(objectName);
+            }
+        }
+        catch (final Exception e)
+        {
+            throw new RuntimeException("Querying MBeans failed", e);
+        }
+        // forget types without MBeans left
+        final Iterator<List<ObjectName>> it = byType.values().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().isEmpty())
+            {
+                it.remove();
+            }
+        }
+        valuesByType.keySet().retainAll(byType.keySet());
+        for (final Map.Entry<String, List<ObjectName>> type : byType.entrySet())
+        {
+            writeType(mbeanServer, type.getKey(), type.getValue());
+        }
+        return encode();
+    }
+
+    private void writeType(final MBeanServer mbeanServer, final String type, final List<ObjectName> objectNames)
+    {
+        final String[] attributes = attributeNamesOf(mbeanServer, objectNames.get(0));
+        final int count = objectNames.size();
+        final Object[][] values = valuesOf(type, count, attributes.length);
+        for (int i = 0; i < count; i++)
+        {
+            try
+            {
+                for (final Attribute attribute : mbeanServer.getAttributes(objectNames.get(i), attributes).asList())
+                {
+                    for (int a = 0; a < attributes.length; a++)
+                    {
+                        if (attributes[a].equals(attribute.getName()))
+                        {
+                            values[i][a] = flatten(attribute.getValue(), true);
+                        }
+                    }
+                }
+            }
+            catch (final Exception e)
+            {
+                // unregistered meanwhile
+                LOG.debug("Reading attributes failed, " + objectNames.get(i), e);
+            }
+        }
+        for (int a = 0; a < attributes.length; a++)
+        {
+            Object sample = null;
+            for (int i = 0; i < count && sample == null; i++)
+            {
+                sample = values[i][a];
+            }
+            if (isNumeric(sample))
+            {
+                writeHeader(type, attributes[a], null);
+                for (int i = 0; i < count; i++)
+                {
+                    writeSample(type, attributes[a], null, objectNames.get(i), null, values[i][a]);
+                }
+            }
+            else if (sample instanceof Table)
+            {
+                writeTable(type, attributes[a], objectNames, values, count, a);
+            }
+            else if (sample instanceof Map)
+            {
+                for (final String item : itemsOf(sample))
+                {
+                    writeHeader(type, attributes[a], item);
+                    for (int i = 0; i < count; i++)
+                    {
+                        if (values[i][a] instanceof Map)
+                        {
+                            writeSample(type, attributes[a], item, objectNames.get(i), null, ((Map<?, ?>) values[i][a]).get(item));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a table of values or of stats by key, as of a {@link Map} or a {@link List}, labelling each row by its key.
+     */
+    private void writeTable(final String type, final String attribute, final List<ObjectName> objectNames, final Object[][] values, final int count,
+            final int a)
+    {
+        Object sampleRow = null;
+        for (int i = 0; i < count && sampleRow == null; i++)
+        {
+            if (values[i][a] instanceof Table && !((Table) values[i][a]).isEmpty())
+            {
+                sampleRow = ((Table) values[i][a]).values().iterator().next();
+            }
+        }
+        if (sampleRow == null) { return; }
+        final List<String> items = tableItems;
+        items.clear();
+        if (isNumeric(sampleRow))
+        {
+            items.add(null);
+        }
+        else
+        {
+            items.addAll(itemsOf(sampleRow));
+        }
+        for (final String item : items)
+        {
+            writeHeader(type, attribute, item);
+            for (int i = 0; i < count; i++)
+            {
+                if (!(values[i][a] instanceof Table))
+                {
+                    continue;
+                }
+                for (final Map.Entry<String, Object> row : ((Table) values[i][a]).entrySet())
+                {
+                    final Object value = item == null ? row.getValue() : row.getValue() instanceof Map ? ((Map<?, ?>) row.getValue()).get(item) : null;
+                    writeSample(type, attribute, item, objectNames.get(i), row.getKey(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flattens an attribute value to a number, to items of a composite by name, or to a {@link Table} of either by key. Values of MXBeans come as
+     * open data, those of standard MBeans as they are returned, so stats are read by their getters.
+     * 
+     * @param value
+     * @param tableAllowed
+     *            false for rows of a table, which are not flattened further
+     * @return null if nothing numeric is found
+     */
+    private Object flatten(final Object value, final boolean tableAllowed)
+    {
+        if (value == null || isNumeric(value)) { return value; }
+        if (value instanceof CompositeData)
+        {
+            final CompositeData data = (CompositeData) value;
+            final Map<String, Object> items = new TreeMap<String, Object>();
+            for (final String item : data.getCompositeType().keySet())
+            {
+                if (isNumeric(data.get(item)))
+                {
+                    items.put(item, data.get(item));
+                }
+            }
+            return items.isEmpty() ? null : items;
+        }
+        if (!tableAllowed) { return flattenBean(value); }
+        final Table table = new Table();
+        if (value instanceof TabularData)
+        {
+            for (final Object row : ((TabularData) value).values())
+            {
+                final CompositeData data = (CompositeData) row;
+                if (!data.getCompositeType().keySet().equals(KEY_VALUE)) { return null; }
+                putRow(table, String.valueOf(data.get("key")), data.get("value"));
+            }
+        }
+        else if (value instanceof Map)
+        {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+            {
+                putRow(table, String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        else if (value instanceof Collection || value instanceof Object[])
+        {
+            int index = 0;
+            for (final Object element : value instanceof Collection ? (Collection<?>) value : Arrays.asList((Object[]) value))
+            {
+                putRow(table, String.valueOf(index++), element);
+            }
+        }
+        else
+        {
+            return flattenBean(value);
+        }
+        return table;
+    }
+
+    private void putRow(final Table table, final String key, final Object value)
+    {
+        final Object row = flatten(value, false);
+        if (row != null)
+        {
+            table.put(key, row);
+        }
+    }
+
+    /**
+     * Reads numeric properties of a bean such as {@link ConnPoolStats}, by getters found once for every class.
+     */
+    private Map<String, Object> flattenBean(final Object bean)
+    {
+        Method[] getters = beanGetters.get(bean.getClass());
+        if (getters == null)
+        {
+            final List<Method> numeric = new ArrayList<Method>();
+            try
+            {
+                for (final PropertyDescriptor property : Introspector.getBeanInfo(bean.getClass(), Object.class).getPropertyDescriptors())
+                {
+                    final Method getter = property.getReadMethod();
+                    if (getter != null && isNumericType(getter.getReturnType()))
+                    {
+                        numeric.add(getter);
+                    }
+                }
+            }
+            catch (final IntrospectionException e)
+            {
+                LOG.debug("Reading properties failed, " + bean.getClass(), e);
+            }
+            getters = numeric.toArray(new Method[numeric.size()]);
+            beanGetters.put(bean.getClass(), getters);
+        }
+        if (getters.length == 0) { return null; }
+        final Map<String, Object> items = new TreeMap<String, Object>();
+        for (final Method getter : getters)
+        {
+            try
+            {
+                items.put(Introspector.decapitalize(getter.getName().substring(getter.getName().startsWith("is") ? 2 : 3)), getter.invoke(bean));
+            }
+            catch (final Exception e)
+            {
+                LOG.debug("Reading property failed, " + getter, e);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Returns the item names of a composite sorted, in a set reused by the next call.
+     */
+    private Set<String> itemsOf(final Object composite)
+    {
+        itemNames.clear();
+        for (final Object item : ((Map<?, ?>) composite).keySet())
+        {
+            itemNames.add((String) item);
+        }
+        return itemNames;
+    }
+
+    /**
+     * Returns the table of attribute values of a type reused, cleared, grown if it has more MBeans or other attributes.
+     */
+    private Object[][] valuesOf(final String type, final int count, final int attributeCount)
+    {
+        Object[][] values = valuesByType.get(type);
+        if (values == null || values.length < count || values[0].length != attributeCount)
+        {
+            values = new Object[Math.max(count, values == null ? 0 : values.length)][attributeCount];
+            valuesByType.put(type, values);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            Arrays.fill(values[i], null);
+        }
+        return values;
+    }
+
+    private void writeHeader(final String type, final String attribute, final String item)
+    {
+        text.append("# TYPE ");
+        writeName(type, attribute, item);
+        text.append(" gauge\n");
+    }
+
+    private void writeSample(final String type, final String attribute, final String item, final ObjectName objectName, final String key,
+            final Object value)
+    {
+        if (!isNumeric(value)) { return; }
+        writeName(type, attribute, item);
+        final String name = objectName.getKeyProperty("type") != null ? objectName.getKeyProperty("name") : null;
+        if (name != null || key != null)
+        {
+            text.append('{');
+            if (name != null)
+            {
+                text.append("name=\"");
+                writeLabelValue(name);
+                text.append('"');
+            }
+            if (key != null)
+            {
+                text.append(name != null ? ",key=\"" : "key=\"");
+                writeLabelValue(key);
+                text.append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ');
+        if (value instanceof Boolean)
+        {
+            text.append((Boolean) value ? '1' : '0');
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            final double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d))
+            {
+                text.append("NaN");
+            }
+            else if (Double.isInfinite(d))
+            {
+                text.append(d > 0 ? "+Inf" : "-Inf");
+            }
+            else
+            {
+                text.append(d);
+            }
+        }
+        else
+        {
+            text.append(((Number) value).longValue());
+        }
+        text.append('\n');
+    }
+
+    private void writeName(final String type, final String attribute, final String item)
+    {
+        text.append(prefixOf(type)).append(snakeCase(attribute));
+        if (item != null)
+        {
+            text.append('_').append(snakeCase(item));
+        }
+    }
+
+    /**
+     * Returns the prefix of metrics of an MBean type, such as <code>pqian_http_client_conn_mgr_</code> of <code>ClientConnMgrSettings</code> and
+     * <code>pqian_http_</code> of <code>HttpSettings</code>.
+     */
+    private String prefixOf(final String type)
+    {
+        String prefix = prefixes.get(type);
+        if (prefix == null)
+        {
+            String name = type.endsWith("Settings") ? type.substring(0, type.length() - "Settings".length()) : type;
+            name = name.startsWith("Http") ? name.substring("Http".length()) : name;
+            prefix = name.isEmpty() ? "pqian_http_" : "pqian_http_" + snakeCase(name) + "_";
+            prefixes.put(type, prefix);
+        }
+        return prefix;
+    }
+
+    private void writeLabelValue(final String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+            {
+                text.append('\\').append(c);
+            }
+            else if (c == '\n')
+            {
+                text.append("\\n");
+            }
+            else
+            {
+                text.append(c);
+            }
+        }
+    }
+
+    /**
+     * Converts a name such as <code>LeaseWaitP99</code> to <code>lease_wait_p99</code>, once for every name.
+     */
+    private String snakeCase(final String name)
+    {
+        String snakeCase = snakeCases.get(name);
+        if (snakeCase == null)
+        {
+            final StringBuilder sb = new StringBuilder(name.length() + 8);
+            final String words = name.replace("MBean", "Mbean");
+            for (int i = 0; i < words.length(); i++)
+            {
+                final char c = words.charAt(i);
+                if (Character.isUpperCase(c) && i > 0
+                        && (!Character.isUpperCase(words.charAt(i - 1)) || i + 1 < words.length() && Character.isLowerCase(words.charAt(i + 1))))
+                {
+                    sb.append('_');
+                }
+                sb.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : '_');
+            }
+            snakeCase = sb.toString();
+            snakeCases.put(name, snakeCase);
+        }
+        return snakeCase;
+    }
+
+    private String[] attributeNamesOf(final MBeanServer mbeanServer, final ObjectName objectName)
+    {
+        String[] names = attributeNames.get(objectName);
+        if (names == null)
+        {
+            final List<String> readable = new ArrayList<String>();
+            try
+            {
+                for (final MBeanAttributeInfo info : mbeanServer.getMBeanInfo(objectName).getAttributes())
+                {
+                    if (info.isReadable())
+                    {
+                        readable.add(info.getName());
+                    }
+                }
+            }
+            catch (final Exception e)
+            {
+                LOG.debug("Reading MBean info failed, " + objectName, e);
+            }
+            names = readable.toArray(new String[readable.size()]);
+            attributeNames.put(objectName, names);
+        }
+        return names;
+    }
+
+    /**
+     * Encodes the text as UTF-8 into the buffer, grown as needed.
+     */
+    private int encode()
+    {
+        if (bytes.length < text.length() * 3)
+        {
+            bytes = new byte[text.length() * 3];
+        }
+        int length = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            final char c = text.charAt(i);
+            if (c < 0x80)
+            {
+                bytes[length++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+                bytes[length++] = (byte) (0xc0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+            {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes[length++] = (byte) (0xf0 | codePoint >> 18);
+                bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | codePoint & 0x3f);
+            }
+            else
+            {
+                bytes[length++] = (byte) (0xe0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                bytes[length++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return length;
+    }
+
+    private static boolean isNumeric(final Object value)
+    {
+        return value instanceof Number || value instanceof Boolean;
+    }
+
+    private static boolean isNumericType(final Class<?> type)
+    {
+        return type.isPrimitive() && type != void.class && type != char.class || Number.class.isAssignableFrom(type) || type == Boolean.class;
+    }
+
+    /**
+     * Returns the metrics written by the last scrape.
+     * 
+     * @return
+     */
+    synchronized String getText()
+    {
+        return text.toString();
+    }
+
+    /**
+     * Rows of a table by key, each a number or items of a composite.
+     */
+    private static class Table extends LinkedHashMap<String, Object>
+    {
+        private static final long serialVersionUID = 1L;
+    }
+}
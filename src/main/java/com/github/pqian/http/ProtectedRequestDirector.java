@@ -0,0 +1,53 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Admits requests through the {@link CircuitBreaker} of their route, failing fast with {@link RequestRejectedException} otherwise. Exceptions and
+ * server errors count as failures, unless the request is aborted by the caller.
+ */
+class ProtectedRequestDirector implements RequestDirector
+{
+    private final RequestDirector director;
+    private final CircuitBreakers breakers;
+
+    ProtectedRequestDirector(final RequestDirector director, final CircuitBreakers breakers)
+    {
+        this.director = director;
+        this.breakers = breakers;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context) throws HttpException, IOException
+    {
+        final String route = CircuitBreakers.routeOf(target);
+        final CircuitBreaker breaker = breakers.get(route);
+        final boolean trial = breaker.acquire(route);
+        boolean success = false;
+        try
+        {
+            final HttpResponse response = director.execute(target, request, context);
+            success = response.getStatusLine().getStatusCode() < 500;
+            return response;
+        }
+        finally
+        {
+            if (!success && request instanceof HttpUriRequest && ((HttpUriRequest) request).isAborted())
+            {
+                breaker.cancel(trial);
+            }
+            else
+            {
+                breaker.release(trial, success);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.pqian.http;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of a {@link TokenBucket}, mapped to CompositeData by {@link RateLimiterSettingsMBean}.
+ */
+public class RateLimitStats
+{
+    private final double rate;
+    private final long granted;
+    private final long throttled;
+    private final long waitTime;
+
+    @ConstructorProperties({ "rate", "granted", "throttled", "waitTime" })
+    public RateLimitStats(final double rate, final long granted, final long throttled, final long waitTime)
+    {
+        this.rate = rate;
+        this.granted = granted;
+        this.throttled = throttled;
+        this.waitTime = waitTime;
+    }
+
+    public double getRate()
+    {
+        return rate;
+    }
+
+    public long getGranted()
+    {
+        return granted;
+    }
+
+    public long getThrottled()
+    {
+        return throttled;
+    }
+
+    /**
+     * Returns the total time in milliseconds requests waited for permits.
+     * 
+     * @return
+     */
+    public long getWaitTime()
+    {
+        return waitTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[rate: " + rate + "; granted: " + granted + "; throttled: " + throttled + "; waitTime: " + waitTime + "]";
+    }
+}
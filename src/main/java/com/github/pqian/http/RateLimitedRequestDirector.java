@@ -0,0 +1,42 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Takes a permit of the {@link RateLimiter} for every request before executing it, failing with {@link RequestRejectedException} if none is
+ * available in time.
+ */
+class RateLimitedRequestDirector implements RequestDirector
+{
+    private final RequestDirector director;
+    private final RateLimiter limiter;
+
+    RateLimitedRequestDirector(final RequestDirector director, final RateLimiter limiter)
+    {
+        this.director = director;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context) throws HttpException, IOException
+    {
+        try
+        {
+            limiter.acquire(target);
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a permit of " + target);
+        }
+        return director.execute(target, request, context);
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.pqian.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+
+/**
+ * Per-route {@link TokenBucket}s of a {@link MonitoredHttpClient}, keyed by the URI of the target host. A route is limited by its own rate if set,
+ * otherwise by the default rate. Requests wait for a permit up to the maximal wait, or fail fast if it is 0.
+ */
+public class RateLimiter
+{
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentMap<String, Double> routeRates = new ConcurrentHashMap<String, Double>();
+    private volatile double rate;
+    private volatile int burst;
+    private volatile long maxWait;
+
+    public RateLimiter(final double rate, final int burst, final long maxWait)
+    {
+        this.rate = rate;
+        this.burst = burst;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Waits for a permit of the target host.
+     * 
+     * @param target
+     * @throws RequestRejectedException
+     *             if no permit is available within the maximal wait
+     * @throws InterruptedException
+     */
+    void acquire(final HttpHost target) throws RequestRejectedException, InterruptedException
+    {
+        final String route = RequestMetrics.routeOf(target);
+        final long wait = bucket(route).reserve(TimeUnit.MILLISECONDS.toNanos(maxWait));
+        if (wait < 0) { throw new RequestRejectedException("Rate limit of " + route + " exceeded"); }
+        if (wait > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private TokenBucket bucket(final String route)
+    {
+        final TokenBucket bucket = buckets.get(route);
+        if (bucket != null) { return bucket; }
+        final Double routeRate = routeRates.get(route);
+        final TokenBucket newBucket = new TokenBucket(routeRate == null ? rate : routeRate, burst);
+        final TokenBucket existing = buckets.putIfAbsent(route, newBucket);
+        return existing == null ? newBucket : existing;
+    }
+
+    /**
+     * Returns the default permits per second of a route, not positive for unlimited.
+     * 
+     * @return
+     */
+    public double getRate()
+    {
+        return rate;
+    }
+
+    public synchronized void setRate(final double rate)
+    {
+        this.rate = rate;
+        for (final Map.Entry<String, TokenBucket> entry : buckets.entrySet())
+        {
+            if (!routeRates.containsKey(entry.getKey()))
+            {
+                entry.getValue().setRate(rate);
+            }
+        }
+    }
+
+    /**
+     * Returns how many permits of a route can be taken at once after a quiet period.
+     * 
+     * @return
+     */
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    public synchronized void setBurst(final int burst)
+    {
+        this.burst = burst;
+        for (final TokenBucket bucket : buckets.values())
+        {
+            bucket.setBurst(burst);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds a request waits for a permit at most, 0 to fail fast.
+     * 
+     * @return
+     */
+    public long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    public void setMaxWait(final long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    public Map<String, Double> getRouteRates()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String, Double>(routeRates));
+    }
+
+    /**
+     * Limits the route by its own rate.
+     * 
+     * @param route
+     *            e.g. http://localhost:8080
+     * @param routeRate
+     */
+    public synchronized void setRouteRate(final String route, final double routeRate)
+    {
+        routeRates.put(route, routeRate);
+        bucket(route).setRate(routeRate);
+    }
+
+    /**
+     * Limits the route by the default rate again.
+     * 
+     * @param route
+     */
+    public synchronized void clearRouteRate(final String route)
+    {
+        routeRates.remove(route);
+        final TokenBucket bucket = buckets.get(route);
+        if (bucket != null)
+        {
+            bucket.setRate(rate);
+        }
+    }
+
+    public Map<String, RateLimitStats> getStats()
+    {
+        final Map<String, RateLimitStats> stats = new TreeMap<String, RateLimitStats>();
+        for (final Map.Entry<String, TokenBucket> entry : buckets.entrySet())
+        {
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.pqian.http;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RateLimiterSettings implements RateLimiterSettingsMBean
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimiterSettings.class);
+
+    private final String objectName;
+    private final WeakReference<MonitoredHttpClient> clientRef;
+
+    public RateLimiterSettings(final MonitoredHttpClient client, final String objectName)
+    {
+        this.objectName = objectName;
+        clientRef = new WeakReference<MonitoredHttpClient>(client);
+
+        MBeanReaper.watch(client, objectName);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return clientRef.get().isRateLimitEnabled();
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled)
+    {
+        clientRef.get().setRateLimitEnabled(enabled);
+        LOG.info("{}: set enabled with {}", objectName, enabled);
+    }
+
+    @Override
+    public double getRate()
+    {
+        return limiter().getRate();
+    }
+
+    @Override
+    public void setRate(final double rate)
+    {
+        limiter().setRate(rate);
+        LOG.info("{}: set rate with {}", objectName, rate);
+    }
+
+    @Override
+    public int getBurst()
+    {
+        return limiter().getBurst();
+    }
+
+    @Override
+    public void setBurst(final int burst)
+    {
+        limiter().setBurst(burst);
+        LOG.info("{}: set burst with {}", objectName, burst);
+    }
+
+    @Override
+    public long getMaxWait()
+    {
+        return limiter().getMaxWait();
+    }
+
+    @Override
+    public void setMaxWait(final long maxWait)
+    {
+        limiter().setMaxWait(maxWait);
+        LOG.info("{}: set maxWait with {}", objectName, maxWait);
+    }
+
+    @Override
+    public Map<String, Double> getRouteRates()
+    {
+        return limiter().getRouteRates();
+    }
+
+    @Override
+    public void setRouteRate(final String route, final double rate)
+    {
+        limiter().setRouteRate(route, rate);
+        LOG.info("{}: set rate of {} with {}", objectName, route, rate);
+    }
+
+    @Override
+    public void clearRouteRate(final String route)
+    {
+        limiter().clearRouteRate(route);
+        LOG.info("{}: cleared rate of {}", objectName, route);
+    }
+
+    @Override
+    public Map<String, RateLimitStats> getRouteStats()
+    {
+        return limiter().getStats();
+    }
+
+    @Override
+    public long getGranted()
+    {
+        long granted = 0;
+        for (final RateLimitStats stats : limiter().getStats().values())
+        {
+            granted += stats.getGranted();
+        }
+        return granted;
+    }
+
+    @Override
+    public long getThrottled()
+    {
+        long throttled = 0;
+        for (final RateLimitStats stats : limiter().getStats().values())
+        {
+            throttled += stats.getThrottled();
+        }
+        return throttled;
+    }
+
+    @Override
+    public long getWaitTime()
+    {
+        long waitTime = 0;
+        for (final RateLimitStats stats : limiter().getStats().values())
+        {
+            waitTime += stats.getWaitTime();
+        }
+        return waitTime;
+    }
+
+    private RateLimiter limiter()
+    {
+        return clientRef.get().getRateLimiter();
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.pqian.http;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+@MXBean
+public interface RateLimiterSettingsMBean
+{
+    /**
+     * Returns whether requests are throttled by per-route rate limits.
+     * 
+     * @return
+     */
+    boolean isEnabled();
+
+    void setEnabled(final boolean enabled);
+
+    /**
+     * Returns the permits per second of a route without a rate of its own, not positive for unlimited.
+     * 
+     * @return
+     */
+    double getRate();
+
+    void setRate(final double rate);
+
+    /**
+     * Returns how many permits of a route can be taken at once after a quiet period.
+     * 
+     * @return
+     */
+    int getBurst();
+
+    void setBurst(final int burst);
+
+    /**
+     * Returns the time in milliseconds a request waits for a permit at most, 0 to fail fast.
+     * 
+     * @return
+     */
+    long getMaxWait();
+
+    void setMaxWait(final long maxWait);
+
+    /**
+     * Returns rates of routes set via JMX, keyed by target host.
+     * 
+     * @return
+     */
+    Map<String, Double> getRouteRates();
+
+    /**
+     * Limits the route by its own rate.
+     * 
+     * @param route
+     *            e.g. http://localhost:8080
+     * @param rate
+     */
+    void setRouteRate(final String route, final double rate);
+
+    void clearRouteRate(final String route);
+
+    /**
+     * Returns rate, permits granted, throttled and the time waited of every requested route, keyed by target host.
+     * 
+     * @return
+     */
+    Map<String, RateLimitStats> getRouteStats();
+
+    long getGranted();
+
+    long getThrottled();
+
+    /**
+     * Returns the total time in milliseconds requests waited for permits.
+     * 
+     * @return
+     */
+    long getWaitTime();
+}
@@ -0,0 +1,105 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when an idempotent request of a route is sent a second time, i.e. once it takes longer than a percentile of the recent response times of
+ * the route, and counts hedges fired and won.
+ */
+public class RequestHedging
+{
+    // no hedging before the percentile is meaningful
+    private static final int MIN_SAMPLES = 20;
+    // sampling starts over so that the delay follows the current latency of the route
+    private static final int MAX_SAMPLES = 10000;
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private volatile double percentile;
+
+    public RequestHedging(final double percentile)
+    {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns the delay in milliseconds after which a request of the route is hedged, not positive if not to hedge yet.
+     * 
+     * @param route
+     * @return
+     */
+    long delayOf(final String route)
+    {
+        final LatencyHistogram histogram = histograms.get(route);
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES) { return 0; }
+        return Math.max(1, (long) Math.ceil(histogram.getPercentile(percentile)));
+    }
+
+    /**
+     * Records the response time in nanoseconds of a request of the route, hedged or not.
+     * 
+     * @param route
+     * @param nanos
+     */
+    void record(final String route, final long nanos)
+    {
+        LatencyHistogram histogram = histograms.get(route);
+        if (histogram == null)
+        {
+            final LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(route, newHistogram);
+            if (histogram == null)
+            {
+                histogram = newHistogram;
+            }
+        }
+        if (histogram.getCount() >= MAX_SAMPLES)
+        {
+            histogram.reset();
+        }
+        histogram.record(nanos);
+    }
+
+    void recordFired()
+    {
+        hedgesFired.incrementAndGet();
+    }
+
+    void recordWon()
+    {
+        hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Returns the percentile of response times after which a request is hedged, e.g. 95.
+     * 
+     * @return
+     */
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+    public void setPercentile(final double percentile)
+    {
+        this.percentile = percentile;
+    }
+
+    public long getHedgesFired()
+    {
+        return hedgesFired.get();
+    }
+
+    /**
+     * Returns how many hedges responded before the original request.
+     * 
+     * @return
+     */
+    public long getHedgesWon()
+    {
+        return hedgesWon.get();
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.pqian.http;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.http.HttpHost;
+
+/**
+ * Latencies and status class counts of requests executed by a {@link MonitoredHttpClient}, in total and per route.
+ */
+public class RequestMetrics
+{
+    // slots of status class counts, 1xx is never a final response
+    private static final int ERRORS = 0;
+    private static final int SLOTS = 6;
+
+    private final Recorder total = new Recorder();
+    private final ConcurrentMap<String, Recorder> routes = new ConcurrentHashMap<String, Recorder>();
+    private volatile long resetTime = System.nanoTime();
+
+    /**
+     * Records a request that received a response with the given status code.
+     * 
+     * @param target
+     * @param statusCode
+     * @param nanos
+     */
+    public void record(final HttpHost target, final int statusCode, final long nanos)
+    {
+        final int slot = statusCode / 100;
+        recordSlot(target, slot > ERRORS && slot < SLOTS ? slot : ERRORS, nanos);
+    }
+
+    /**
+     * Records a request that failed without a response.
+     * 
+     * @param target
+     * @param nanos
+     */
+    public void recordFailure(final HttpHost target, final long nanos)
+    {
+        recordSlot(target, ERRORS, nanos);
+    }
+
+    private void recordSlot(final HttpHost target, final int slot, final long nanos)
+    {
+        total.record(slot, nanos);
+        recorderOf(target).record(slot, nanos);
+    }
+
+    private Recorder recorderOf(final HttpHost target)
+    {
+        final String route = routeOf(target);
+        Recorder recorder = routes.get(route);
+        if (recorder == null)
+        {
+            final Recorder created = new Recorder();
+            recorder = routes.putIfAbsent(route, created);
+            if (recorder == null)
+            {
+                recorder = created;
+            }
+        }
+        return recorder;
+    }
+
+    static String routeOf(final HttpHost target)
+    {
+        return target == null ? "unknown" : target.toURI();
+    }
+
+    public LatencyHistogram getHistogram()
+    {
+        return total.histogram;
+    }
+
+    public long getRequestCount()
+    {
+        return total.histogram.getCount();
+    }
+
+    /**
+     * Returns requests per second since created or reset.
+     * 
+     * @return
+     */
+    public double getThroughput()
+    {
+        final double seconds = (System.nanoTime() - resetTime) / 1e9;
+        return seconds <= 0 ? 0 : getRequestCount() / seconds;
+    }
+
+    public LatencyStats getTotalStats()
+    {
+        return total.toStats();
+    }
+
+    public Map<String, LatencyStats> getRouteStats()
+    {
+        final Map<String, LatencyStats> stats = new TreeMap<String, LatencyStats>();
+        for (final Map.Entry<String, Recorder> entry : routes.entrySet())
+        {
+            stats.put(entry.getKey(), entry.getValue().toStats());
+        }
+        return stats;
+    }
+
+    public void reset()
+    {
+        routes.clear();
+        total.reset();
+        resetTime = System.nanoTime();
+    }
+
+    private static class Recorder
+    {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLongArray statusCounts = new AtomicLongArray(SLOTS);
+
+        void record(final int slot, final long nanos)
+        {
+            statusCounts.incrementAndGet(slot);
+            histogram.record(nanos);
+        }
+
+        void reset()
+        {
+            for (int i = 0; i < SLOTS; i++)
+            {
+                statusCounts.set(i, 0);
+            }
+            histogram.reset();
+        }
+
+        LatencyStats toStats()
+        {
+            return new LatencyStats(histogram.getCount(), statusCounts.get(2), statusCounts.get(3), statusCounts.get(4), statusCounts.get(5),
+                    statusCounts.get(ERRORS), histogram.getPercentile(50), histogram.getPercentile(99), histogram.getPercentile(99.9),
+                    histogram.getMax());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of executing a request that is refused up front, e.g. by an open circuit breaker or a full bulkhead of its route.
+ */
+public class RequestRejectedException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public RequestRejectedException(final String message)
+    {
+        super(message);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timings of a request sampled by {@link TraceSampler}, bound to the thread executing it so that the connection manager can add the time waited
+ * for a lease and spent opening a connection. Requests not sampled cost a single read of the count of those in flight.
+ */
+final class RequestTrace
+{
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<RequestTrace>();
+    // requests traced in flight, so that others skip the thread local
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    private final long start = System.nanoTime();
+    private long leaseWait;
+    private long connect;
+
+    /**
+     * Binds the trace to the current thread.
+     */
+    void begin()
+    {
+        ACTIVE.incrementAndGet();
+        CURRENT.set(this);
+    }
+
+    void end()
+    {
+        CURRENT.remove();
+        ACTIVE.decrementAndGet();
+    }
+
+    long getStart()
+    {
+        return start;
+    }
+
+    long getLeaseWait()
+    {
+        return leaseWait;
+    }
+
+    long getConnect()
+    {
+        return connect;
+    }
+
+    static void recordLeaseWait(final long nanos)
+    {
+        if (ACTIVE.get() > 0)
+        {
+            final RequestTrace trace = CURRENT.get();
+            if (trace != null)
+            {
+                trace.leaseWait += nanos;
+            }
+        }
+    }
+
+    static void recordConnect(final long nanos)
+    {
+        if (ACTIVE.get() > 0)
+        {
+            final RequestTrace trace = CURRENT.get();
+            if (trace != null)
+            {
+                trace.connect += nanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.RequestWrapper;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Retries idempotent requests failed with an I/O error, waiting an exponential backoff with full jitter in between. Retries are bounded by a budget
+ * as a ratio of the requests executed, so that retries cannot multiply the load of a backend already failing.
+ */
+public class RetryPolicy implements HttpRequestRetryHandler
+{
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+    // budget in thousandths of a retry, so that a ratio like 0.1 adds up exactly
+    private static final long TOKEN = 1000;
+    // the budget saved up while idle, i.e. retries possible after a quiet period
+    private static final long MAX_BALANCE = 10 * TOKEN;
+
+    private final AtomicLong balance = new AtomicLong(MAX_BALANCE);
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+    private volatile int maxRetries;
+    private volatile long backoff;
+    private volatile long maxBackoff;
+    private volatile double budget;
+
+    public RetryPolicy(final int maxRetries, final long backoff, final long maxBackoff, final double budget)
+    {
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.budget = budget;
+    }
+
+    /**
+     * Returns whether the request can be sent again without side effects.
+     * 
+     * @param request
+     * @return
+     */
+    static boolean isIdempotent(final HttpRequest request)
+    {
+        return IDEMPOTENT_METHODS.contains(request.getRequestLine().getMethod().toUpperCase());
+    }
+
+    @Override
+    public boolean retryRequest(final IOException exception, final int executionCount, final HttpContext context)
+    {
+        if (executionCount > maxRetries) { return false; }
+        // timed out, or not going to work any better next time
+        if (exception instanceof InterruptedIOException || exception instanceof UnknownHostException || exception instanceof SSLException) { return false; }
+        HttpRequest request = (HttpRequest) context.getAttribute(ExecutionContext.HTTP_REQUEST);
+        if (request instanceof RequestWrapper)
+        {
+            request = ((RequestWrapper) request).getOriginal();
+        }
+        if (request == null || !isIdempotent(request)) { return false; }
+        if (request instanceof HttpUriRequest && ((HttpUriRequest) request).isAborted()) { return false; }
+        if (!withdraw())
+        {
+            retriesDenied.incrementAndGet();
+            return false;
+        }
+        retries.incrementAndGet();
+        final long ceiling = Math.min(maxBackoff, backoff << Math.min(executionCount - 1, 20));
+        if (ceiling > 0)
+        {
+            try
+            {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a request executed to the budget.
+     */
+    void deposit()
+    {
+        final long amount = (long) (budget * TOKEN);
+        long current;
+        do
+        {
+            current = balance.get();
+            if (current >= MAX_BALANCE) { return; }
+        }
+        while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + amount)));
+    }
+
+    /**
+     * Takes an extra attempt out of the budget if it allows one.
+     * 
+     * @return
+     */
+    boolean withdraw()
+    {
+        long current;
+        do
+        {
+            current = balance.get();
+            if (current < TOKEN) { return false; }
+        }
+        while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * Returns how many times a request is retried at most.
+     * 
+     * @return
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(final int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Returns the backoff in milliseconds before the first retry, doubled for every further retry.
+     * 
+     * @return
+     */
+    public long getBackoff()
+    {
+        return backoff;
+    }
+
+    public void setBackoff(final long backoff)
+    {
+        this.backoff = backoff;
+    }
+
+    public long getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(final long maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the ratio of retries to requests allowed, e.g. 0.1 for a retry per ten requests.
+     * 
+     * @return
+     */
+    public double getBudget()
+    {
+        return budget;
+    }
+
+    public void setBudget(final double budget)
+    {
+        this.budget = budget;
+    }
+
+    public long getRetries()
+    {
+        return retries.get();
+    }
+
+    /**
+     * Returns how many retries were denied because the budget was used up.
+     * 
+     * @return
+     */
+    public long getRetriesDenied()
+    {
+        return retriesDenied.get();
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * Per-route semaphores bounding concurrent requests of a connection manager to its per-route maximums, resized as the maximums change.
+ */
+public class RoutePermits
+{
+    private final PoolingClientConnectionManager connMgr;
+    private final ConcurrentMap<HttpRoute, RoutePermit> permits = new ConcurrentHashMap<HttpRoute, RoutePermit>();
+    private final AtomicLong rejected = new AtomicLong();
+
+    RoutePermits(final PoolingClientConnectionManager connMgr)
+    {
+        this.connMgr = connMgr;
+    }
+
+    /**
+     * Waits for a permit of the route at most timeout milliseconds, not positive for indefinitely.
+     * 
+     * @param route
+     * @param timeout
+     * @return whether a permit is acquired
+     * @throws InterruptedException
+     */
+    boolean acquire(final HttpRoute route, final long timeout) throws InterruptedException
+    {
+        final RoutePermit permit = permitOf(route);
+        permit.resize(connMgr.getMaxPerRoute(route));
+        if (timeout <= 0)
+        {
+            permit.acquire();
+            return true;
+        }
+        if (permit.tryAcquire(timeout, TimeUnit.MILLISECONDS)) { return true; }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    void release(final HttpRoute route)
+    {
+        permitOf(route).release();
+    }
+
+    private RoutePermit permitOf(final HttpRoute route)
+    {
+        RoutePermit permit = permits.get(route);
+        if (permit == null)
+        {
+            final RoutePermit created = new RoutePermit(connMgr.getMaxPerRoute(route));
+            permit = permits.putIfAbsent(route, created);
+            if (permit == null)
+            {
+                permit = created;
+            }
+        }
+        return permit;
+    }
+
+    public int getPermitsInUse()
+    {
+        int inUse = 0;
+        for (final RoutePermit permit : permits.values())
+        {
+            inUse += permit.getInUse();
+        }
+        return inUse;
+    }
+
+    public int getQueuedWaiters()
+    {
+        int waiters = 0;
+        for (final RoutePermit permit : permits.values())
+        {
+            waiters += permit.getQueueLength();
+        }
+        return waiters;
+    }
+
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    private static class RoutePermit extends Semaphore
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int limit;
+
+        RoutePermit(final int limit)
+        {
+            super(limit, true);
+            this.limit = limit;
+        }
+
+        synchronized void resize(final int newLimit)
+        {
+            if (newLimit > limit)
+            {
+                release(newLimit - limit);
+            }
+            else if (newLimit < limit)
+            {
+                reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+
+        synchronized int getInUse()
+        {
+            return limit - availablePermits();
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.github.pqian.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies settings from a properties file to {@link HttpSettings} and to the settings MBeans of live managers and clients, once or whenever the
+ * file changes. Keys are formed of the MBean type, its name and the attribute, as shown by jconsole:
+ * 
+ * <pre>
+ * version=2024-05-01
+ * HttpSettings.DefaultSocketTimeout=20000
+ * ClientConnMgrSettings.*.MaxTotal=500
+ * HttpClientSettings.search.SocketTimeout=3000
+ * </pre>
+ * 
+ * where <code>*</code> stands for every MBean of the type, and the optional <code>version</code> is reported as the version applied, the time
+ * the file was modified otherwise. A reload is applied as a whole or not at all: every key is resolved and converted first, {@link HttpSettings}
+ * are changed as a single version, and everything set already is restored if setting another attribute fails. Named MBeans not registered are skipped, so that a file can be shared by nodes running
+ * different clients.
+ */
+public final class SettingsReloader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(SettingsReloader.class);
+
+    public static final String VERSION_KEY = "version";
+
+    private static final AtomicLong RELOADS = new AtomicLong();
+    private static final AtomicLong FAILED_RELOADS = new AtomicLong();
+    private static volatile String version;
+    private static volatile File watchedFile;
+    private static WatchService watchService;
+
+    private SettingsReloader()
+    {}
+
+    /**
+     * Applies settings from the given file once.
+     * 
+     * @param file
+     * @return the version applied
+     */
+    public static synchronized String load(final File file)
+    {
+        final Properties properties = new Properties();
+        try
+        {
+            final InputStream in = new FileInputStream(file);
+            try
+            {
+                properties.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+            apply(properties);
+        }
+        catch (final IOException e)
+        {
+            FAILED_RELOADS.incrementAndGet();
+            throw new RuntimeException("Loading settings failed, " + file, e);
+        }
+        catch (final RuntimeException e)
+        {
+            FAILED_RELOADS.incrementAndGet();
+            throw e;
+        }
+        version = properties.getProperty(VERSION_KEY, new SimpleDateFormat("yyyyMMdd_HHmmss_SSS").format(new Date(file.lastModified())));
+        RELOADS.incrementAndGet();
+        LOG.info("Settings version {} applied from {}", version, file);
+        return version;
+    }
+
+    /**
+     * Applies settings from the given file, then again whenever it is changed, instead of a file watched before.
+     * 
+     * @param file
+     */
+    public static synchronized void watch(final File file)
+    {
+        final File absoluteFile = file.getAbsoluteFile();
+        final WatchService newWatchService;
+        try
+        {
+            newWatchService = FileSystems.getDefault().newWatchService();
+            absoluteFile.getParentFile().toPath().register(newWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (final IOException e)
+        {
+            throw new RuntimeException("Watching settings failed, " + absoluteFile, e);
+        }
+        unwatch();
+        watchService = newWatchService;
+        watchedFile = absoluteFile;
+        final Thread thread = new Thread("HttpSettingsReloader")
+        {
+            @Override
+            public void run()
+            {
+                watchLoop(newWatchService, absoluteFile);
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        if (absoluteFile.exists())
+        {
+            load(absoluteFile);
+        }
+    }
+
+    /**
+     * Stops watching the file watched, if any.
+     */
+    public static synchronized void unwatch()
+    {
+        if (watchService != null)
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch (final IOException e)
+            {
+                LOG.warn("Closing settings watch failed, " + watchedFile, e);
+            }
+            watchService = null;
+            watchedFile = null;
+        }
+    }
+
+    /**
+     * Returns the file watched, or null.
+     * 
+     * @return
+     */
+    static File getWatchedFile()
+    {
+        return watchedFile;
+    }
+
+    static long getReloadCount()
+    {
+        return RELOADS.get();
+    }
+
+    static long getFailedReloadCount()
+    {
+        return FAILED_RELOADS.get();
+    }
+
+    static String getVersion()
+    {
+        return version;
+    }
+
+    private static void watchLoop(final WatchService service, final File file)
+    {
+        final Path fileName = file.toPath().getFileName();
+        while (true)
+        {
+            try
+            {
+                final WatchKey key = service.take();
+                boolean changed = false;
+                for (final WatchEvent<?> event : key.pollEvents())
+                {
+                    changed |= fileName.equals(event.context());
+                }
+                key.reset();
+                if (changed)
+                {
+                    // editors write in steps, let them finish and reload once for all
+                    Thread.sleep(50);
+                    WatchKey pending;
+                    while ((pending = service.poll()) != null)
+                    {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload(file);
+                }
+            }
+            catch (final ClosedWatchServiceException e)
+            {
+                return;
+            }
+            catch (final InterruptedException e)
+            {
+                LOG.warn("Settings reloader interrupted, {} is not watched any more", file);
+                return;
+            }
+        }
+    }
+
+    private static synchronized void reload(final File file)
+    {
+        // unwatched or replaced meanwhile
+        if (!file.equals(watchedFile) || !file.exists()) { return; }
+        try
+        {
+            load(file);
+        }
+        catch (final RuntimeException e)
+        {
+            LOG.warn("Reloading settings failed, keeping version " + version, e);
+        }
+    }
+
+    private static void apply(final Properties properties)
+    {
+        final Map<String, String> settings = new TreeMap<String, String>();
+        final List<Change> changes = new ArrayList<Change>();
+        for (final Map.Entry<String, String> entry : toMap(properties).entrySet())
+        {
+            if (!VERSION_KEY.equals(entry.getKey()))
+            {
+                resolve(entry.getKey(), entry.getValue().trim(), settings, changes);
+            }
+        }
+
+        // all resolved, global settings are applied as a single version
+        final long rollbackVersion = HttpSettings.snapshot().getVersion();
+        if (!settings.isEmpty())
+        {
+            HttpSettings.apply(settings);
+        }
+        final List<Change> applied = new ArrayList<Change>();
+        try
+        {
+            for (final Change change : changes)
+            {
+                change.apply();
+                applied.add(change);
+            }
+        }
+        catch (final RuntimeException e)
+        {
+            for (int i = applied.size() - 1; i >= 0; i--)
+            {
+                try
+                {
+                    applied.get(i).restore();
+                }
+                catch (final RuntimeException restoreFailure)
+                {
+                    LOG.warn("Restoring " + applied.get(i) + " failed", restoreFailure);
+                }
+            }
+            if (!settings.isEmpty())
+            {
+                HttpSettings.rollback(rollbackVersion);
+            }
+            throw e;
+        }
+    }
+
+    private static Map<String, String> toMap(final Properties properties)
+    {
+        final Map<String, String> map = new TreeMap<String, String>();
+        for (final String key : properties.stringPropertyNames())
+        {
+            map.put(key.trim(), properties.getProperty(key));
+        }
+        return map;
+    }
+
+    private static void resolve(final String key, final String value, final Map<String, String> settings, final List<Change> changes)
+    {
+        final int typeEnd = key.indexOf('.');
+        final int nameEnd = key.lastIndexOf('.');
+        if (typeEnd <= 0 || nameEnd == key.length() - 1) { throw new IllegalArgumentException("Settings key must be in form of type[.name].attribute, " + key); }
+        final String type = key.substring(0, typeEnd);
+        final String attribute = key.substring(nameEnd + 1);
+        if ("HttpSettings".equals(type))
+        {
+            if (typeEnd != nameEnd) { throw new IllegalArgumentException("HttpSettings key must be in form of HttpSettings.attribute, " + key); }
+            // converted here, so that an invalid value fails before any MBean is changed
+            convert(value, HttpSettingsSnapshot.typeOf(attribute).getName());
+            settings.put(attribute, value);
+            return;
+        }
+        if (typeEnd == nameEnd) { throw new IllegalArgumentException("Settings key must be in form of type.name.attribute, " + key); }
+        final String name = key.substring(typeEnd + 1, nameEnd);
+        final MBeanServer mbeanServer = MBeanRegistrar.getMBeanServer();
+        try
+        {
+            final ObjectName pattern = new ObjectName("pqian.http:type=" + type + ("*".equals(name) ? ",*" : ",name=" + name));
+            final List<ObjectName> objectNames = new ArrayList<ObjectName>(mbeanServer.queryNames(pattern, null));
+            if (objectNames.isEmpty())
+            {
+                LOG.info("No MBean matches settings key {}, skipped", key);
+            }
+            for (final ObjectName objectName : objectNames)
+            {
+                changes.add(new Change(mbeanServer, objectName, attribute, value));
+            }
+        }
+        catch (final MalformedObjectNameException e)
+        {
+            throw new IllegalArgumentException("Settings key names no MBean, " + key, e);
+        }
+    }
+
+    /**
+     * Converts the text of a value to the given type of attribute, by its name as in {@link MBeanAttributeInfo#getType()}.
+     * 
+     * @param value
+     * @param type
+     * @return
+     */
+    static Object convert(final String value, final String type)
+    {
+        try
+        {
+            if ("int".equals(type) || Integer.class.getName().equals(type)) { return Integer.valueOf(value); }
+            if ("long".equals(type) || Long.class.getName().equals(type)) { return Long.valueOf(value); }
+            if ("double".equals(type) || Double.class.getName().equals(type)) { return Double.valueOf(value); }
+            if ("boolean".equals(type) || Boolean.class.getName().equals(type))
+            {
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) { throw new NumberFormatException(value); }
+                return Boolean.valueOf(value);
+            }
+            if (String.class.getName().equals(type)) { return value; }
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new IllegalArgumentException("Invalid " + type + " value " + value, e);
+        }
+        throw new IllegalArgumentException("Attributes of type " + type + " cannot be set from text");
+    }
+
+    /**
+     * An attribute of a registered settings MBean to be changed.
+     */
+    private static class Change
+    {
+        private final MBeanServer mbeanServer;
+        private final ObjectName objectName;
+        private final String attribute;
+        private final Object oldValue;
+        private final Object newValue;
+
+        Change(final MBeanServer mbeanServer, final ObjectName objectName, final String attribute, final String value)
+        {
+            this.mbeanServer = mbeanServer;
+            this.objectName = objectName;
+            this.attribute = attribute;
+            try
+            {
+                MBeanAttributeInfo info = null;
+                for (final MBeanAttributeInfo candidate : mbeanServer.getMBeanInfo(objectName).getAttributes())
+                {
+                    if (candidate.getName().equals(attribute))
+                    {
+                        info = candidate;
+                    }
+                }
+                if (info == null || !info.isWritable()) { throw new IllegalArgumentException("No writable attribute " + attribute + " of " + objectName); }
+                newValue = convert(value, info.getType());
+                oldValue = mbeanServer.getAttribute(objectName, attribute);
+            }
+            catch (final IllegalArgumentException e)
+            {
+                throw e;
+            }
+            catch (final Exception e)
+            {
+                throw new RuntimeException("Resolving " + attribute + " of " + objectName + " failed", e);
+            }
+        }
+
+        void apply()
+        {
+            if (newValue.equals(oldValue)) { return; }
+            set(newValue);
+        }
+
+        void restore()
+        {
+            if (newValue.equals(oldValue)) { return; }
+            set(oldValue);
+        }
+
+        private void set(final Object value)
+        {
+            try
+            {
+                mbeanServer.setAttribute(objectName, new Attribute(attribute, value));
+            }
+            catch (final Exception e)
+            {
+                throw new RuntimeException("Setting " + this + " failed", e);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return attribute + " of " + objectName + " from " + oldValue + " to " + newValue;
+        }
+    }
+}
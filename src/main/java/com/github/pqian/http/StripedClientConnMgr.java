@@ -0,0 +1,388 @@
+package com.github.pqian.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A {@link MonitoredClientConnMgr} spreading leases over several pools, each behind a lock of its own, picked by the leasing thread or by the route.
+ * Statistics are summed up. By thread, limits are divided across the stripes, and every stripe keeps at least one connection per route, so the
+ * per-route maximum of a route may be exceeded by up to the number of stripes. By route, a route is served by a single stripe, so every stripe may
+ * take the whole total and the total is bounded by permits for leases across the stripes instead.
+ */
+public class StripedClientConnMgr extends MonitoredClientConnMgr
+{
+    public enum StripeBy
+    {
+        THREAD, ROUTE
+    }
+
+    private final PoolingClientConnectionManager[] stripes;
+    private final StripeBy stripeBy;
+    // the limits as set, the stripes hold their shares
+    private final ConcurrentMap<HttpRoute, Integer> maxPerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+    private volatile int maxTotal;
+    private volatile int defaultMaxPerRoute;
+    // by route, leases across all stripes
+    private final TotalPermit totalPermit = new TotalPermit();
+
+    public StripedClientConnMgr(final int stripeCount, final StripeBy stripeBy)
+    {
+        this(stripeCount, stripeBy, new SystemDefaultDnsResolver());
+    }
+
+    /**
+     * Creates a manager whose stripes share the given resolver.
+     * 
+     * @param stripeCount
+     * @param stripeBy
+     * @param dnsResolver
+     */
+    public StripedClientConnMgr(final int stripeCount, final StripeBy stripeBy, final DnsResolver dnsResolver)
+    {
+        super(dnsResolver);
+        if (stripeCount < 1) { throw new IllegalArgumentException("Stripe count must be positive, " + stripeCount); }
+        this.stripeBy = stripeBy;
+        stripes = new PoolingClientConnectionManager[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            stripes[i] = new PoolingClientConnectionManager(getSchemeRegistry(), dnsResolver)
+            {
+                @Override
+                protected ClientConnectionOperator createConnectionOperator(final SchemeRegistry schreg)
+                {
+                    return new MonitoredConnectionOperator(super.createConnectionOperator(schreg), StripedClientConnMgr.this);
+                }
+            };
+        }
+        setMaxTotal(super.getMaxTotal());
+        setDefaultMaxPerRoute(super.getDefaultMaxPerRoute());
+    }
+
+    private PoolingClientConnectionManager stripeOf(final HttpRoute route)
+    {
+        final long hash = stripeBy == StripeBy.THREAD ? Thread.currentThread().getId() : route.hashCode() & Integer.MAX_VALUE;
+        return stripes[(int) (hash % stripes.length)];
+    }
+
+    /**
+     * Returns the share of the stripe with the given index in a limit, at least one.
+     */
+    private int shareOf(final int limit, final int index)
+    {
+        return Math.max(1, limit / stripes.length + (index < limit % stripes.length ? 1 : 0));
+    }
+
+    @Override
+    ClientConnectionRequest requestPooledConnection(final HttpRoute route, final Object state)
+    {
+        final PoolingClientConnectionManager stripe = stripeOf(route);
+        final ClientConnectionRequest request = stripe.requestConnection(route, state);
+        if (stripeBy == StripeBy.THREAD)
+        {
+            return new ClientConnectionRequest()
+            {
+                @Override
+                public ManagedClientConnection getConnection(final long timeout, final TimeUnit tunit) throws InterruptedException,
+                        ConnectionPoolTimeoutException
+                {
+                    return new StripedConnection(request.getConnection(timeout, tunit), stripe, null);
+                }
+
+                @Override
+                public void abortRequest()
+                {
+                    request.abortRequest();
+                }
+            };
+        }
+        return new ClientConnectionRequest()
+        {
+            // the thread waiting for a permit, woken if aborted
+            private Thread waiter;
+            private boolean aborted;
+
+            @Override
+            public ManagedClientConnection getConnection(final long timeout, final TimeUnit tunit) throws InterruptedException,
+                    ConnectionPoolTimeoutException
+            {
+                final long start = System.nanoTime();
+                synchronized (this)
+                {
+                    if (aborted) { throw new InterruptedException("Operation aborted"); }
+                    waiter = Thread.currentThread();
+                }
+                try
+                {
+                    if (timeout <= 0)
+                    {
+                        totalPermit.acquire();
+                    }
+                    else if (!totalPermit.tryAcquire(timeout, tunit))
+                    {
+                        throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+                    }
+                }
+                catch (final InterruptedException e)
+                {
+                    synchronized (this)
+                    {
+                        if (aborted) { throw new InterruptedException("Operation aborted"); }
+                    }
+                    throw e;
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        waiter = null;
+                    }
+                }
+                synchronized (this)
+                {
+                    if (aborted)
+                    {
+                        // aborted while taking the permit, the interrupt was meant for the wait
+                        Thread.interrupted();
+                        totalPermit.release();
+                        throw new InterruptedException("Operation aborted");
+                    }
+                }
+                try
+                {
+                    // the rest of the timeout, at least a millisecond
+                    final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    final long remaining = timeout <= 0 ? 0 : Math.max(1, tunit.toMillis(timeout) - waited);
+                    return new StripedConnection(request.getConnection(remaining, TimeUnit.MILLISECONDS), stripe, totalPermit);
+                }
+                catch (final InterruptedException e)
+                {
+                    totalPermit.release();
+                    throw e;
+                }
+                catch (final ConnectionPoolTimeoutException e)
+                {
+                    totalPermit.release();
+                    throw e;
+                }
+                catch (final RuntimeException e)
+                {
+                    totalPermit.release();
+                    throw e;
+                }
+            }
+
+            @Override
+            public void abortRequest()
+            {
+                synchronized (this)
+                {
+                    aborted = true;
+                    if (waiter != null)
+                    {
+                        waiter.interrupt();
+                    }
+                }
+                request.abortRequest();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(final ManagedClientConnection conn, final long keepalive, final TimeUnit tunit)
+    {
+        if (conn instanceof StripedConnection)
+        {
+            final StripedConnection stripedConn = (StripedConnection) conn;
+            stripedConn.getStripe().releaseConnection(stripedConn.getConnection(), keepalive, tunit);
+            stripedConn.releasePermit();
+        }
+        else
+        {
+            super.releaseConnection(conn, keepalive, tunit);
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            stripe.shutdown();
+        }
+        super.shutdown();
+    }
+
+    @Override
+    public void closeIdleConnections(final long idleTimeout, final TimeUnit tunit)
+    {
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            stripe.closeIdleConnections(idleTimeout, tunit);
+        }
+    }
+
+    @Override
+    public void closeExpiredConnections()
+    {
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            stripe.closeExpiredConnections();
+        }
+    }
+
+    @Override
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    @Override
+    public void setMaxTotal(final int max)
+    {
+        maxTotal = max;
+        totalPermit.resize(max);
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i].setMaxTotal(stripeBy == StripeBy.ROUTE ? max : shareOf(max, i));
+        }
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute()
+    {
+        return defaultMaxPerRoute;
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute(final int max)
+    {
+        defaultMaxPerRoute = max;
+        for (int i = 0; i < stripes.length; i++)
+        {
+            // by route, a route is served by a single stripe
+            stripes[i].setDefaultMaxPerRoute(stripeBy == StripeBy.ROUTE ? max : shareOf(max, i));
+        }
+    }
+
+    @Override
+    public int getMaxPerRoute(final HttpRoute route)
+    {
+        final Integer max = maxPerRoute.get(route);
+        return max == null ? defaultMaxPerRoute : max;
+    }
+
+    @Override
+    public void setMaxPerRoute(final HttpRoute route, final int max)
+    {
+        maxPerRoute.put(route, max);
+        if (stripeBy == StripeBy.ROUTE)
+        {
+            stripeOf(route).setMaxPerRoute(route, max);
+            return;
+        }
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i].setMaxPerRoute(route, shareOf(max, i));
+        }
+    }
+
+    @Override
+    public PoolStats getTotalStats()
+    {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            final PoolStats stats = stripe.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+        }
+        return new PoolStats(leased, pending, available, maxTotal);
+    }
+
+    @Override
+    public PoolStats getStats(final HttpRoute route)
+    {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            final PoolStats stats = stripe.getStats(route);
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+        }
+        return new PoolStats(leased, pending, available, getMaxPerRoute(route));
+    }
+
+    public int getStripeCount()
+    {
+        return stripes.length;
+    }
+
+    public StripeBy getStripeBy()
+    {
+        return stripeBy;
+    }
+
+    /**
+     * Returns total statistics of every stripe.
+     * 
+     * @return
+     */
+    public List<ConnPoolStats> getStripeStats()
+    {
+        final List<ConnPoolStats> stats = new ArrayList<ConnPoolStats>(stripes.length);
+        for (final PoolingClientConnectionManager stripe : stripes)
+        {
+            stats.add(ConnPoolStats.of(stripe.getTotalStats()));
+        }
+        return stats;
+    }
+
+    /**
+     * A semaphore bounding leases to the total, resized as the total changes.
+     */
+    private static class TotalPermit extends Semaphore
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int limit;
+
+        TotalPermit()
+        {
+            super(0, true);
+        }
+
+        synchronized void resize(final int newLimit)
+        {
+            if (newLimit > limit)
+            {
+                release(newLimit - limit);
+            }
+            else if (newLimit < limit)
+            {
+                reducePermits(limit - newLimit);
+            }
+            limit = newLimit;
+        }
+    }
+}
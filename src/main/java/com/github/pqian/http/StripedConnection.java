@@ -0,0 +1,271 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * A connection leased from a stripe of a {@link StripedClientConnMgr}, remembering the stripe it is to be released to.
+ */
+class StripedConnection implements ManagedClientConnection
+{
+    private final ManagedClientConnection conn;
+    private final PoolingClientConnectionManager stripe;
+    // released once along with the connection, if leased by route
+    private final AtomicReference<Semaphore> totalPermit;
+
+    StripedConnection(final ManagedClientConnection conn, final PoolingClientConnectionManager stripe, final Semaphore totalPermit)
+    {
+        this.conn = conn;
+        this.stripe = stripe;
+        this.totalPermit = new AtomicReference<Semaphore>(totalPermit);
+    }
+
+    void releasePermit()
+    {
+        final Semaphore permit = totalPermit.getAndSet(null);
+        if (permit != null)
+        {
+            permit.release();
+        }
+    }
+
+    ManagedClientConnection getConnection()
+    {
+        return conn;
+    }
+
+    PoolingClientConnectionManager getStripe()
+    {
+        return stripe;
+    }
+
+    @Override
+    public boolean isResponseAvailable(final int timeout) throws IOException
+    {
+        return conn.isResponseAvailable(timeout);
+    }
+
+    @Override
+    public void sendRequestHeader(final HttpRequest request) throws HttpException, IOException
+    {
+        conn.sendRequestHeader(request);
+    }
+
+    @Override
+    public void sendRequestEntity(final HttpEntityEnclosingRequest request) throws HttpException, IOException
+    {
+        conn.sendRequestEntity(request);
+    }
+
+    @Override
+    public HttpResponse receiveResponseHeader() throws HttpException, IOException
+    {
+        return conn.receiveResponseHeader();
+    }
+
+    @Override
+    public void receiveResponseEntity(final HttpResponse response) throws HttpException, IOException
+    {
+        conn.receiveResponseEntity(response);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        conn.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        conn.close();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return conn.isOpen();
+    }
+
+    @Override
+    public boolean isStale()
+    {
+        return conn.isStale();
+    }
+
+    @Override
+    public void setSocketTimeout(final int timeout)
+    {
+        conn.setSocketTimeout(timeout);
+    }
+
+    @Override
+    public int getSocketTimeout()
+    {
+        return conn.getSocketTimeout();
+    }
+
+    @Override
+    public void shutdown() throws IOException
+    {
+        conn.shutdown();
+    }
+
+    @Override
+    public HttpConnectionMetrics getMetrics()
+    {
+        return conn.getMetrics();
+    }
+
+    @Override
+    public InetAddress getLocalAddress()
+    {
+        return conn.getLocalAddress();
+    }
+
+    @Override
+    public int getLocalPort()
+    {
+        return conn.getLocalPort();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress()
+    {
+        return conn.getRemoteAddress();
+    }
+
+    @Override
+    public int getRemotePort()
+    {
+        return conn.getRemotePort();
+    }
+
+    @Override
+    public void releaseConnection() throws IOException
+    {
+        // goes to the stripe directly, not through the striped manager
+        try
+        {
+            conn.releaseConnection();
+        }
+        finally
+        {
+            releasePermit();
+        }
+    }
+
+    @Override
+    public void abortConnection() throws IOException
+    {
+        try
+        {
+            conn.abortConnection();
+        }
+        finally
+        {
+            releasePermit();
+        }
+    }
+
+    @Override
+    public boolean isSecure()
+    {
+        return conn.isSecure();
+    }
+
+    @Override
+    public HttpRoute getRoute()
+    {
+        return conn.getRoute();
+    }
+
+    @Override
+    public SSLSession getSSLSession()
+    {
+        return conn.getSSLSession();
+    }
+
+    @Override
+    public void open(final HttpRoute route, final HttpContext context, final HttpParams params) throws IOException
+    {
+        conn.open(route, context, params);
+    }
+
+    @Override
+    public void tunnelTarget(final boolean secure, final HttpParams params) throws IOException
+    {
+        conn.tunnelTarget(secure, params);
+    }
+
+    @Override
+    public void tunnelProxy(final HttpHost next, final boolean secure, final HttpParams params) throws IOException
+    {
+        conn.tunnelProxy(next, secure, params);
+    }
+
+    @Override
+    public void layerProtocol(final HttpContext context, final HttpParams params) throws IOException
+    {
+        conn.layerProtocol(context, params);
+    }
+
+    @Override
+    public void markReusable()
+    {
+        conn.markReusable();
+    }
+
+    @Override
+    public void unmarkReusable()
+    {
+        conn.unmarkReusable();
+    }
+
+    @Override
+    public boolean isMarkedReusable()
+    {
+        return conn.isMarkedReusable();
+    }
+
+    @Override
+    public void setState(final Object state)
+    {
+        conn.setState(state);
+    }
+
+    @Override
+    public Object getState()
+    {
+        return conn.getState();
+    }
+
+    @Override
+    public void setIdleDuration(final long duration, final TimeUnit unit)
+    {
+        conn.setIdleDuration(duration, unit);
+    }
+
+    @Override
+    public String toString()
+    {
+        return conn.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.pqian.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Lets a retry of the underlying handler through only if the circuit breaker of the route is not open and the {@link RateLimiter} grants it a
+ * permit of its own, since retries run within the permits taken by the request for its first attempt.
+ */
+class ThrottledRetryHandler implements HttpRequestRetryHandler
+{
+    private final HttpRequestRetryHandler retryHandler;
+    private final RateLimiter limiter;
+    private final CircuitBreakers breakers;
+
+    /**
+     * @param retryHandler
+     * @param limiter
+     *            null if not rate limited
+     * @param breakers
+     *            null if not protected
+     */
+    ThrottledRetryHandler(final HttpRequestRetryHandler retryHandler, final RateLimiter limiter, final CircuitBreakers breakers)
+    {
+        this.retryHandler = retryHandler;
+        this.limiter = limiter;
+        this.breakers = breakers;
+    }
+
+    @Override
+    public boolean retryRequest(final IOException exception, final int executionCount, final HttpContext context)
+    {
+        if (!retryHandler.retryRequest(exception, executionCount, context)) { return false; }
+        final HttpHost target = (HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST);
+        if (breakers != null && breakers.get(target).getState() == CircuitBreaker.State.OPEN) { return false; }
+        if (limiter != null)
+        {
+            try
+            {
+                limiter.acquire(target);
+            }
+            catch (final RequestRejectedException e)
+            {
+                return false;
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
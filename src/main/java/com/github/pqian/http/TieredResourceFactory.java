@@ -0,0 +1,118 @@
+package com.github.pqian.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.impl.client.cache.FileResource;
+import org.apache.http.impl.client.cache.HeapResource;
+
+/**
+ * Keeps cached response bodies on heap, or in files of a directory once bigger than a threshold, so that large bodies don't take up the heap.
+ */
+class TieredResourceFactory implements ResourceFactory
+{
+    private static final int BUFFER_SIZE = 4096;
+
+    private final File directory;
+    private final long fileThreshold;
+
+    /**
+     * @param directory
+     *            of files keeping large bodies, null for heap only
+     * @param fileThreshold
+     *            size in bytes from which a body is kept in a file
+     */
+    TieredResourceFactory(final File directory, final long fileThreshold)
+    {
+        this.directory = directory;
+        this.fileThreshold = fileThreshold;
+    }
+
+    @Override
+    public Resource generate(final String requestId, final InputStream instream, final InputLimit limit) throws IOException
+    {
+        final long maxLength = limit == null ? Long.MAX_VALUE : limit.getValue();
+        final ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int n;
+        while ((n = instream.read(buffer)) != -1)
+        {
+            total += n;
+            if (total > maxLength)
+            {
+                // the caller gives up caching and reads the rest of the response itself
+                heap.write(buffer, 0, n);
+                limit.reached();
+                return new HeapResource(heap.toByteArray());
+            }
+            if (directory != null && total > fileThreshold)
+            {
+                return spill(heap, buffer, n, instream, total, limit, maxLength);
+            }
+            heap.write(buffer, 0, n);
+        }
+        return new HeapResource(heap.toByteArray());
+    }
+
+    private Resource spill(final ByteArrayOutputStream heap, final byte[] buffer, final int pending, final InputStream instream, final long read,
+            final InputLimit limit, final long maxLength) throws IOException
+    {
+        final File file = File.createTempFile("httpcache", ".body", directory);
+        final OutputStream out = new FileOutputStream(file);
+        try
+        {
+            heap.writeTo(out);
+            out.write(buffer, 0, pending);
+            long total = read;
+            int n;
+            while ((n = instream.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, n);
+                total += n;
+                if (total > maxLength)
+                {
+                    limit.reached();
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return new FileResource(file);
+    }
+
+    @Override
+    public Resource copy(final String requestId, final Resource resource) throws IOException
+    {
+        final InputStream instream = resource.getInputStream();
+        try
+        {
+            return generate(requestId, instream, null);
+        }
+        finally
+        {
+            instream.close();
+        }
+    }
+
+    /**
+     * Returns whether the resource is kept in a file.
+     * 
+     * @param resource
+     * @return
+     */
+    static boolean isFile(final Resource resource)
+    {
+        return resource instanceof FileResource;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.pqian.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket of a single route, as a generic cell rate algorithm: the only state is the theoretical time the next permit is free,
+ * advanced by compare-and-set. Permits can be reserved ahead up to a maximal wait, which the caller then sleeps.
+ */
+public class TokenBucket
+{
+    // bounds the interval and tolerance, so that tiny rates or huge bursts do not overflow
+    private static final long MAX_NANOS = TimeUnit.DAYS.toNanos(365);
+
+    // starts full, i.e. as if the last permit was taken long ago
+    private final AtomicLong nextFree = new AtomicLong(System.nanoTime() - TimeUnit.DAYS.toNanos(1));
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private volatile double rate;
+    private volatile int burst;
+
+    TokenBucket(final double rate, final int burst)
+    {
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    /**
+     * Reserves a permit if available within the maximal wait.
+     * 
+     * @param maxWaitNanos
+     * @return nanoseconds to wait before using the permit, negative if not available in time
+     */
+    long reserve(final long maxWaitNanos)
+    {
+        final double currentRate = rate;
+        if (currentRate <= 0)
+        {
+            granted.incrementAndGet();
+            return 0;
+        }
+        final long interval = interval(currentRate);
+        final long tolerance = tolerance(interval, burst);
+        while (true)
+        {
+            final long now = System.nanoTime();
+            final long next = nextFree.get();
+            final long start = Math.max(next, now);
+            final long wait = start - tolerance - now;
+            if (wait > maxWaitNanos)
+            {
+                throttled.incrementAndGet();
+                return -1;
+            }
+            if (nextFree.compareAndSet(next, start + interval))
+            {
+                granted.incrementAndGet();
+                if (wait > 0)
+                {
+                    waitNanos.addAndGet(wait);
+                }
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    private static long interval(final double rate)
+    {
+        return (long) Math.min(TimeUnit.SECONDS.toNanos(1) / rate, MAX_NANOS);
+    }
+
+    // a full bucket lets a burst through at once
+    private static long tolerance(final long interval, final int burst)
+    {
+        return (long) Math.min((double) interval * Math.max(0, burst - 1), MAX_NANOS);
+    }
+
+    /**
+     * Rebases the time the next permit is free on a new rate or burst: at most a full burst is owed, so that raising the rate takes effect at once
+     * rather than after the permits taken ahead at the old one.
+     */
+    private void rebase()
+    {
+        final double currentRate = rate;
+        if (currentRate <= 0) { return; }
+        final long tolerance = tolerance(interval(currentRate), burst);
+        while (true)
+        {
+            final long now = System.nanoTime();
+            final long next = nextFree.get();
+            if (next - now <= tolerance || nextFree.compareAndSet(next, now + tolerance)) { return; }
+        }
+    }
+
+    /**
+     * Returns the permits per second, not positive for unlimited.
+     * 
+     * @return
+     */
+    public double getRate()
+    {
+        return rate;
+    }
+
+    synchronized void setRate(final double rate)
+    {
+        this.rate = rate;
+        rebase();
+    }
+
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    synchronized void setBurst(final int burst)
+    {
+        this.burst = burst;
+        rebase();
+    }
+
+    public RateLimitStats getStats()
+    {
+        return new RateLimitStats(rate, granted.get(), throttled.get(), TimeUnit.NANOSECONDS.toMillis(waitNanos.get()));
+    }
+}
@@ -0,0 +1,293 @@
+package com.github.pqian.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+
+/**
+ * Samples a share of requests, keeping the timings of the latest in a ring of slots allocated up front. Writers claim a slot by a sequence and a
+ * compare-and-set, never waiting: a sample is dropped if its slot is still being written, and a reader skips a slot changed while it is read.
+ * Requests are not traced at all while the rate is 0.
+ */
+final class TraceSampler
+{
+    private static final long EMPTY = -2;
+    private static final long WRITING = -1;
+    private static final AtomicLongFieldUpdater<Slot> SLOT_SEQUENCE = AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+    private static final String[] ITEMS = { "sequence", "timestamp", "target", "method", "uri", "status", "leaseWait", "connect", "timeToFirstByte",
+            "bodyRead", "total" };
+    private static final CompositeType SAMPLE_TYPE;
+    private static final TabularType SAMPLES_TYPE;
+
+    static
+    {
+        try
+        {
+            SAMPLE_TYPE = new CompositeType("TraceSample", "Timings of a request sampled, in milliseconds", ITEMS, new String[] { "Sequence of the sample",
+                    "Time recorded in milliseconds since the epoch", "Target host", "Request method", "Request URI", "Response status, -1 if none",
+                    "Time waited for a connection lease", "Time opening a connection, including the TLS handshake",
+                    "Time from sending the request to the response head", "Time reading the body", "Total time" }, new OpenType<?>[] { SimpleType.LONG,
+                    SimpleType.LONG, SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.DOUBLE, SimpleType.DOUBLE,
+                    SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE });
+            SAMPLES_TYPE = new TabularType("TraceSamples", "Requests sampled", SAMPLE_TYPE, new String[] { "sequence" });
+        }
+        catch (final OpenDataException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile double rate;
+
+    /**
+     * @param capacity
+     *            samples kept, rounded up to a power of two
+     * @param rate
+     *            share of requests sampled, from 0 to 1
+     */
+    TraceSampler(final int capacity, final double rate)
+    {
+        if (capacity < 1) { throw new IllegalArgumentException("Trace buffer size must be positive, " + capacity); }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++)
+        {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+        setRate(rate);
+    }
+
+    double getRate()
+    {
+        return rate;
+    }
+
+    void setRate(final double rate)
+    {
+        if (rate < 0 || rate > 1) { throw new IllegalArgumentException("Sample rate must be from 0 to 1, " + rate); }
+        this.rate = rate;
+    }
+
+    int getCapacity()
+    {
+        return slots.length;
+    }
+
+    /**
+     * Returns how many requests were sampled so far.
+     * 
+     * @return
+     */
+    long getSampled()
+    {
+        return sequence.get();
+    }
+
+    long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Decides whether to trace the next request.
+     * 
+     * @return
+     */
+    boolean shouldSample()
+    {
+        final double r = rate;
+        return r > 0 && (r >= 1 || ThreadLocalRandom.current().nextDouble() < r);
+    }
+
+    void record(final HttpHost target, final HttpRequest request, final int status, final RequestTrace trace, final long headTime, final long endTime)
+    {
+        final long seq = sequence.getAndIncrement();
+        final Slot slot = slots[(int) seq & mask];
+        final long previous = slot.sequence;
+        // lapped by a writer still busy with the slot
+        if (previous == WRITING || !SLOT_SEQUENCE.compareAndSet(slot, previous, WRITING))
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+        slot.timestamp = System.currentTimeMillis();
+        slot.target = target;
+        slot.method = request.getRequestLine().getMethod();
+        slot.uri = request.getRequestLine().getUri();
+        slot.status = status;
+        slot.leaseWait = trace.getLeaseWait();
+        slot.connect = trace.getConnect();
+        slot.timeToFirstByte = Math.max(0, headTime - trace.getStart() - trace.getLeaseWait() - trace.getConnect());
+        slot.bodyRead = endTime - headTime;
+        slot.total = endTime - trace.getStart();
+        slot.sequence = seq;
+    }
+
+    /**
+     * Returns the latest samples, the latest first.
+     * 
+     * @param count
+     * @return
+     */
+    TabularData latest(final int count)
+    {
+        final List<Sample> samples = snapshot();
+        Collections.sort(samples, new Comparator<Sample>()
+        {
+            @Override
+            public int compare(final Sample s1, final Sample s2)
+            {
+                return s1.sequence > s2.sequence ? -1 : s1.sequence < s2.sequence ? 1 : 0;
+            }
+        });
+        return toTabularData(samples, count);
+    }
+
+    /**
+     * Returns the slowest samples kept, the slowest first.
+     * 
+     * @param count
+     * @return
+     */
+    TabularData slowest(final int count)
+    {
+        final List<Sample> samples = snapshot();
+        Collections.sort(samples, new Comparator<Sample>()
+        {
+            @Override
+            public int compare(final Sample s1, final Sample s2)
+            {
+                return s1.total > s2.total ? -1 : s1.total < s2.total ? 1 : 0;
+            }
+        });
+        return toTabularData(samples, count);
+    }
+
+    /**
+     * Returns an empty table of samples.
+     * 
+     * @return
+     */
+    static TabularData emptyTabularData()
+    {
+        return new TabularDataSupport(SAMPLES_TYPE);
+    }
+
+    private List<Sample> snapshot()
+    {
+        final List<Sample> samples = new ArrayList<Sample>(slots.length);
+        for (final Slot slot : slots)
+        {
+            final long seq = slot.sequence;
+            if (seq < 0)
+            {
+                continue;
+            }
+            final Sample sample = new Sample(seq, slot);
+            // rewritten meanwhile
+            if (slot.sequence == seq)
+            {
+                samples.add(sample);
+            }
+        }
+        return samples;
+    }
+
+    private static TabularData toTabularData(final List<Sample> samples, final int count)
+    {
+        final TabularData data = new TabularDataSupport(SAMPLES_TYPE);
+        for (int i = 0; i < samples.size() && i < count; i++)
+        {
+            final Sample sample = samples.get(i);
+            try
+            {
+                data.put(new CompositeDataSupport(SAMPLE_TYPE, ITEMS, new Object[] { sample.sequence, sample.timestamp,
+                        sample.target == null ? null : sample.target.toURI(), sample.method, sample.uri, sample.status, millis(sample.leaseWait),
+                        millis(sample.connect), millis(sample.timeToFirstByte), millis(sample.bodyRead), millis(sample.total) }));
+            }
+            catch (final OpenDataException e)
+            {
+                throw new RuntimeException("Converting trace sample failed", e);
+            }
+        }
+        return data;
+    }
+
+    private static double millis(final long nanos)
+    {
+        return nanos / 1e6;
+    }
+
+    /**
+     * A slot of the ring, written in place. Fields are volatile, so that a reader seeing the sequence unchanged after them saw a single sample.
+     */
+    private static class Slot
+    {
+        volatile long sequence = EMPTY;
+        volatile long timestamp;
+        volatile HttpHost target;
+        volatile String method;
+        volatile String uri;
+        volatile int status;
+        volatile long leaseWait;
+        volatile long connect;
+        volatile long timeToFirstByte;
+        volatile long bodyRead;
+        volatile long total;
+    }
+
+    /**
+     * A copy of a slot read.
+     */
+    private static class Sample
+    {
+        final long sequence;
+        final long timestamp;
+        final HttpHost target;
+        final String method;
+        final String uri;
+        final int status;
+        final long leaseWait;
+        final long connect;
+        final long timeToFirstByte;
+        final long bodyRead;
+        final long total;
+
+        Sample(final long sequence, final Slot slot)
+        {
+            this.sequence = sequence;
+            timestamp = slot.timestamp;
+            target = slot.target;
+            method = slot.method;
+            uri = slot.uri;
+            status = slot.status;
+            leaseWait = slot.leaseWait;
+            connect = slot.connect;
+            timeToFirstByte = slot.timeToFirstByte;
+            bodyRead = slot.bodyRead;
+            total = slot.total;
+        }
+    }
+}
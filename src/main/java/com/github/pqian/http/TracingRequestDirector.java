@@ -0,0 +1,157 @@
+package com.github.pqian.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Traces a request sampled by {@link TraceSampler}, from executing it until its body is read to the end or closed. The time until the response
+ * head is split into the lease wait and the connect time added by the connection manager, and the rest, taken as the time to first byte.
+ */
+class TracingRequestDirector implements RequestDirector
+{
+    private final RequestDirector director;
+    private final TraceSampler sampler;
+
+    TracingRequestDirector(final RequestDirector director, final TraceSampler sampler)
+    {
+        this.director = director;
+        this.sampler = sampler;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context) throws HttpException, IOException
+    {
+        final RequestTrace trace = new RequestTrace();
+        trace.begin();
+        HttpResponse response = null;
+        try
+        {
+            response = director.execute(target, request, context);
+        }
+        finally
+        {
+            trace.end();
+            if (response == null || response.getEntity() == null)
+            {
+                final long now = System.nanoTime();
+                sampler.record(target, request, response == null ? -1 : response.getStatusLine().getStatusCode(), trace, now, now);
+            }
+        }
+        if (response.getEntity() != null)
+        {
+            response.setEntity(new TracedEntity(response.getEntity(), target, request, response.getStatusLine().getStatusCode(), trace));
+        }
+        return response;
+    }
+
+    /**
+     * Records the sample once the body is read to the end, closed or consumed.
+     */
+    private class TracedEntity extends HttpEntityWrapper
+    {
+        private final HttpHost target;
+        private final HttpRequest request;
+        private final int status;
+        private final RequestTrace trace;
+        private final long headTime = System.nanoTime();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        TracedEntity(final HttpEntity entity, final HttpHost target, final HttpRequest request, final int status, final RequestTrace trace)
+        {
+            super(entity);
+            this.target = target;
+            this.request = request;
+            this.status = status;
+            this.trace = trace;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException
+        {
+            return new FilterInputStream(super.getContent())
+            {
+                @Override
+                public int read() throws IOException
+                {
+                    final int b = super.read();
+                    if (b < 0)
+                    {
+                        record();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException
+                {
+                    final int n = super.read(b, off, len);
+                    if (n < 0)
+                    {
+                        record();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        record();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) throws IOException
+        {
+            try
+            {
+                super.writeTo(out);
+            }
+            finally
+            {
+                record();
+            }
+        }
+
+        @Override
+        @Deprecated
+        public void consumeContent() throws IOException
+        {
+            try
+            {
+                super.consumeContent();
+            }
+            finally
+            {
+                record();
+            }
+        }
+
+        private void record()
+        {
+            if (recorded.compareAndSet(false, true))
+            {
+                sampler.record(target, request, status, trace, headTime, System.nanoTime());
+            }
+        }
+    }
+}
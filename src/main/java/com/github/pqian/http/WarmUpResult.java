@@ -0,0 +1,59 @@
+package com.github.pqian.http;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Outcome of warming up a pool, mapped to CompositeData by {@link ClientConnMgrSettingsMBean}.
+ */
+public class WarmUpResult
+{
+    private final int requested;
+    private final int warmed;
+    private final int failed;
+    private final long elapsedTime;
+
+    @ConstructorProperties({ "requested", "warmed", "failed", "elapsedTime" })
+    public WarmUpResult(final int requested, final int warmed, final int failed, final long elapsedTime)
+    {
+        this.requested = requested;
+        this.warmed = warmed;
+        this.failed = failed;
+        this.elapsedTime = elapsedTime;
+    }
+
+    public int getRequested()
+    {
+        return requested;
+    }
+
+    /**
+     * Returns how many connections were left open in the pool, including those pooled before.
+     * 
+     * @return
+     */
+    public int getWarmed()
+    {
+        return warmed;
+    }
+
+    public int getFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * Returns the time in milliseconds the warm-up took.
+     * 
+     * @return
+     */
+    public long getElapsedTime()
+    {
+        return elapsedTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[requested: " + requested + "; warmed: " + warmed + "; failed: " + failed + "; elapsedTime: " + elapsedTime + "]";
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
+import org.apache.http.nio.reactor.IOReactorStatus;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class AsyncHttpClientSettingsTest
+{
+    private HttpServer server;
+    private String baseUri;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                final byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUri = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testUsage() throws Exception
+    {
+        final ClientAsyncConnectionManager mgr = AsyncClientConnMgrFactory.newInstance("testAsyncUsage");
+        assertSame(mgr, AsyncClientConnMgrFactory.newInstance(true, "testAsyncUsage"));
+        final AsyncClientConnMgrSettings mgrSettings = new AsyncClientConnMgrSettings((MonitoredClientAsyncConnMgr) mgr,
+                "pqian.http:type=AsyncClientConnMgrSettings,name=testAsyncUsageSettings");
+        assertEquals(HttpSettings.INSTANCE.getDefaultIoThreadCount(), mgrSettings.getIoThreadCount());
+
+        final HttpAsyncClient client = AsyncHttpClientFactory.newInstance(mgr);
+        try
+        {
+            assertSame(mgr, client.getConnectionManager());
+            final AsyncHttpClientSettings settings = new AsyncHttpClientSettings(client,
+                    "pqian.http:type=AsyncHttpClientSettings,name=testAsyncUsageSettings");
+            settings.setSocketTimeout(3000);
+            assertEquals(3000, HttpConnectionParams.getSoTimeout(client.getParams()));
+
+            final List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+            for (int i = 0; i < 10; i++)
+            {
+                futures.add(client.execute(new HttpGet(baseUri + "/"), null));
+            }
+            for (final Future<HttpResponse> future : futures)
+            {
+                assertEquals(200, future.get(5, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+            }
+            assertEquals("ACTIVE", settings.getStatus());
+            assertTrue(mgrSettings.getRouteStats().size() == 1);
+        }
+        finally
+        {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception
+    {
+        final HttpAsyncClient first = AsyncHttpClientFactory.newInstance(true);
+        final HttpAsyncClient second = AsyncHttpClientFactory.newInstance(true);
+        try
+        {
+            // the shared manager runs a single I/O reactor
+            assertSame(first.getConnectionManager(), second.getConnectionManager());
+            for (final HttpAsyncClient client : new HttpAsyncClient[] { first, second })
+            {
+                assertEquals(200, client.execute(new HttpGet(baseUri + "/"), null).get(5, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+                assertEquals(IOReactorStatus.ACTIVE, client.getStatus());
+            }
+
+            // the shared client is monitored by the MBean it was started with
+            try
+            {
+                AsyncHttpClientFactory.newInstance(true, "testReuse");
+                fail("Shared client renamed");
+            }
+            catch (final IllegalStateException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            first.shutdown();
+            second.shutdown();
+        }
+
+        // a manager shut down is not reused
+        final HttpAsyncClient third = AsyncHttpClientFactory.newInstance(true);
+        try
+        {
+            assertNotSame(first.getConnectionManager(), third.getConnectionManager());
+            assertEquals(200, third.execute(new HttpGet(baseUri + "/"), null).get(5, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        }
+        finally
+        {
+            third.shutdown();
+        }
+    }
+}
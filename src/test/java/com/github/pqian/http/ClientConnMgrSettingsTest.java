@@ -0,0 +1,558 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ClientConnMgrSettingsTest
+{
+
+    @Test
+    public void testPoolStats() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testPoolStats");
+        assertEquals(0, settings.getTotalStats().getLeased());
+        assertTrue(settings.getRouteStats().isEmpty());
+
+        // lease a connection without opening it
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+        final ManagedClientConnection conn = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        assertEquals(1, settings.getTotalStats().getLeased());
+        assertEquals(mgr.getMaxTotal(), settings.getTotalStats().getMax());
+
+        final Map<String, ConnPoolStats> routeStats = settings.getRouteStats();
+        assertEquals(1, routeStats.size());
+        final ConnPoolStats stats = routeStats.get(route.toString());
+        assertEquals(1, stats.getLeased());
+        assertEquals(0, stats.getAvailable());
+        assertEquals(mgr.getDefaultMaxPerRoute(), stats.getMax());
+
+        mgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+        assertEquals(0, settings.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testMaxPerRoute() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testMaxPerRoute");
+        settings.setDefaultMaxPerRoute(5);
+
+        final HttpRoute hot = new HttpRoute(new HttpHost("hot", 8080));
+        mgr.releaseConnection(mgr.requestConnection(hot, null).getConnection(1, TimeUnit.SECONDS), 0, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList(hot.toString()), settings.getRoutes());
+
+        // a known route
+        settings.setMaxPerRoute(hot.toString(), 400);
+        assertEquals(400, mgr.getMaxPerRoute(hot));
+        assertEquals(400, settings.getMaxPerRoute(hot.toString()));
+        // kept without connections while overridden
+        mgr.pruneRoutes();
+        assertEquals(Collections.singletonList(hot.toString()), settings.getRoutes());
+
+        // a route not leased for yet
+        final HttpRoute cold = new HttpRoute(new HttpHost("cold", 443, "https"), null, true);
+        settings.setMaxPerRoute("https://cold:443", 2);
+        assertEquals(2, mgr.getMaxPerRoute(cold));
+        assertEquals(2, settings.getMaxPerRouteOverrides().size());
+        assertEquals(2, settings.getRoutes().size());
+
+        // cleared route follows the default again
+        settings.clearMaxPerRoute("https://cold:443");
+        assertEquals(5, mgr.getMaxPerRoute(cold));
+        settings.setDefaultMaxPerRoute(6);
+        assertEquals(6, mgr.getMaxPerRoute(cold));
+        assertEquals(400, mgr.getMaxPerRoute(hot));
+        assertEquals(1, settings.getMaxPerRouteOverrides().size());
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        final ServerSocket server = new ServerSocket(0, 10, InetAddress.getByName("localhost"));
+        try
+        {
+            final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+            IdleConnectionEvictor.schedule(mgr, 50);
+            final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testEviction");
+            settings.setMaxIdleTime(0);
+
+            // open a connection and give it back to the pool
+            final HttpRoute route = new HttpRoute(new HttpHost("localhost", server.getLocalPort()));
+            final ManagedClientConnection conn = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+            conn.open(route, new BasicHttpContext(), new BasicHttpParams());
+            conn.markReusable();
+            mgr.releaseConnection(conn, 1, TimeUnit.MINUTES);
+            assertEquals(1, settings.getTotalStats().getAvailable());
+
+            Thread.sleep(200);
+            assertTrue(settings.getEvictionRuns() > 0);
+            assertEquals(1, settings.getTotalStats().getAvailable());
+            assertEquals(Collections.singleton(route), mgr.getRoutes());
+
+            settings.setMaxIdleTime(1);
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (settings.getEvictedConnections() == 0 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+            assertEquals(1, settings.getEvictedConnections());
+            assertEquals(0, settings.getTotalStats().getAvailable());
+
+            // the route left without connections is pruned
+            while (!mgr.getRoutes().isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(50);
+            }
+            assertTrue(mgr.getRoutes().isEmpty());
+            assertTrue(settings.getRouteStats().isEmpty());
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testAutosizing() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testAutosizing");
+        final List<AttributeChangeNotification> notifications = Collections.synchronizedList(new ArrayList<AttributeChangeNotification>());
+        settings.addNotificationListener(new NotificationListener()
+        {
+            @Override
+            public void handleNotification(final Notification notification, final Object handback)
+            {
+                notifications.add((AttributeChangeNotification) notification);
+            }
+        }, null, null);
+        settings.setDefaultMaxPerRoute(2);
+        final ConnPoolAutosizer autosizer = new ConnPoolAutosizer(mgr);
+
+        // both connections leased and a third request waiting
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+        final ManagedClientConnection conn1 = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        final ManagedClientConnection conn2 = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        final ClientConnectionRequest waiting = mgr.requestConnection(route, null);
+        final Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    mgr.releaseConnection(waiting.getConnection(500, TimeUnit.MILLISECONDS), 0, TimeUnit.MILLISECONDS);
+                }
+                catch (final Exception e)
+                {
+                    // a raised limit applies to the next lease, the waiter itself may still time out
+                }
+            }
+        };
+        waiter.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (mgr.getStats(route).getPending() == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        autosizer.run(mgr);
+        assertEquals(3, mgr.getMaxPerRoute(route));
+        waiter.join(5000);
+        assertEquals(2, mgr.getStats(route).getLeased());
+        assertEquals("MaxPerRoute " + route, notifications.get(0).getAttributeName());
+        assertEquals(2, notifications.get(0).getOldValue());
+        assertEquals(3, notifications.get(0).getNewValue());
+
+        // the waiter having waited grows a route using all its connections, though nothing waits any more
+        final ManagedClientConnection conn3 = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        assertEquals(0, mgr.getStats(route).getPending());
+        autosizer.run(mgr);
+        assertEquals(4, mgr.getMaxPerRoute(route));
+
+        // idle pool shrinks, but not below the lower bound
+        mgr.releaseConnection(conn1, 0, TimeUnit.MILLISECONDS);
+        mgr.releaseConnection(conn2, 0, TimeUnit.MILLISECONDS);
+        mgr.releaseConnection(conn3, 0, TimeUnit.MILLISECONDS);
+        autosizer.run(mgr);
+        assertEquals(3, mgr.getMaxPerRoute(route));
+        autosizer.run(mgr);
+        assertEquals(HttpSettings.INSTANCE.getAutosizingMinPerRoute(), mgr.getMaxPerRoute(route));
+
+        // routes with JMX overrides are left alone
+        settings.setMaxPerRoute(route.toString(), 50);
+        autosizer.run(mgr);
+        assertEquals(50, mgr.getMaxPerRoute(route));
+        assertEquals(50, mgr.getMaxTotal());
+
+        // the total of a manager without routes is left alone
+        final MonitoredClientConnMgr unused = new MonitoredClientConnMgr();
+        final int maxTotal = unused.getMaxTotal();
+        new ConnPoolAutosizer(unused).run(unused);
+        assertEquals(maxTotal, unused.getMaxTotal());
+    }
+
+    @Test
+    public void testStarvation() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testStarvation");
+        final List<Notification> notifications = Collections.synchronizedList(new ArrayList<Notification>());
+        settings.addNotificationListener(new NotificationListener()
+        {
+            @Override
+            public void handleNotification(final Notification notification, final Object handback)
+            {
+                notifications.add(notification);
+            }
+        }, null, null);
+        settings.setDefaultMaxPerRoute(1);
+        settings.setLeaseWaitThreshold(50);
+        final PoolStarvationMonitor monitor = new PoolStarvationMonitor(mgr);
+
+        // the only connection is leased, the next lease times out
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+        final ManagedClientConnection conn = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        try
+        {
+            mgr.requestConnection(route, null).getConnection(100, TimeUnit.MILLISECONDS);
+            fail("pool is exhausted");
+        }
+        catch (final ConnectionPoolTimeoutException e)
+        {
+            // expected
+        }
+        assertEquals(1, settings.getPoolTimeouts());
+        assertTrue(settings.getLeaseWaitMax() >= 50);
+
+        monitor.run(mgr);
+        assertEquals(1, notifications.size());
+        assertEquals(ClientConnMgrSettings.POOL_STARVING, notifications.get(0).getType());
+
+        // leases are fast again
+        mgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+        mgr.releaseConnection(mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS), 0, TimeUnit.MILLISECONDS);
+        monitor.run(mgr);
+        assertEquals(2, notifications.size());
+        assertEquals(ClientConnMgrSettings.POOL_RECOVERED, notifications.get(1).getType());
+    }
+
+    @Test
+    public void testStriping() throws Exception
+    {
+        final StripedClientConnMgr mgr = new StripedClientConnMgr(4, StripedClientConnMgr.StripeBy.ROUTE);
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testStriping");
+        settings.setMaxTotal(10);
+        settings.setDefaultMaxPerRoute(3);
+        assertEquals(10, settings.getMaxTotal());
+        assertEquals(3, settings.getDefaultMaxPerRoute());
+
+        // by route, every stripe may take the whole total, whichever a route is served by
+        final List<ConnPoolStats> stripeStats = settings.getStripeStats();
+        assertEquals(4, stripeStats.size());
+        for (final ConnPoolStats stats : stripeStats)
+        {
+            assertEquals(10, stats.getMax());
+        }
+
+        // a route is served by a single stripe, with its limit as a whole
+        final List<ManagedClientConnection> conns = new ArrayList<ManagedClientConnection>();
+        final HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+        for (int i = 0; i < 3; i++)
+        {
+            conns.add(mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS));
+        }
+        assertEquals(3, settings.getTotalStats().getLeased());
+        assertEquals(3, settings.getRouteStats().get(route.toString()).getLeased());
+        try
+        {
+            mgr.requestConnection(route, null).getConnection(10, TimeUnit.MILLISECONDS);
+            fail("Route limit exceeded");
+        }
+        catch (final ConnectionPoolTimeoutException e)
+        {
+            // expected
+        }
+
+        // the total is bounded across stripes
+        settings.setMaxTotal(4);
+        final HttpRoute otherRoute = new HttpRoute(new HttpHost("localhost", 8081));
+        conns.add(mgr.requestConnection(otherRoute, null).getConnection(1, TimeUnit.SECONDS));
+        try
+        {
+            mgr.requestConnection(otherRoute, null).getConnection(10, TimeUnit.MILLISECONDS);
+            fail("Total exceeded");
+        }
+        catch (final ConnectionPoolTimeoutException e)
+        {
+            // expected
+        }
+
+        // released to the stripe leased from
+        for (final ManagedClientConnection conn : conns)
+        {
+            mgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+        }
+        conns.clear();
+        conns.add(mgr.requestConnection(otherRoute, null).getConnection(1, TimeUnit.SECONDS));
+        mgr.releaseConnection(conns.get(0), 0, TimeUnit.MILLISECONDS);
+        assertEquals(0, settings.getTotalStats().getLeased());
+        assertEquals(0, settings.getTotalStats().getAvailable());
+
+        // connections released by a client through themselves give their permits back
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                exchange.sendResponseHeaders(200, 2);
+                final OutputStream out = exchange.getResponseBody();
+                out.write("ok".getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        server.start();
+        try
+        {
+            final DefaultHttpClient client = new DefaultHttpClient(mgr);
+            HttpConnectionParams.setConnectionTimeout(client.getParams(), 1000);
+            client.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, 1000);
+            for (int i = 0; i < 10; i++)
+            {
+                final HttpResponse response = client.execute(new HttpGet("http://localhost:" + server.getAddress().getPort() + "/"));
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                EntityUtils.consume(response.getEntity());
+            }
+            assertEquals(0, settings.getTotalStats().getLeased());
+        }
+        finally
+        {
+            server.stop(0);
+        }
+
+        // aborting wakes a request waiting for a permit
+        settings.setMaxTotal(1);
+        final ManagedClientConnection held = mgr.requestConnection(otherRoute, null).getConnection(1, TimeUnit.SECONDS);
+        final ClientConnectionRequest blocked = mgr.requestConnection(route, null);
+        final AtomicReference<Exception> woken = new AtomicReference<Exception>();
+        final Thread waiter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    blocked.getConnection(0, TimeUnit.MILLISECONDS);
+                }
+                catch (final Exception e)
+                {
+                    woken.set(e);
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(100);
+        blocked.abortRequest();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertTrue(woken.get() instanceof InterruptedException);
+        mgr.releaseConnection(held, 0, TimeUnit.MILLISECONDS);
+        mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS).abortConnection();
+        mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS).releaseConnection();
+        mgr.shutdown();
+
+        // by thread, every stripe gets a share of a route
+        final StripedClientConnMgr threadMgr = new StripedClientConnMgr(4, StripedClientConnMgr.StripeBy.THREAD);
+        threadMgr.setMaxPerRoute(route, 10);
+        assertEquals(10, threadMgr.getMaxPerRoute(route));
+        assertTrue(new ClientConnMgrSettings(new MonitoredClientConnMgr(), "pqian.http:type=ClientConnMgrSettings,name=testUnstriped")
+                .getStripeStats().isEmpty());
+        threadMgr.shutdown();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception
+    {
+        final ServerSocket server = new ServerSocket(0, 10, InetAddress.getByName("localhost"));
+        final ServerSocket closed = new ServerSocket(0, 10, InetAddress.getByName("localhost"));
+        closed.close();
+        try
+        {
+            final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+            final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testWarmUp");
+            settings.setDefaultMaxPerRoute(10);
+            final String route = "http://localhost:" + server.getLocalPort();
+            final WarmUpResult result = settings.warmUp(new String[] { route, "http://localhost:" + closed.getLocalPort() }, new int[] { 3, 2 }, 5000);
+            assertEquals(5, result.getRequested());
+            assertEquals(3, result.getWarmed());
+            assertEquals(2, result.getFailed());
+            final HttpRoute httpRoute = HttpRoutes.parse(route, mgr.getRoutes());
+            assertEquals(3, mgr.getStats(httpRoute).getAvailable());
+            assertEquals(0, settings.getTotalStats().getLeased());
+
+            // taken up by traffic, and topped up by a second warm-up
+            final ManagedClientConnection conn = mgr.requestConnection(httpRoute, null).getConnection(1, TimeUnit.SECONDS);
+            assertTrue(conn.isOpen());
+            conn.markReusable();
+            mgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+            final WarmUpResult again = settings.warmUp(new String[] { route }, new int[] { 4 }, 5000);
+            assertEquals(4, again.getWarmed());
+            assertEquals(4, mgr.getStats(httpRoute).getAvailable());
+            mgr.shutdown();
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testDnsCache() throws Exception
+    {
+        // a host of two local addresses
+        final AtomicInteger lookups = new AtomicInteger();
+        final InetAddress[] addresses = { InetAddress.getByAddress("stub.test", new byte[] { 127, 0, 0, 1 }),
+                InetAddress.getByAddress("stub.test", new byte[] { 127, 0, 0, 2 }) };
+        final DnsResolver stub = new DnsResolver()
+        {
+            @Override
+            public InetAddress[] resolve(final String host) throws UnknownHostException
+            {
+                lookups.incrementAndGet();
+                if (!"stub.test".equals(host)) { throw new UnknownHostException(host); }
+                return addresses.clone();
+            }
+        };
+        // only 127.0.0.1 is configured on some hosts, e.g. macOS
+        assumeTrue(isLocal(addresses[1]));
+        final ServerSocket server = new ServerSocket(0, 10);
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr(new CachingDnsResolver(stub, 60000, CachingDnsResolver.Spreading.ROUND_ROBIN));
+        try
+        {
+            final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testDnsCache");
+            settings.setDefaultMaxPerRoute(10);
+            final HttpRoute route = new HttpRoute(new HttpHost("stub.test", server.getLocalPort()));
+            final List<ManagedClientConnection> conns = new ArrayList<ManagedClientConnection>();
+            for (int i = 0; i < 4; i++)
+            {
+                conns.add(open(mgr, route));
+            }
+            assertEquals(1, lookups.get());
+            assertEquals(1, settings.getDnsCacheMisses());
+            assertEquals(0.75, settings.getDnsCacheHitRate(), 0.001);
+            assertEquals(addresses[0], conns.get(0).getRemoteAddress());
+            assertEquals(addresses[1], conns.get(1).getRemoteAddress());
+            assertEquals(2, settings.getDnsAddressConnections().get("127.0.0.1").intValue());
+            assertEquals(2, settings.getDnsAddressConnections().get("127.0.0.2").intValue());
+
+            // both closed at the first address, which takes the next ones
+            for (final int i : new int[] { 2, 0 })
+            {
+                conns.get(i).close();
+                mgr.releaseConnection(conns.remove(i), 0, TimeUnit.MILLISECONDS);
+            }
+            settings.setDnsSpreading("least_connections");
+            assertEquals("LEAST_CONNECTIONS", settings.getDnsSpreading());
+            conns.add(open(mgr, route));
+            conns.add(open(mgr, route));
+            assertEquals(addresses[0], conns.get(2).getRemoteAddress());
+            assertEquals(addresses[0], conns.get(3).getRemoteAddress());
+            assertEquals(2, settings.getDnsAddressConnections().get("127.0.0.1").intValue());
+
+            // refreshed in the background once three quarters of the time to live have passed, timed from a fresh lookup
+            settings.clearDnsCache();
+            conns.add(open(mgr, route));
+            settings.setDnsCacheTtl(1000);
+            Thread.sleep(800);
+            conns.add(open(mgr, route));
+            for (int i = 0; i < 100 && settings.getDnsRefreshes() == 0; i++)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals(1, settings.getDnsRefreshes());
+            assertEquals(3, lookups.get());
+            assertEquals(2, settings.getDnsCacheMisses());
+
+            settings.clearDnsCache();
+            try
+            {
+                mgr.requestConnection(new HttpRoute(new HttpHost("unknown.test", 80)), null).getConnection(1, TimeUnit.SECONDS)
+                        .open(new HttpRoute(new HttpHost("unknown.test", 80)), new BasicHttpContext(), new BasicHttpParams());
+                fail("Unknown host resolved");
+            }
+            catch (final UnknownHostException e)
+            {
+                // expected
+            }
+            assertEquals(1, settings.getDnsLookupFailures());
+            assertTrue(settings.getDnsLookupP99() >= settings.getDnsLookupP50());
+        }
+        finally
+        {
+            mgr.shutdown();
+            server.close();
+        }
+    }
+
+    private static boolean isLocal(final InetAddress address)
+    {
+        try
+        {
+            new ServerSocket(0, 1, address).close();
+            return true;
+        }
+        catch (final IOException e)
+        {
+            return false;
+        }
+    }
+
+    private static ManagedClientConnection open(final MonitoredClientConnMgr mgr, final HttpRoute route) throws Exception
+    {
+        final ManagedClientConnection conn = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        conn.open(route, new BasicHttpContext(), new BasicHttpParams());
+        return conn;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpCacheSettingsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUri;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                requests.incrementAndGet();
+                // a body as long as the number in the path
+                final int length = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+                final byte[] body = new byte[length];
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUri = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCache() throws Exception
+    {
+        final File directory = folder.newFolder();
+        final BoundedHttpCacheStorage storage = new BoundedHttpCacheStorage(1024 * 1024, 1024 * 1024, 100);
+        final CachingHttpClient client = new CachingHttpClient(new MonitoredHttpClient(new MonitoredClientConnMgr()), new TieredResourceFactory(
+                directory, 1000), storage, new CacheConfig());
+        final HttpCacheSettings settings = new HttpCacheSettings(client, storage, "pqian.http:type=HttpCacheSettings,name=testCache");
+
+        // the second request is served from the cache
+        assertEquals(10, get(client, "/10"));
+        assertEquals(10, get(client, "/10"));
+        assertEquals(1, requests.get());
+        assertEquals(1, settings.getCacheHits());
+        assertEquals(1, settings.getCacheMisses());
+        assertEquals(0.5, settings.getHitRatio(), 0.001);
+        assertTrue(settings.getHeapBytes() >= 10);
+        assertEquals(0, settings.getFileBytes());
+
+        // a large body is kept in a file
+        assertEquals(5000, get(client, "/5000"));
+        assertEquals(5000, get(client, "/5000"));
+        assertEquals(2, requests.get());
+        assertEquals(5000, settings.getFileBytes());
+        assertEquals(1, directory.list().length);
+
+        // the least recently used entry of the file tier is evicted
+        assertEquals(4000, get(client, "/4000"));
+        settings.setMaxFileBytes(6000);
+        assertEquals(1, settings.getEvictions());
+        assertEquals(4000, settings.getFileBytes());
+        assertEquals(2, settings.getEntryCount());
+        assertEquals(1, awaitFiles(storage, directory, 1));
+
+        // a body still being read survives the flush, disposed once the response is gone
+        HttpResponse response = client.execute(new HttpGet(baseUri + "/4000"));
+        settings.flush();
+        assertEquals(0, settings.getEntryCount());
+        assertEquals(0, settings.getHeapBytes());
+        System.gc();
+        storage.cleanResources();
+        assertEquals(1, directory.list().length);
+        assertEquals(4000, EntityUtils.toByteArray(response.getEntity()).length);
+        response = null;
+        assertEquals(0, awaitFiles(storage, directory, 0));
+        get(client, "/10");
+        assertEquals(4, requests.get());
+    }
+
+    private static int awaitFiles(final BoundedHttpCacheStorage storage, final File directory, final int files) throws InterruptedException
+    {
+        for (int i = 0; i < 50 && directory.list().length != files; i++)
+        {
+            System.gc();
+            Thread.sleep(20);
+            storage.cleanResources();
+        }
+        return directory.list().length;
+    }
+
+    private int get(final CachingHttpClient client, final String path) throws IOException
+    {
+        return EntityUtils.toByteArray(client.execute(new HttpGet(baseUri + path)).getEntity()).length;
+    }
+}
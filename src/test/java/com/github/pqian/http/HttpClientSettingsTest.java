@@ -0,0 +1,494 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpClientSettingsTest
+{
+    private HttpServer server;
+    private String baseUri;
+    private final AtomicInteger flaky = new AtomicInteger();
+    private final AtomicInteger slowOnce = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException
+            {
+                final String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/flaky") && flaky.getAndIncrement() == 0)
+                {
+                    // closed without a response
+                    exchange.close();
+                    return;
+                }
+                if (path.startsWith("/slow"))
+                {
+                    try
+                    {
+                        Thread.sleep(path.startsWith("/slowonce") ? slowOnce.getAndIncrement() == 0 ? 2000 : 0 : 300);
+                    }
+                    catch (final InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final int status = path.startsWith("/missing") ? 404 : path.startsWith("/error") ? 500 : 200;
+                final byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUri = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void testLatencyStats() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testLatencyStats");
+        assertFalse(settings.isInstrumentationEnabled());
+        execute(client, "/");
+        assertEquals(0, settings.getRequestCount());
+
+        settings.setInstrumentationEnabled(true);
+        for (int i = 0; i < 10; i++)
+        {
+            execute(client, "/");
+        }
+        execute(client, "/missing");
+        assertEquals(11, settings.getRequestCount());
+        assertTrue(settings.getThroughput() > 0);
+        assertTrue(settings.getLatencyP50() <= settings.getLatencyP99());
+        assertTrue(settings.getLatencyP99() <= settings.getLatencyP999());
+
+        final LatencyStats stats = settings.getRouteLatencyStats().get(baseUri);
+        assertEquals(11, stats.getCount());
+        assertEquals(10, stats.getStatus2xx());
+        assertEquals(1, stats.getStatus4xx());
+        assertEquals(0, stats.getErrors());
+
+        settings.resetLatencyStats();
+        assertEquals(0, settings.getRequestCount());
+        assertTrue(settings.getRouteLatencyStats().isEmpty());
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        final MonitoredHttpClient client = new MonitoredHttpClient(mgr);
+        client.setKeepAliveStrategy(new ConfigurableKeepAliveStrategy(60000));
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testKeepAlive");
+        assertEquals(60000, settings.getKeepAliveTimeout());
+
+        for (int i = 0; i < 3; i++)
+        {
+            execute(client, "/");
+        }
+        assertEquals(1, mgr.getOpenedConnections());
+        assertEquals(2, mgr.getReusedConnections());
+
+        // the pooled connection expires soon
+        settings.setHostKeepAliveTimeout("LOCALHOST", 1);
+        assertEquals(Long.valueOf(1), settings.getHostKeepAliveTimeouts().get("localhost"));
+        execute(client, "/");
+        Thread.sleep(50);
+        execute(client, "/");
+        assertEquals(2, mgr.getOpenedConnections());
+
+        settings.clearHostKeepAliveTimeout("localhost");
+        assertTrue(settings.getHostKeepAliveTimeouts().isEmpty());
+    }
+
+    @Test
+    public void testExecutor() throws Exception
+    {
+        final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+        mgr.setDefaultMaxPerRoute(2);
+        final MonitoredHttpClient client = new MonitoredHttpClient(mgr);
+        final ClientConnMgrSettings settings = new ClientConnMgrSettings(mgr, "pqian.http:type=ClientConnMgrSettings,name=testExecutor");
+        final HttpClientExecutor executor = HttpClientFactory.newExecutor(client);
+
+        final List<CompletableFuture<HttpResponse>> futures = new ArrayList<CompletableFuture<HttpResponse>>();
+        for (int i = 0; i < 6; i++)
+        {
+            futures.add(executor.execute(new HttpGet(baseUri + "/slow")));
+        }
+        // until all are started, the first responses take 300ms
+        for (int i = 0; i < 100 && settings.getQueuedWaiters() < 4; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(2, settings.getPermitsInUse());
+        assertEquals(4, settings.getQueuedWaiters());
+        for (final CompletableFuture<HttpResponse> future : futures)
+        {
+            assertEquals(200, future.get(5, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        }
+        assertEquals(0, settings.getPermitsInUse());
+
+        // waiting for a permit no longer than 50ms
+        HttpClientParams.setConnectionManagerTimeout(client.getParams(), 50);
+        futures.clear();
+        for (int i = 0; i < 3; i++)
+        {
+            futures.add(executor.execute(new HttpGet(baseUri + "/slow")));
+        }
+        int rejected = 0;
+        for (final CompletableFuture<HttpResponse> future : futures)
+        {
+            try
+            {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            catch (final ExecutionException e)
+            {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected++;
+            }
+        }
+        assertEquals(1, rejected);
+        assertEquals(1, settings.getRejectedRequests());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testCircuitBreaker");
+        settings.setCircuitBreakerEnabled(true);
+        settings.setFailureThreshold(2);
+        settings.setOpenDuration(200);
+
+        // consecutive server errors open the breaker
+        execute(client, "/error");
+        execute(client, "/error");
+        assertRejected(client, baseUri + "/");
+        CircuitBreakerStats stats = settings.getCircuitBreakerStats().get(baseUri);
+        assertEquals("OPEN", stats.getState());
+        assertEquals(1, stats.getTrips());
+        assertEquals(1, stats.getRejected());
+
+        // a successful trial closes it again
+        Thread.sleep(250);
+        execute(client, "/");
+        assertEquals("CLOSED", settings.getCircuitBreakerStats().get(baseUri).getState());
+
+        // forced open until cleared
+        settings.forceCircuitBreakerOpen(baseUri);
+        assertRejected(client, baseUri + "/");
+        settings.clearForcedCircuitBreaker(baseUri);
+        execute(client, "/");
+
+        // a full bulkhead rejects instead of waiting for the pool
+        settings.setBulkheadSize(1);
+        final Thread slow = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    EntityUtils.consume(client.execute(new HttpGet(baseUri + "/slow")).getEntity());
+                }
+                catch (final IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        slow.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (settings.getCircuitBreakerStats().get(baseUri).getInFlight() == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertRejected(client, baseUri + "/");
+        slow.join();
+        assertEquals(0, settings.getCircuitBreakerStats().get(baseUri).getInFlight());
+        assertEquals(3, settings.getCircuitBreakerStats().get(baseUri).getRejected());
+
+        // a request without target host goes by the default host
+        assertEquals(200, executeWithoutTarget(client, "/").getStatusLine().getStatusCode());
+
+        // only the trial decides whether a half open breaker closes, not requests admitted before it opened
+        final CircuitBreaker breaker = new CircuitBreakers(1, 50, 0).get(baseUri);
+        assertFalse(breaker.acquire(baseUri));
+        assertFalse(breaker.acquire(baseUri));
+        assertFalse(breaker.acquire(baseUri));
+        breaker.release(false, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(60);
+        assertTrue(breaker.acquire(baseUri));
+        breaker.release(false, true);
+        breaker.cancel(false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.release(true, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testRetry() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        client.setHttpRequestRetryHandler(new RetryPolicy(2, 1, 10, 0.1));
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testRetry");
+        assertEquals(2, settings.getMaxRetries());
+
+        // the first attempt is dropped without a response
+        assertEquals(200, execute(client, "/flaky").getStatusLine().getStatusCode());
+        assertEquals(1, settings.getRetries());
+
+        // no retry once the budget is used up
+        settings.setRetryBudget(0);
+        int denied = 0;
+        for (int i = 0; i < 11; i++)
+        {
+            flaky.set(0);
+            try
+            {
+                execute(client, "/flaky");
+            }
+            catch (final IOException e)
+            {
+                denied++;
+            }
+        }
+        assertEquals(2, denied);
+        assertEquals(10, settings.getRetries());
+        assertEquals(2, settings.getRetriesDenied());
+
+        // a retry takes a permit of the rate limit of its own
+        final MonitoredHttpClient limited = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        limited.setHttpRequestRetryHandler(new RetryPolicy(2, 1, 10, 0.1));
+        limited.getRateLimiter().setRate(0.1);
+        limited.getRateLimiter().setBurst(1);
+        limited.getRateLimiter().setMaxWait(0);
+        limited.setRateLimitEnabled(true);
+        flaky.set(0);
+        try
+        {
+            execute(limited, "/flaky");
+            fail("Retried without a permit");
+        }
+        catch (final IOException e)
+        {
+            // expected
+        }
+        assertEquals(1, flaky.get());
+        assertEquals(1, limited.getRateLimiter().getStats().get(baseUri).getThrottled());
+    }
+
+    @Test
+    public void testHedging() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testHedging");
+        settings.setHedgingEnabled(true);
+        settings.setHedgePercentile(50);
+
+        // no hedging until response times of the route are known
+        for (int i = 0; i < 20; i++)
+        {
+            execute(client, "/");
+        }
+        assertEquals(0, settings.getHedgesFired());
+
+        // a streamed entity cannot be sent twice, the request goes alone
+        final HttpPut put = new HttpPut(baseUri + "/");
+        put.setEntity(new InputStreamEntity(new ByteArrayInputStream("put".getBytes("UTF-8")), 3));
+        final HttpResponse putResponse = client.execute(put);
+        assertEquals(200, putResponse.getStatusLine().getStatusCode());
+        EntityUtils.consume(putResponse.getEntity());
+        assertEquals(0, settings.getHedgesFired());
+
+        // only the first request is slow, the hedge is not
+        final long start = System.currentTimeMillis();
+        final HttpResponse response = client.execute(new HttpGet(baseUri + "/slowonce"));
+        assertEquals("ok", EntityUtils.toString(response.getEntity()));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, settings.getHedgesFired());
+        assertEquals(1, settings.getHedgesWon());
+
+        // a request without target host goes by the default host
+        assertEquals(200, executeWithoutTarget(client, "/").getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testRateLimit() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        final RateLimiterSettings settings = new RateLimiterSettings(client, "pqian.http:type=RateLimiterSettings,name=testRateLimit");
+        // warmed up, so that the burst is not refilled while the first request loads
+        execute(client, "/");
+        settings.setEnabled(true);
+        settings.setRate(5);
+        settings.setBurst(2);
+        settings.setMaxWait(0);
+
+        // a burst passes, the next request fails fast
+        execute(client, "/");
+        execute(client, "/");
+        assertRejected(client, baseUri + "/");
+        RateLimitStats stats = settings.getRouteStats().get(baseUri);
+        assertEquals(2, stats.getGranted());
+        assertEquals(1, stats.getThrottled());
+
+        // blocking mode waits for the next permit
+        settings.setMaxWait(1000);
+        final long start = System.nanoTime();
+        execute(client, "/");
+        execute(client, "/");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertTrue(settings.getWaitTime() >= 100);
+
+        // a route of its own rate
+        settings.setRouteRate(baseUri, 0.1);
+        settings.setMaxWait(0);
+        Thread.sleep(500);
+        execute(client, "/");
+        execute(client, "/");
+        assertRejected(client, baseUri + "/");
+        settings.clearRouteRate(baseUri);
+        assertTrue(settings.getRouteRates().isEmpty());
+        assertEquals(5, settings.getRouteStats().get(baseUri).getRate(), 0);
+        assertEquals(2, settings.getThrottled());
+
+        // raising the rate does not keep the permits taken ahead at the old one
+        settings.setRate(0.01);
+        Thread.sleep(200);
+        execute(client, "/");
+        execute(client, "/");
+        assertRejected(client, baseUri + "/");
+        settings.setRate(1000);
+        execute(client, "/");
+        settings.setBurst(1);
+        execute(client, "/");
+
+        // a tiny rate does not overflow
+        settings.setRate(1e-12);
+        execute(client, "/");
+        assertRejected(client, baseUri + "/");
+
+        // a request without target host goes by the default host
+        assertEquals(200, executeWithoutTarget(client, "/").getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testTraceSampling() throws Exception
+    {
+        final MonitoredHttpClient client = new MonitoredHttpClient(new MonitoredClientConnMgr());
+        final HttpClientSettings settings = new HttpClientSettings(client, "pqian.http:type=HttpClientSettings,name=testTraceSampling");
+        execute(client, "/");
+        assertEquals(0, settings.getTracesSampled());
+
+        settings.setTraceSampleRate(1);
+        execute(client, "/slow");
+        execute(client, "/");
+        execute(client, "/missing");
+        assertEquals(3, settings.getTracesSampled());
+
+        final List<CompositeData> latest = rows(settings.dumpLatestTraces(10));
+        assertEquals(3, latest.size());
+        assertEquals(baseUri + "/missing", latest.get(0).get("uri"));
+        assertEquals(404, latest.get(0).get("status"));
+        assertEquals(baseUri, latest.get(0).get("target"));
+        final CompositeData slowest = rows(settings.dumpSlowestTraces(1)).get(0);
+        assertEquals(baseUri + "/slow", slowest.get("uri"));
+        assertTrue((Double) slowest.get("timeToFirstByte") >= 300);
+        assertTrue((Double) slowest.get("total") >= (Double) slowest.get("timeToFirstByte") + (Double) slowest.get("bodyRead"));
+        // opened by the first request untraced, the connection is reused
+        assertEquals(0, (Double) slowest.get("connect"), 0);
+
+        settings.setTraceSampleRate(0);
+        execute(client, "/");
+        assertEquals(3, settings.getTracesSampled());
+    }
+
+    private static List<CompositeData> rows(final TabularData data)
+    {
+        final List<CompositeData> rows = new ArrayList<CompositeData>();
+        for (final Object row : data.values())
+        {
+            rows.add((CompositeData) row);
+        }
+        return rows;
+    }
+
+    private static void assertRejected(final MonitoredHttpClient client, final String uri) throws IOException
+    {
+        try
+        {
+            client.execute(new HttpGet(uri));
+            fail("request should be rejected");
+        }
+        catch (final RequestRejectedException e)
+        {
+            // expected
+        }
+    }
+
+    private HttpResponse execute(final MonitoredHttpClient client, final String path) throws IOException
+    {
+        final HttpResponse response = client.execute(new HttpGet(baseUri + path));
+        EntityUtils.consume(response.getEntity());
+        return response;
+    }
+
+    private HttpResponse executeWithoutTarget(final MonitoredHttpClient client, final String path) throws IOException
+    {
+        client.getParams().setParameter(ClientPNames.DEFAULT_HOST, new HttpHost("localhost", server.getAddress().getPort()));
+        final HttpResponse response = client.execute((HttpHost) null, new HttpGet(path));
+        EntityUtils.consume(response.getEntity());
+        return response;
+    }
+}
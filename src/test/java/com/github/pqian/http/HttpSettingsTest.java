@@ -0,0 +1,68 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class HttpSettingsTest
+{
+    @Test
+    public void testSnapshots()
+    {
+        final HttpSettings settings = HttpSettings.INSTANCE;
+        final HttpSettingsSnapshot before = HttpSettings.snapshot();
+        try
+        {
+            // several attributes as a single version
+            final long version = settings.applySettings(new String[] { "DefaultMaxTotalConnections", "DefaultMaxConnectionsPerRoute" }, new String[] {
+                    "300", "30" });
+            assertEquals(before.getVersion() + 1, version);
+            assertEquals(version, settings.getSnapshotVersion());
+            assertEquals(300, HttpSettings.snapshot().getDefaultMaxTotalConnections());
+            assertEquals(30, HttpSettings.snapshot().getDefaultMaxConnectionsPerRoute());
+            // published snapshots never change
+            assertTrue(before.getDefaultMaxTotalConnections() != 300 || before.getDefaultMaxConnectionsPerRoute() != 30);
+
+            settings.setDefaultSocketTimeout(12345);
+            assertEquals(version + 1, settings.getSnapshotVersion());
+            assertEquals(300, HttpSettings.snapshot().getDefaultMaxTotalConnections());
+
+            // nothing published if any attribute is invalid
+            try
+            {
+                settings.applySettings(new String[] { "DefaultMaxTotalConnections", "DefaultStripeCount" }, new String[] { "400", "0" });
+                fail("Invalid stripe count applied");
+            }
+            catch (final IllegalArgumentException e)
+            {
+                // expected
+            }
+            try
+            {
+                settings.applySettings(new String[] { "NoSuchAttribute" }, new String[] { "1" });
+                fail("Unknown attribute applied");
+            }
+            catch (final IllegalArgumentException e)
+            {
+                // expected
+            }
+            assertEquals(version + 1, settings.getSnapshotVersion());
+            assertEquals(300, settings.getDefaultMaxTotalConnections());
+
+            // rolled back as a new version
+            assertEquals(version + 2, settings.rollbackSettings(version));
+            assertEquals(before.getDefaultSocketTimeout(), settings.getDefaultSocketTimeout());
+            assertEquals(300, settings.getDefaultMaxTotalConnections());
+            final long[] versions = settings.getSnapshotVersions();
+            assertEquals(version + 2, versions[versions.length - 1]);
+            assertTrue(versions.length <= 16);
+        }
+        finally
+        {
+            HttpSettings.rollback(before.getVersion());
+        }
+        assertEquals(before.getDefaultMaxTotalConnections(), settings.getDefaultMaxTotalConnections());
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+
+    @Test
+    public void testPercentiles()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99), 0);
+
+        // 1..1000 millis
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax(), 0);
+        assertEquals(500, histogram.getPercentile(50), 500 * 0.07);
+        assertEquals(990, histogram.getPercentile(99), 990 * 0.07);
+        assertEquals(1000, histogram.getPercentile(99.9), 1000 * 0.07);
+        assertTrue(histogram.getPercentile(100) <= histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax(), 0);
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        long previous = -1;
+        for (long value = 0; value < (1L << 20); value++)
+        {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueAt(index));
+            assertTrue(index == 0 || value > LatencyHistogram.highestValueAt(index - 1));
+            assertTrue(index >= previous);
+            previous = index;
+        }
+    }
+}
@@ -6,6 +6,22 @@ import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.impl.client.DefaultHttpClient;
@@ -85,6 +101,68 @@ public class MBeanRegistrarTest
 
     }
 
+    @Test
+    public void testConcurrentRegistration() throws Exception
+    {
+        final int threads = 8;
+        final int perThread = 50;
+        final PoolingClientConnectionManager[][] mgrs = new PoolingClientConnectionManager[threads][perThread];
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    start.await();
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        mgrs[thread][i] = new PoolingClientConnectionManager();
+                        MBeanRegistrar.registerClientConnMgrSettings(mgrs[thread][i], "concurrent_" + thread + "_" + i);
+                        // registering the same connMgr again doesn't register another MBean
+                        assertEquals(MBeanRegistrar.createObjectNameForClientConnMgrSettings("concurrent_" + thread + "_" + i),
+                                MBeanRegistrar.registerClientConnMgrSettings(mgrs[thread][i]));
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (final Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int t = 0; t < threads; t++)
+        {
+            for (int i = 0; i < perThread; i++)
+            {
+                assertTrue(MBeanRegistrar.isMapped(mgrs[t][i]));
+                assertSame(mgrs[t][i], MBeanRegistrar.findClientConnMgrByMbeanName("concurrent_" + t + "_" + i));
+            }
+        }
+
+        // a name taken by another manager is rejected
+        final PoolingClientConnectionManager other = new PoolingClientConnectionManager();
+        try
+        {
+            MBeanRegistrar.registerClientConnMgrSettings(other, "concurrent_0_0");
+            Assert.fail("Name of another manager taken");
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected
+        }
+        assertFalse(MBeanRegistrar.isMapped(other));
+        assertSame(mgrs[0][0], MBeanRegistrar.findClientConnMgrByMbeanName("concurrent_0_0"));
+        other.shutdown();
+    }
+
     @Test
     public void testMBeansAutoUnregister() throws InterruptedException
     {
@@ -96,17 +174,163 @@ public class MBeanRegistrarTest
         final String cltObjectName = MBeanRegistrar.registerHttpClientSettings(clt);
         assertTrue(MBeanRegistrar.isRegistered(cltObjectName));
 
+        final long unregistered = HttpSettings.INSTANCE.getReaperUnregisteredMBeans();
         mgr = null;
         clt = null;
-        System.gc();
-        // s must >= Timer's period, see HttpClientSettings or ClientConnMgrSettings
+        // MBeans are unregistered by MBeanReaper as soon as GC collects their targets
         int s = 30;
-        while (--s >= 0)
+        while (--s >= 0 && (MBeanRegistrar.isRegistered(mgrObjectName) || MBeanRegistrar.isRegistered(cltObjectName)))
         {
-            System.out.println(s);
+            System.gc();
             Thread.sleep(1000);
         }
         assertFalse(MBeanRegistrar.isRegistered(mgrObjectName));
         assertFalse(MBeanRegistrar.isRegistered(cltObjectName));
+        assertTrue(HttpSettings.INSTANCE.getReaperUnregisteredMBeans() >= unregistered + 2);
+    }
+
+    @Test
+    public void testLazyRegistration() throws Exception
+    {
+        final MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        final PoolingClientConnectionManager mgr = new PoolingClientConnectionManager();
+        final String objectName = MBeanRegistrar.createObjectNameForClientConnMgrSettings("testLazy");
+        MBeanRegistrar.setLazyRegistration(true);
+        try
+        {
+            assertTrue(platform.isRegistered(new ObjectName(MBeanRegistrar.PENDING_MBEANS)));
+            MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+            assertTrue(MBeanRegistrar.isRegistered(objectName));
+            assertFalse(platform.isRegistered(new ObjectName(objectName)));
+            assertEquals(1, HttpSettings.INSTANCE.getPendingMBeans());
+
+            // a JMX client looking into the domain registers the pending ones
+            platform.getMBeanInfo(new ObjectName(MBeanRegistrar.PENDING_MBEANS));
+            assertTrue(platform.isRegistered(new ObjectName(objectName)));
+            assertEquals(0, HttpSettings.INSTANCE.getPendingMBeans());
+
+            // it has no operations
+            try
+            {
+                platform.invoke(new ObjectName(MBeanRegistrar.PENDING_MBEANS), "register", new Object[0], new String[0]);
+                Assert.fail("Operation invoked");
+            }
+            catch (final ReflectionException e)
+            {
+                assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+            }
+        }
+        finally
+        {
+            MBeanRegistrar.setLazyRegistration(false);
+            MBeanRegistrar.unregisterMBean(objectName);
+        }
+        assertFalse(platform.isRegistered(new ObjectName(MBeanRegistrar.PENDING_MBEANS)));
+
+        // registering while lazy registration is turned off holds nothing pending for good
+        final List<String> objectNames = new ArrayList<String>();
+        for (int round = 0; round < 20; round++)
+        {
+            final String roundName = MBeanRegistrar.createObjectNameForClientConnMgrSettings("testLazyOff" + round);
+            objectNames.add(roundName);
+            MBeanRegistrar.setLazyRegistration(true);
+            final Thread registering = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, roundName), roundName);
+                }
+            };
+            registering.start();
+            MBeanRegistrar.setLazyRegistration(false);
+            registering.join();
+            assertEquals(0, MBeanRegistrar.getPendingCount());
+            assertTrue(platform.isRegistered(new ObjectName(roundName)));
+        }
+        for (final String roundName : objectNames)
+        {
+            MBeanRegistrar.unregisterMBean(roundName);
+        }
+        mgr.shutdown();
+    }
+
+    @Test
+    public void testMBeanServers() throws Exception
+    {
+        final MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        final MBeanServer other = MBeanServerFactory.newMBeanServer();
+        final PoolingClientConnectionManager mgr = new PoolingClientConnectionManager();
+        final String objectName = MBeanRegistrar.createObjectNameForClientConnMgrSettings("testServers");
+        assertEquals(Collections.singletonList(platform), MBeanRegistrar.getMBeanServers());
+        MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+        try
+        {
+            // registered MBeans are moved
+            MBeanRegistrar.setMBeanServers(Arrays.asList(platform, other));
+            assertTrue(other.isRegistered(new ObjectName(objectName)));
+            assertEquals(platform.getAttribute(new ObjectName(objectName), "MaxTotal"), other.getAttribute(new ObjectName(objectName), "MaxTotal"));
+
+            MBeanRegistrar.unregisterMBean(objectName);
+            assertFalse(platform.isRegistered(new ObjectName(objectName)));
+            assertFalse(other.isRegistered(new ObjectName(objectName)));
+            MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+            assertTrue(other.isRegistered(new ObjectName(objectName)));
+
+            // failing with one server leaves it registered with none
+            MBeanRegistrar.unregisterMBean(objectName);
+            other.registerMBean(new ClientConnMgrSettings(mgr, objectName), new ObjectName(objectName));
+            MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+            assertFalse(MBeanRegistrar.isRegistered(objectName));
+            assertFalse(platform.isRegistered(new ObjectName(objectName)));
+            other.unregisterMBean(new ObjectName(objectName));
+        }
+        finally
+        {
+            MBeanRegistrar.usePlatformMBeanServer();
+            MBeanRegistrar.unregisterMBean(objectName);
+        }
+        assertTrue(other.queryNames(new ObjectName("pqian.http:*"), null).isEmpty());
+        mgr.shutdown();
+    }
+
+    @Test
+    public void testAggregationAndCap() throws Exception
+    {
+        // unnamed MBeans never collide
+        assertFalse(MBeanRegistrar.createObjectNameForHttpClientSettings(null).equals(MBeanRegistrar.createObjectNameForHttpClientSettings(null)));
+
+        final PoolingClientConnectionManager mgr = new PoolingClientConnectionManager();
+        final long aggregated = HttpSettings.INSTANCE.getAggregatedClients();
+        final long dropped = HttpSettings.INSTANCE.getDroppedMBeans();
+        HttpSettings.INSTANCE.setDefaultClientAggregationEnabled(true);
+        try
+        {
+            // unnamed clients of a manager share the MBean of the first
+            final MonitoredHttpClient clt = (MonitoredHttpClient) HttpClientFactory.newInstance(mgr);
+            final MonitoredHttpClient clt2 = (MonitoredHttpClient) HttpClientFactory.newInstance(mgr);
+            assertEquals(aggregated + 1, HttpSettings.INSTANCE.getAggregatedClients());
+            assertSame(clt.getMetrics(), clt2.getMetrics());
+            assertSame(clt.getParams(), clt2.getParams());
+            clt.setInstrumentationEnabled(true);
+            assertTrue(clt2.isInstrumentationEnabled());
+            // named ones have their own
+            final MonitoredHttpClient clt3 = (MonitoredHttpClient) HttpClientFactory.newInstance(mgr, "testAggregation");
+            assertNotSame(clt.getMetrics(), clt3.getMetrics());
+            assertEquals(aggregated + 1, HttpSettings.INSTANCE.getAggregatedClients());
+
+            // beyond the cap, MBeans of managers and clients are dropped
+            HttpSettings.INSTANCE.setMaxMBeans(1);
+            final String objectName = MBeanRegistrar.createObjectNameForClientConnMgrSettings("testCap");
+            MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+            assertFalse(MBeanRegistrar.isRegistered(objectName));
+            assertEquals(dropped + 1, HttpSettings.INSTANCE.getDroppedMBeans());
+        }
+        finally
+        {
+            HttpSettings.INSTANCE.setMaxMBeans(0);
+            HttpSettings.INSTANCE.setDefaultClientAggregationEnabled(false);
+            mgr.shutdown();
+        }
     }
 }
@@ -0,0 +1,128 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrometheusExporterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String objectName = "pqian.http:type=ClientConnMgrSettings,name=testExport";
+    private final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+    private final HttpRoute route = new HttpRoute(new HttpHost("localhost", 8080));
+
+    @Before
+    public void setUp()
+    {
+        // registered bypassing the registrar, so that it is not found as the latest manager by other tests
+        MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+    }
+
+    @After
+    public void tearDown()
+    {
+        MBeanRegistrar.unregisterMBean(objectName);
+        mgr.shutdown();
+    }
+
+    @Test
+    public void testExport() throws Exception
+    {
+        mgr.setMaxTotal(20);
+        final ManagedClientConnection conn = mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS);
+        final PrometheusExporter exporter = PrometheusExporter.start(new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+        try
+        {
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + exporter.getPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(PrometheusExporter.CONTENT_TYPE, connection.getContentType());
+            final String metrics = read(connection.getInputStream());
+            assertTrue(metrics, metrics.contains("# TYPE pqian_http_client_conn_mgr_max_total gauge\n"));
+            assertTrue(metrics, metrics.contains("pqian_http_client_conn_mgr_max_total{name=\"testExport\"} 20\n"));
+            assertTrue(metrics, metrics.contains("pqian_http_client_conn_mgr_total_stats_leased{name=\"testExport\"} 1\n"));
+            assertTrue(metrics, metrics.contains("pqian_http_client_conn_mgr_route_stats_leased{name=\"testExport\",key=\"" + route + "\"} 1\n"));
+            assertTrue(metrics, metrics.contains("pqian_http_client_conn_mgr_autosizing_enabled{name=\"testExport\"} 0\n"));
+
+            // a second scrape reuses the buffer
+            mgr.releaseConnection(conn, 0, TimeUnit.MILLISECONDS);
+            exporter.scrape();
+            assertTrue(exporter.getText().contains("pqian_http_client_conn_mgr_total_stats_leased{name=\"testExport\"} 0\n"));
+
+            // the tables reused drop MBeans unregistered since
+            final String otherName = "pqian.http:type=ClientConnMgrSettings,name=testExportOther";
+            MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, otherName), otherName);
+            exporter.scrape();
+            assertTrue(exporter.getText().contains("pqian_http_client_conn_mgr_max_total{name=\"testExportOther\"} 20\n"));
+            MBeanRegistrar.unregisterMBean(otherName);
+            exporter.scrape();
+            assertFalse(exporter.getText().contains("testExportOther"));
+            assertTrue(exporter.getText().contains("pqian_http_client_conn_mgr_max_total{name=\"testExport\"} 20\n"));
+        }
+        finally
+        {
+            exporter.stop();
+        }
+    }
+
+    @Test
+    public void testFlightEvents() throws Exception
+    {
+        final File file = folder.newFile("pool.jfr");
+        final Recording recording = new Recording();
+        recording.enable("pqian.http.ConnectionLease");
+        recording.enable("pqian.http.Request");
+        recording.start();
+        mgr.releaseConnection(mgr.requestConnection(route, null).getConnection(1, TimeUnit.SECONDS), 0, TimeUnit.MILLISECONDS);
+        // a request without target host
+        FlightEvents.request(null, 200, 1000);
+        recording.stop();
+        recording.dump(file.toPath());
+        recording.close();
+
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        assertEquals(2, events.size());
+        final RecordedEvent lease = events.get(0).getEventType().getName().equals("pqian.http.ConnectionLease") ? events.get(0) : events.get(1);
+        final RecordedEvent request = lease == events.get(0) ? events.get(1) : events.get(0);
+        assertEquals(route.toString(), lease.getString("route"));
+        assertEquals(false, lease.getBoolean("timedOut"));
+        assertEquals("unknown", request.getString("target"));
+    }
+
+    private static String read(final InputStream in) throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}
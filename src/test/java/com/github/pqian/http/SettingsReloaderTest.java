@@ -0,0 +1,106 @@
+package com.github.pqian.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SettingsReloaderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String objectName = "pqian.http:type=ClientConnMgrSettings,name=testReload";
+    private final MonitoredClientConnMgr mgr = new MonitoredClientConnMgr();
+    private int rateLimitBurst;
+
+    @Before
+    public void setUp()
+    {
+        // registered bypassing the registrar, so that it is not found as the latest manager by other tests
+        MBeanRegistrar.registerMBean(new ClientConnMgrSettings(mgr, objectName), objectName);
+        rateLimitBurst = HttpSettings.INSTANCE.getDefaultRateLimitBurst();
+    }
+
+    @After
+    public void tearDown()
+    {
+        SettingsReloader.unwatch();
+        MBeanRegistrar.unregisterMBean(objectName);
+        HttpSettings.INSTANCE.setDefaultRateLimitBurst(rateLimitBurst);
+        mgr.shutdown();
+    }
+
+    @Test
+    public void testReload() throws Exception
+    {
+        final File file = new File(folder.getRoot(), "http.properties");
+        write(file, "version=1\nHttpSettings.DefaultRateLimitBurst=3\nClientConnMgrSettings.testReload.MaxTotal=42\n"
+                + "ClientConnMgrSettings.missing.MaxTotal=1\n");
+        final long reloads = HttpSettings.INSTANCE.getSettingsReloads();
+        SettingsReloader.watch(file);
+        assertEquals(file.getPath(), HttpSettings.INSTANCE.getSettingsFile());
+        assertEquals("1", HttpSettings.INSTANCE.getSettingsVersion());
+        assertEquals(reloads + 1, HttpSettings.INSTANCE.getSettingsReloads());
+        assertEquals(3, HttpSettings.INSTANCE.getDefaultRateLimitBurst());
+        assertEquals(42, mgr.getMaxTotal());
+
+        // changes are picked up
+        write(file, "version=2\nClientConnMgrSettings.*.MaxTotal=43\n");
+        waitFor(reloads + 2, HttpSettings.INSTANCE.getSettingsReloadFailures());
+        assertEquals("2", HttpSettings.INSTANCE.getSettingsVersion());
+        assertEquals(43, mgr.getMaxTotal());
+
+        // rejected as a whole, the total set before failing is restored
+        final long failures = HttpSettings.INSTANCE.getSettingsReloadFailures();
+        write(file, "version=3\nClientConnMgrSettings.testReload.MaxTotal=44\nHttpSettings.DefaultStripeCount=0\n");
+        waitFor(reloads + 2, failures + 1);
+        assertEquals("2", HttpSettings.INSTANCE.getSettingsVersion());
+        assertEquals(43, mgr.getMaxTotal());
+
+        try
+        {
+            write(file, "ClientConnMgrSettings.testReload.MaxTotal=many\n");
+            HttpSettings.INSTANCE.reloadSettings();
+            fail("Invalid value applied");
+        }
+        catch (final IllegalArgumentException e)
+        {
+            // expected
+        }
+        assertEquals(43, mgr.getMaxTotal());
+    }
+
+    private static void write(final File file, final String content) throws Exception
+    {
+        final OutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes("ISO-8859-1"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private static void waitFor(final long reloads, final long failures) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while ((HttpSettings.INSTANCE.getSettingsReloads() < reloads || HttpSettings.INSTANCE.getSettingsReloadFailures() < failures)
+                && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(reloads, HttpSettings.INSTANCE.getSettingsReloads());
+        assertEquals(failures, HttpSettings.INSTANCE.getSettingsReloadFailures());
+    }
+}